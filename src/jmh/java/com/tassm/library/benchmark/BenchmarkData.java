@@ -0,0 +1,98 @@
+package com.tassm.library.benchmark;
+
+import com.tassm.library.model.dto.BookDTO;
+import com.tassm.library.model.dto.BookView;
+import com.tassm.library.model.dto.CreateBookDTO;
+import com.tassm.library.model.entity.Author;
+import com.tassm.library.model.entity.Book;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * Deterministic test data shared by the benchmarks
+ */
+public final class BenchmarkData {
+
+    /** Number of distinct authors the seeded books are spread over */
+    public static final int AUTHOR_COUNT = 10000;
+
+    /** First and last publication year of the seeded books */
+    public static final int FIRST_YEAR = 1900;
+
+    public static final int LAST_YEAR = 2019;
+
+    private BenchmarkData() {}
+
+    /**
+     * Create a valid ISBN-13 unique to the given number
+     *
+     * @param n a number below one billion
+     * @return String the ISBN-13 with prefix 978 and the correct check digit
+     */
+    public static String isbn13(long n) {
+        String digits = String.format("978%09d", n);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+
+    /** The publication year of the nth seeded book */
+    public static int publicationYear(long n) {
+        return FIRST_YEAR + (int) (n % (LAST_YEAR - FIRST_YEAR + 1));
+    }
+
+    /** The author names of the nth seeded book, one to three authors */
+    public static Set<String> authorNames(long n) {
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i <= n % 3; i++) {
+            names.add("Author " + ((n + i * 7919) % AUTHOR_COUNT));
+        }
+        return names;
+    }
+
+    /** The nth seeded book as it would be posted to the API */
+    public static CreateBookDTO createBookDTO(long n) {
+        return new CreateBookDTO(isbn13(n), "Title " + n, authorNames(n), publicationYear(n));
+    }
+
+    /** A detached book entity with the given number of authors */
+    public static Book book(long n, int authorCount) {
+        Set<Author> authors = new HashSet<>();
+        for (long i = 0; i < authorCount; i++) {
+            authors.add(new Author(i, "Author " + i, new HashSet<>()));
+        }
+        return new Book(n, isbn13(n), "Title " + n, authors, publicationYear(n), 0);
+    }
+
+    /** A list of book DTOs with two authors each */
+    public static List<BookDTO> bookDTOs(int count) {
+        List<BookDTO> books = new ArrayList<>(count);
+        for (int n = 0; n < count; n++) {
+            books.add(
+                    new BookDTO(
+                            isbn13(n),
+                            "Title " + n,
+                            Set.of("Author " + n, "Co-Author " + n),
+                            publicationYear(n)));
+        }
+        return books;
+    }
+
+    /** The same books as bookDTOs as views */
+    public static List<BookView> bookViews(int count) {
+        List<BookView> books = new ArrayList<>(count);
+        for (int n = 0; n < count; n++) {
+            books.add(
+                    new BookView(
+                            isbn13(n),
+                            "Title " + n,
+                            List.of("Author " + n, "Co-Author " + n),
+                            publicationYear(n)));
+        }
+        return books;
+    }
+}
@@ -0,0 +1,64 @@
+package com.tassm.library.benchmark;
+
+import com.tassm.library.model.dto.BookDTO;
+import com.tassm.library.model.entity.Author;
+import com.tassm.library.model.entity.Book;
+import com.tassm.library.model.mapping.BookMapperImpl;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Cost of mapping a book entity to its DTO as the number of authors grows. The HashSet variant is
+ * the previous mapping of the author names, kept as the baseline of the allocation per book
+ * reported by the gc profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BookMapperBenchmark {
+
+    @Param({"1", "5", "20"})
+    int authorCount;
+
+    private final BookMapperImpl bookMapper = new BookMapperImpl();
+    private Book book;
+
+    @Setup
+    public void setup() {
+        book = BenchmarkData.book(1, authorCount);
+    }
+
+    @Benchmark
+    public BookDTO bookEntityToDTO() {
+        return bookMapper.bookEntityToDTO(book);
+    }
+
+    @Benchmark
+    public BookDTO bookEntityToDTO_hashSet() {
+        Set<String> authorNames = new HashSet<>();
+        for (Author a : book.getAuthors()) {
+            authorNames.add(a.getName());
+        }
+        return new BookDTO(
+                book.getIsbn(),
+                book.getTitle(),
+                authorNames,
+                book.getPublicationYear(),
+                book.getVersion());
+    }
+}
@@ -0,0 +1,95 @@
+package com.tassm.library.benchmark;
+
+import com.tassm.library.LibraryApplication;
+import com.tassm.library.model.dto.BookSearchResultDTO;
+import com.tassm.library.model.dto.CreateBookDTO;
+import com.tassm.library.service.BookSearchService;
+import com.tassm.library.service.BookService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/*
+ * Latency distribution of search queries against the in memory index of catalogues of increasing
+ * size, sampled so the p99 is reported. The books are imported through BookService so the index is
+ * filled by the same path as in production.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(
+        value = 1,
+        jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class BookSearchBenchmark {
+
+    private static final int SEED_BATCH_SIZE = 10000;
+
+    @Param({"100000", "1000000"})
+    int bookCount;
+
+    private ConfigurableApplicationContext context;
+    private BookSearchService bookSearchService;
+
+    @Setup
+    public void setup() {
+        context =
+                new SpringApplicationBuilder(LibraryApplication.class)
+                        .web(WebApplicationType.NONE)
+                        .profiles("h2")
+                        .properties("logging.level.root=WARN")
+                        .run();
+        BookService bookService = context.getBean(BookService.class);
+        bookSearchService = context.getBean(BookSearchService.class);
+        for (int from = 0; from < bookCount; from += SEED_BATCH_SIZE) {
+            List<CreateBookDTO> batch = new ArrayList<>(SEED_BATCH_SIZE);
+            for (int n = from; n < Math.min(bookCount, from + SEED_BATCH_SIZE); n++) {
+                batch.add(BenchmarkData.createBookDTO(n));
+            }
+            bookService.importBooks(batch);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    /** Typeahead of a title number, the prefix matches up to a few thousand books */
+    @Benchmark
+    public BookSearchResultDTO search_prefix() {
+        String number = Long.toString(ThreadLocalRandom.current().nextLong(bookCount));
+        return bookSearchService.search(number.substring(0, 3), 0, 20);
+    }
+
+    /** A word shared by every title combined with a prefix, the worst case for ranking */
+    @Benchmark
+    public BookSearchResultDTO search_commonWordAndPrefix() {
+        String number = Long.toString(ThreadLocalRandom.current().nextLong(bookCount));
+        return bookSearchService.search("title " + number.substring(0, 4), 0, 20);
+    }
+
+    /** An author name, each author has a few hundred books */
+    @Benchmark
+    public BookSearchResultDTO search_author() {
+        int author = ThreadLocalRandom.current().nextInt(BenchmarkData.AUTHOR_COUNT);
+        return bookSearchService.search("author " + author, 0, 20);
+    }
+}
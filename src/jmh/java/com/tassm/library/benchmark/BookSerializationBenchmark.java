@@ -0,0 +1,67 @@
+package com.tassm.library.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.tassm.library.model.dto.BookDTO;
+import com.tassm.library.model.dto.BookView;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Cost of serializing a list response of books to JSON, as done for GET /book, and of the same
+ * books as views with their dedicated serializer, as done for the streamed listing
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BookSerializationBenchmark {
+
+    @Param({"10", "100", "1000"})
+    int bookCount;
+
+    private ObjectWriter writer;
+    private ObjectWriter viewWriter;
+    private List<BookDTO> books;
+    private List<BookView> views;
+
+    @Setup
+    public void setup() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        writer =
+                objectMapper.writerFor(
+                        TypeFactory.defaultInstance()
+                                .constructCollectionType(List.class, BookDTO.class));
+        viewWriter =
+                objectMapper.writerFor(
+                        TypeFactory.defaultInstance()
+                                .constructCollectionType(List.class, BookView.class));
+        books = BenchmarkData.bookDTOs(bookCount);
+        views = BenchmarkData.bookViews(bookCount);
+    }
+
+    @Benchmark
+    public byte[] serializeBookList() throws JsonProcessingException {
+        return writer.writeValueAsBytes(books);
+    }
+
+    @Benchmark
+    public byte[] serializeBookViewList() throws JsonProcessingException {
+        return viewWriter.writeValueAsBytes(views);
+    }
+}
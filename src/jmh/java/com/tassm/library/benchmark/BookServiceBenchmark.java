@@ -0,0 +1,159 @@
+package com.tassm.library.benchmark;
+
+import com.tassm.library.LibraryApplication;
+import com.tassm.library.exception.ResourceNotFoundException;
+import com.tassm.library.model.dto.BookBatchDTO;
+import com.tassm.library.model.dto.BookDTO;
+import com.tassm.library.model.dto.BookPageDTO;
+import com.tassm.library.model.dto.CreateBookDTO;
+import com.tassm.library.repository.BookFilter;
+import com.tassm.library.service.BookService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/*
+ * End to end cost of the BookService read paths against the in memory h2 database, seeded with
+ * catalogues of increasing size. The ISBN cache is disabled so every lookup reaches the database.
+ * Lookups of missing ISBNs are measured with and without the ISBN filter answering them, and a
+ * page of books is looked up one at a time and as a batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+// the database paths take about 40 seconds to be compiled
+@Warmup(iterations = 8, time = 5)
+@Measurement(iterations = 5, time = 2)
+@Fork(
+        value = 1,
+        jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class BookServiceBenchmark {
+
+    private static final int SEED_BATCH_SIZE = 10000;
+
+    /** Books of a storefront page, looked up one at a time or in a batch */
+    private static final int LOOKUP_BATCH_SIZE = 100;
+
+    @Param({"10000", "100000", "1000000"})
+    int bookCount;
+
+    /** Whether the IsbnFilter answers lookups of ISBNs which do not exist */
+    @Param({"true", "false"})
+    boolean isbnFilter;
+
+    private ConfigurableApplicationContext context;
+    private BookService bookService;
+
+    @Setup
+    public void setup() {
+        context =
+                new SpringApplicationBuilder(LibraryApplication.class)
+                        .web(WebApplicationType.NONE)
+                        .profiles("h2")
+                        // arguments rather than default properties, which the yaml would override
+                        .run(
+                                "--library.cache.books-by-isbn=maximumSize=0",
+                                "--library.isbn-filter.enabled=" + isbnFilter,
+                                "--logging.level.root=WARN");
+        bookService = context.getBean(BookService.class);
+        for (int from = 0; from < bookCount; from += SEED_BATCH_SIZE) {
+            List<CreateBookDTO> batch = new ArrayList<>(SEED_BATCH_SIZE);
+            for (int n = from; n < Math.min(bookCount, from + SEED_BATCH_SIZE); n++) {
+                batch.add(BenchmarkData.createBookDTO(n));
+            }
+            bookService.importBooks(batch);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public BookDTO findBookByIsbn() {
+        long n = ThreadLocalRandom.current().nextLong(bookCount);
+        return bookService.findBookByIsbn(BenchmarkData.isbn13(n));
+    }
+
+    @Benchmark
+    public Object findBookByIsbn_missing() {
+        long n = bookCount + ThreadLocalRandom.current().nextLong(bookCount);
+        try {
+            return bookService.findBookByIsbn(BenchmarkData.isbn13(n));
+        } catch (ResourceNotFoundException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public List<BookDTO> findBookByIsbn_oneAtATime() {
+        List<BookDTO> books = new ArrayList<>(LOOKUP_BATCH_SIZE);
+        for (String isbn : randomIsbns()) {
+            books.add(bookService.findBookByIsbn(isbn));
+        }
+        return books;
+    }
+
+    @Benchmark
+    public BookBatchDTO findBooksByIsbn_batch() {
+        return bookService.findBooksByIsbn(randomIsbns());
+    }
+
+    @Benchmark
+    public BookPageDTO findBooks_byYear() {
+        int year =
+                ThreadLocalRandom.current()
+                        .nextInt(BenchmarkData.FIRST_YEAR, BenchmarkData.LAST_YEAR + 1);
+        return bookService.findBooks(new BookFilter(null, year, year, null), null, 100);
+    }
+
+    @Benchmark
+    public BookPageDTO findBooks_byAuthor() {
+        int author = ThreadLocalRandom.current().nextInt(BenchmarkData.AUTHOR_COUNT);
+        return bookService.findBooks(
+                new BookFilter("Author " + author, null, null, null), null, 100);
+    }
+
+    @Benchmark
+    public int streamBooks_byAuthor() {
+        int author = ThreadLocalRandom.current().nextInt(BenchmarkData.AUTHOR_COUNT);
+        int[] count = new int[1];
+        bookService.streamBooks(
+                new BookFilter("Author " + author, null, null, null), b -> count[0]++);
+        return count[0];
+    }
+
+    @Benchmark
+    public BookPageDTO findBooks_byAuthorAndYearRange() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int author = random.nextInt(BenchmarkData.AUTHOR_COUNT);
+        int year = random.nextInt(BenchmarkData.FIRST_YEAR, BenchmarkData.LAST_YEAR - 9);
+        return bookService.findBooks(
+                new BookFilter("Author " + author, year, year + 10, null), null, 100);
+    }
+
+    private List<String> randomIsbns() {
+        List<String> isbns = new ArrayList<>(LOOKUP_BATCH_SIZE);
+        for (int i = 0; i < LOOKUP_BATCH_SIZE; i++) {
+            isbns.add(BenchmarkData.isbn13(ThreadLocalRandom.current().nextLong(bookCount)));
+        }
+        return isbns;
+    }
+}
@@ -0,0 +1,100 @@
+package com.tassm.library.benchmark;
+
+import com.tassm.library.LibraryApplication;
+import com.tassm.library.model.dto.BookDTO;
+import com.tassm.library.model.dto.CreateBookDTO;
+import com.tassm.library.model.dto.ImportResultDTO;
+import com.tassm.library.service.BookService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/*
+ * Throughput of the BookService write paths with the database profile alone and with the
+ * production profile added. Lookups are left out as they are served by the caches. The database
+ * profile is taken from the BENCHMARK_DATABASE environment variable, h2 by default. To measure
+ * postgres export BENCHMARK_DATABASE=postgres and the POSTGRES_* connection variables, preferably
+ * against an empty database such as the postgres service of docker-compose.yml. The ISBNs of each
+ * run start at a random number so runs against the same database rarely collide.
+ *
+ * On the in memory h2 database the two are within noise, as h2 has no network round trips or
+ * statement preparation on the server for the production profile to save.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 6, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(
+        value = 1,
+        jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class DatabaseTuningBenchmark {
+
+    private static final int IMPORT_SIZE = 1000;
+
+    /** Profile added to the database profile, none for the database profile alone */
+    @Param({"none", "production"})
+    String tuning;
+
+    private ConfigurableApplicationContext context;
+    private BookService bookService;
+    private long next;
+
+    @Setup
+    public void setup() {
+        String database = System.getenv().getOrDefault("BENCHMARK_DATABASE", "h2");
+        context =
+                new SpringApplicationBuilder(LibraryApplication.class)
+                        .web(WebApplicationType.NONE)
+                        .profiles(
+                                "none".equals(tuning)
+                                        ? new String[] {database}
+                                        : new String[] {database, tuning})
+                        // arguments rather than default properties, which the yaml would override
+                        .run(
+                                "--library.cache.books-by-isbn=maximumSize=0",
+                                "--logging.level.root=WARN");
+        bookService = context.getBean(BookService.class);
+        next = ThreadLocalRandom.current().nextLong(900_000_000L);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MINUTES)
+    public ImportResultDTO importBooks() {
+        return bookService.importBooks(nextBooks(IMPORT_SIZE));
+    }
+
+    @Benchmark
+    public BookDTO saveBookAndAuthors() {
+        return bookService.saveBookAndAuthors(nextBooks(1).get(0));
+    }
+
+    private List<CreateBookDTO> nextBooks(int count) {
+        List<CreateBookDTO> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            books.add(BenchmarkData.createBookDTO(next++));
+        }
+        return books;
+    }
+}
@@ -0,0 +1,107 @@
+package com.tassm.library.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tassm.library.exception.ErrorLogLimiter;
+import com.tassm.library.exception.PreEncodedError;
+import com.tassm.library.exception.ResourceNotFoundException;
+import com.tassm.library.model.dto.ErrorDTO;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpStatus;
+
+/*
+ * Throughput of the error path before and after making it cheap. Each pair compares the previous
+ * way of producing part of an error response with the current one:
+ *
+ * - throwing a not found exception from deep in a stack, with and without a stack trace
+ * - encoding the invalid request body for each response, and sharing a pre-encoded one
+ * - printing the stack trace of an unhandled exception, here to a discarding stream so the console
+ *   is left out, and taking a permit of the rate limited log which is mostly refused under load
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ErrorPathBenchmark {
+
+    private static final String MESSAGE = "Invalid request body or parameter - try again";
+
+    /** Frames between the throw and the handler, a request through the servlet filters has ~150 */
+    @Param({"20", "150"})
+    int stackDepth;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final PreEncodedError preEncoded = new PreEncodedError(HttpStatus.BAD_REQUEST, MESSAGE);
+    private final ErrorLogLimiter logLimiter = new ErrorLogLimiter(10);
+    private final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    private final IllegalStateException unhandled = new IllegalStateException("unhandled");
+
+    @Benchmark
+    public Object notFound_stackTrace() {
+        try {
+            return throwAt(stackDepth, true);
+        } catch (ResourceNotFoundException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object notFound_stackless() {
+        try {
+            return throwAt(stackDepth, false);
+        } catch (ResourceNotFoundException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public byte[] invalidRequest_serialized() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(
+                new ErrorDTO(HttpStatus.BAD_REQUEST.value(), MESSAGE));
+    }
+
+    @Benchmark
+    public byte[] invalidRequest_preEncoded() {
+        return preEncoded.toResponse().getBody();
+    }
+
+    @Benchmark
+    public void unhandled_printStackTrace() {
+        unhandled.printStackTrace(discard);
+    }
+
+    @Benchmark
+    public long unhandled_rateLimited() {
+        return logLimiter.tryAcquire(IllegalStateException.class);
+    }
+
+    private static Object throwAt(int depth, boolean stackTrace) {
+        if (depth > 0) {
+            return throwAt(depth - 1, stackTrace);
+        }
+        throw stackTrace
+                ? new StackTraceNotFoundException("Book with ISBN 9780000000000 was not found")
+                : new ResourceNotFoundException("Book with ISBN 9780000000000 was not found");
+    }
+
+    /** The not found exception as it was before, filling in its stack trace */
+    private static class StackTraceNotFoundException extends ResourceNotFoundException {
+        StackTraceNotFoundException(String message) {
+            super(message, null, true, true);
+        }
+    }
+}
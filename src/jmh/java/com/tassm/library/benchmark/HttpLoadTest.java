@@ -0,0 +1,296 @@
+package com.tassm.library.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tassm.library.model.dto.CreateBookDTO;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Closed loop HTTP load test against a running application, used to compare the platform thread,
+ * virtual thread and reactive execution modes. Every client sends its next request as soon as the
+ * previous one completes, the throughput and latency percentiles of the measured period are
+ * printed.
+ *
+ * The cost of the connections to the server is read from its actuator metrics: the live threads
+ * and the JVM memory in use when idle and at their peak under load, divided by the number of
+ * clients, and the bytes allocated per request. Thread stacks are not part of the JVM memory, so
+ * the threads per client stand for them.
+ *
+ * Arguments: url, clients (1000), warmup seconds (10), measured seconds (30) and the number of
+ * books to import before the run (0).
+ */
+public final class HttpLoadTest {
+
+    private static final String DEFAULT_URL =
+            "http://localhost:8080/book?rangeStart=1990&rangeEnd=1999&limit=20";
+    private static final int SEED_BATCH_SIZE = 10000;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private HttpLoadTest() {}
+
+    public static void main(String[] args) throws Exception {
+        URI uri = URI.create(args.length > 0 ? args[0] : DEFAULT_URL);
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int warmupSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+        int seed = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+
+        HttpClient http =
+                HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .connectTimeout(REQUEST_TIMEOUT)
+                        .build();
+        if (seed > 0) {
+            seed(http, uri, seed);
+        }
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(REQUEST_TIMEOUT).GET().build();
+        // read before the warmup, which grows the thread pools of the server
+        ServerMetrics server = new ServerMetrics(http, uri);
+        server.readIdle();
+        System.out.printf(
+                "Warming up %d clients for %ds against %s%n", clients, warmupSeconds, uri);
+        run(http, request, clients, warmupSeconds);
+        server.start();
+        System.out.printf("Measuring %d clients for %ds%n", clients, seconds);
+        Result result = run(http, request, clients, seconds);
+        server.stop();
+        result.print();
+        server.print(clients, result.latencies.length);
+    }
+
+    private static void seed(HttpClient http, URI uri, int count) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        URI importUri = uri.resolve("/book/import");
+        for (int from = 0; from < count; from += SEED_BATCH_SIZE) {
+            List<CreateBookDTO> batch = new ArrayList<>(SEED_BATCH_SIZE);
+            for (int n = from; n < Math.min(count, from + SEED_BATCH_SIZE); n++) {
+                batch.add(BenchmarkData.createBookDTO(n));
+            }
+            HttpRequest request =
+                    HttpRequest.newBuilder(importUri)
+                            .header("Content-Type", "application/json")
+                            .POST(
+                                    HttpRequest.BodyPublishers.ofByteArray(
+                                            objectMapper.writeValueAsBytes(batch)))
+                            .build();
+            HttpResponse<String> response =
+                    http.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException(
+                        "Seeding failed with " + response.statusCode() + ": " + response.body());
+            }
+        }
+        System.out.printf("Imported %d books%n", count);
+    }
+
+    private static Result run(HttpClient http, HttpRequest request, int clients, int seconds)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + Duration.ofSeconds(seconds).toNanos();
+        CountDownLatch done = new CountDownLatch(clients);
+        Client[] running = new Client[clients];
+        for (int i = 0; i < clients; i++) {
+            running[i] = new Client(http, request, deadline, done);
+            running[i].next();
+        }
+        done.await();
+        return new Result(running, System.nanoTime() - start);
+    }
+
+    /**
+     * Samples the threads and memory of the server every SAMPLE_INTERVAL during the measured
+     * period, and the bytes it allocates. Nothing is reported when the metrics endpoint is not
+     * exposed.
+     */
+    private static final class ServerMetrics {
+        private static final long SAMPLE_INTERVAL_MS = 500;
+        private static final String THREADS = "jvm.threads.live";
+        private static final String MEMORY = "jvm.memory.used";
+        private static final String ALLOCATED = "jvm.gc.memory.allocated";
+
+        private final HttpClient http;
+        private final URI metrics;
+        private final ObjectMapper objectMapper = new ObjectMapper();
+        private final ScheduledExecutorService sampler =
+                Executors.newSingleThreadScheduledExecutor();
+        private double idleThreads;
+        private double idleMemory;
+        private double startAllocated;
+        private double allocated;
+        private volatile double peakThreads;
+        private volatile double peakMemory;
+        private boolean available = true;
+
+        ServerMetrics(HttpClient http, URI uri) {
+            this.http = http;
+            this.metrics = uri.resolve("/actuator/metrics/");
+        }
+
+        void readIdle() {
+            try {
+                idleThreads = read(THREADS);
+                idleMemory = read(MEMORY);
+            } catch (Exception e) {
+                System.out.printf("Server metrics are not available: %s%n", e);
+                available = false;
+            }
+        }
+
+        void start() throws Exception {
+            if (!available) {
+                return;
+            }
+            startAllocated = read(ALLOCATED);
+            sampler.scheduleAtFixedRate(
+                    this::sample, SAMPLE_INTERVAL_MS, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+
+        void stop() throws Exception {
+            sampler.shutdown();
+            sampler.awaitTermination(REQUEST_TIMEOUT.toSeconds(), TimeUnit.SECONDS);
+            if (available) {
+                allocated = read(ALLOCATED) - startAllocated;
+            }
+        }
+
+        void print(int clients, int requests) {
+            if (!available || peakThreads == 0) {
+                return;
+            }
+            System.out.printf(
+                    "server threads: idle=%.0f peak=%.0f per client=%.3f%n",
+                    idleThreads, peakThreads, (peakThreads - idleThreads) / clients);
+            System.out.printf(
+                    "server memory MB: idle=%.1f peak=%.1f per client KB=%.1f%n",
+                    idleMemory / 1e6, peakMemory / 1e6, (peakMemory - idleMemory) / 1e3 / clients);
+            if (requests > 0) {
+                System.out.printf(
+                        "server allocated per request KB=%.1f%n", allocated / 1e3 / requests);
+            }
+        }
+
+        private void sample() {
+            try {
+                peakThreads = Math.max(peakThreads, read(THREADS));
+                peakMemory = Math.max(peakMemory, read(MEMORY));
+            } catch (Exception e) {
+                // a sample which times out under load is skipped
+            }
+        }
+
+        private double read(String metric) throws Exception {
+            HttpRequest request =
+                    HttpRequest.newBuilder(metrics.resolve(metric))
+                            .timeout(REQUEST_TIMEOUT)
+                            .GET()
+                            .build();
+            HttpResponse<String> response =
+                    http.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException(metric + " answered " + response.statusCode());
+            }
+            JsonNode measurements = objectMapper.readTree(response.body()).get("measurements");
+            return measurements.get(0).get("value").asDouble();
+        }
+    }
+
+    /** A client sending one request at a time until the deadline */
+    private static final class Client {
+        private final HttpClient http;
+        private final HttpRequest request;
+        private final long deadline;
+        private final CountDownLatch done;
+        // only touched by the completion of the previous request, so no synchronization is needed
+        private long[] latencies = new long[1024];
+        private int count;
+        private int errors;
+
+        Client(HttpClient http, HttpRequest request, long deadline, CountDownLatch done) {
+            this.http = http;
+            this.request = request;
+            this.deadline = deadline;
+            this.done = done;
+        }
+
+        void next() {
+            long sent = System.nanoTime();
+            http.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete(
+                            (response, error) -> {
+                                long received = System.nanoTime();
+                                if (error == null && response.statusCode() < 400) {
+                                    record(received - sent);
+                                } else {
+                                    errors++;
+                                }
+                                if (received < deadline) {
+                                    next();
+                                } else {
+                                    done.countDown();
+                                }
+                            });
+        }
+
+        private void record(long latency) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latency;
+        }
+    }
+
+    /** The merged latencies and errors of every client */
+    private static final class Result {
+        private final long[] latencies;
+        private final int errors;
+        private final long elapsed;
+
+        Result(Client[] clients, long elapsed) {
+            int total = Arrays.stream(clients).mapToInt(client -> client.count).sum();
+            latencies = new long[total];
+            int offset = 0;
+            int errorCount = 0;
+            for (Client client : clients) {
+                System.arraycopy(client.latencies, 0, latencies, offset, client.count);
+                offset += client.count;
+                errorCount += client.errors;
+            }
+            Arrays.sort(latencies);
+            this.errors = errorCount;
+            this.elapsed = elapsed;
+        }
+
+        void print() {
+            double seconds = elapsed / 1e9;
+            System.out.printf(
+                    "requests=%d errors=%d throughput=%.1f req/s%n",
+                    latencies.length, errors, latencies.length / seconds);
+            if (latencies.length == 0) {
+                return;
+            }
+            System.out.printf(
+                    "latency ms: p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f%n",
+                    percentile(0.5),
+                    percentile(0.9),
+                    percentile(0.99),
+                    percentile(0.999),
+                    latencies[latencies.length - 1] / 1e6);
+        }
+
+        private double percentile(double p) {
+            int index = (int) Math.ceil(p * latencies.length) - 1;
+            return latencies[Math.max(index, 0)] / 1e6;
+        }
+    }
+}
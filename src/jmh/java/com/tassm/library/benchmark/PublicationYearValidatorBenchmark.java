@@ -0,0 +1,39 @@
+package com.tassm.library.benchmark;
+
+import com.tassm.library.validation.ValidPublicationYear;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Cost of validating a publication year, which runs for every create and update request
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PublicationYearValidatorBenchmark {
+
+    private final ValidPublicationYear.Validator validator = new ValidPublicationYear.Validator();
+    private Integer validYear = 1984;
+    private Integer futureYear = 9999;
+
+    @Benchmark
+    public boolean isValid_validYear() {
+        return validator.isValid(validYear, null);
+    }
+
+    @Benchmark
+    public boolean isValid_futureYear() {
+        return validator.isValid(futureYear, null);
+    }
+}
@@ -0,0 +1,40 @@
+package com.tassm.library.config;
+
+import java.util.List;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*
+ * In-process caches of the application. Cache writes and evictions made inside a transaction are
+ * deferred until it commits, so a rolled back write never reaches the cache and a committed write
+ * is visible to readers of the cache once the database is.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    /** Cache of BookDTO keyed by ISBN */
+    public static final String BOOKS_BY_ISBN = "booksByIsbn";
+
+    /**
+     * Create the cache manager, the caches are fixed so that they are registered for metrics at
+     * startup
+     *
+     * @param booksByIsbnSpec the caffeine specification of the book by ISBN cache
+     * @return CacheManager the transaction aware cache manager
+     */
+    @Bean
+    public CacheManager cacheManager(
+            @Value("${library.cache.books-by-isbn}") String booksByIsbnSpec) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.setCacheSpecification(booksByIsbnSpec);
+        cacheManager.setAllowNullValues(false);
+        cacheManager.setCacheNames(List.of(BOOKS_BY_ISBN));
+        return new TransactionAwareCacheManagerProxy(cacheManager);
+    }
+}
@@ -0,0 +1,64 @@
+package com.tassm.library.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+/*
+ * Sizes the Hikari pools which are not given a maximum-pool-size, their minimum idle connections
+ * default to the same size. A pool rarely gains from more connections
+ * than the database can run at once, about twice its cores plus one, and the pools of every
+ * instance together must stay within the connections the database accepts. The smaller of the
+ * two is used.
+ */
+public class ConnectionPoolSizer implements BeanPostProcessor {
+
+    private static final Logger log = LoggerFactory.getLogger(ConnectionPoolSizer.class);
+
+    private final int databaseCores;
+    private final int maxConnections;
+    private final int instances;
+
+    /**
+     * @param databaseCores the cores of the database server
+     * @param maxConnections the connections the database accepts from the application
+     * @param instances the number of instances of the application sharing them
+     */
+    public ConnectionPoolSizer(int databaseCores, int maxConnections, int instances) {
+        this.databaseCores = databaseCores;
+        this.maxConnections = maxConnections;
+        this.instances = instances;
+    }
+
+    /**
+     * The size of a pool talking to a database
+     *
+     * @param databaseCores the cores of the database server
+     * @param maxConnections the connections the database accepts from the application
+     * @param instances the number of instances of the application sharing them
+     * @return int the pool size, at least one
+     */
+    public static int poolSize(int databaseCores, int maxConnections, int instances) {
+        int concurrency = databaseCores * 2 + 1;
+        int share = maxConnections / Math.max(1, instances);
+        return Math.max(1, Math.min(concurrency, share));
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof HikariDataSource dataSource && dataSource.getMaximumPoolSize() < 1) {
+            int size = poolSize(databaseCores, maxConnections, instances);
+            dataSource.setMaximumPoolSize(size);
+            log.info(
+                    "Sized connection pool {} to {} for {} database cores and {} connections"
+                            + " shared by {} instances",
+                    beanName,
+                    size,
+                    databaseCores,
+                    maxConnections,
+                    instances);
+        }
+        return bean;
+    }
+}
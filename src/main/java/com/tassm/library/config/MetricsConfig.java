@@ -0,0 +1,60 @@
+package com.tassm.library.config;
+
+import com.tassm.library.metrics.SqlStatementCounter;
+import com.tassm.library.metrics.SqlStatementMetricsFilter;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*
+ * Application metrics on top of those provided by the actuator (HTTP requests, repository
+ * invocations, connection pool and caches). Everything is published at /actuator/prometheus.
+ */
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * Enable the @Timed annotation on the service methods
+     *
+     * @param meterRegistry the registry to record the timings in
+     * @return TimedAspect the aspect timing annotated methods
+     */
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+
+    @Bean
+    public SqlStatementCounter sqlStatementCounter() {
+        return new SqlStatementCounter();
+    }
+
+    /**
+     * Register the statement counter with hibernate
+     *
+     * @param counter the statement counter
+     * @return HibernatePropertiesCustomizer the customizer setting the statement inspector
+     */
+    @Bean
+    public HibernatePropertiesCustomizer sqlStatementCounterCustomizer(
+            SqlStatementCounter counter) {
+        return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, counter);
+    }
+
+    /**
+     * Register the filter recording the statements of each request
+     *
+     * @param counter the statement counter
+     * @param meterRegistry the registry to record the counts in
+     * @return FilterRegistrationBean<SqlStatementMetricsFilter> the filter registration
+     */
+    @Bean
+    public FilterRegistrationBean<SqlStatementMetricsFilter> sqlStatementMetricsFilter(
+            SqlStatementCounter counter, MeterRegistry meterRegistry) {
+        return new FilterRegistrationBean<>(new SqlStatementMetricsFilter(counter, meterRegistry));
+    }
+}
@@ -0,0 +1,34 @@
+package com.tassm.library.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/*
+ * Opt-in production tuning of the database access, combined with a database profile. The JDBC
+ * and hibernate settings are in application-production.yaml, the connection pools are sized here.
+ */
+@Configuration
+@Profile("production")
+public class ProductionConfig {
+
+    /**
+     * Size the pools which are not given a size from the database limits
+     *
+     * @param databaseCores the cores of the database server, 0 for the cores of this host
+     * @param maxConnections the connections the database accepts from the application
+     * @param instances the number of instances of the application sharing them
+     * @return ConnectionPoolSizer the post processor sizing the pools
+     */
+    @Bean
+    public static ConnectionPoolSizer connectionPoolSizer(
+            @Value("${library.datasource.database-cores}") int databaseCores,
+            @Value("${library.datasource.max-connections}") int maxConnections,
+            @Value("${library.datasource.instances}") int instances) {
+        return new ConnectionPoolSizer(
+                databaseCores > 0 ? databaseCores : Runtime.getRuntime().availableProcessors(),
+                maxConnections,
+                instances);
+    }
+}
@@ -0,0 +1,60 @@
+package com.tassm.library.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+/*
+ * Opt-in reactive read API, see ReactiveBookController. Book lookups and listings are read with
+ * R2DBC from the pool configured by spring.r2dbc, while JPA keeps its JDBC pool for creating the
+ * schema and for the background work such as the IsbnFilter and the search index.
+ */
+@Configuration
+@Profile("reactive")
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class ReactiveConfig {
+
+    /**
+     * The JDBC pool, configured like the pool created without the reactive profile. Spring Boot
+     * backs off from creating it once there is an R2DBC connection factory. The replica profile
+     * creates its own pools.
+     *
+     * @param properties the spring.datasource properties
+     * @return HikariDataSource the JDBC pool
+     */
+    @Bean
+    @Profile("!replica")
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    /**
+     * Serve requests with Netty on its event loop threads. Spring Boot prefers Tomcat, which is on
+     * the classpath for the servlet API.
+     *
+     * @return NettyReactiveWebServerFactory the factory of the Netty server
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    /**
+     * The client of the reactive repositories
+     *
+     * @param connectionFactory the R2DBC connection pool
+     * @return DatabaseClient the client running SQL on the pool
+     */
+    @Bean
+    public DatabaseClient databaseClient(ConnectionFactory connectionFactory) {
+        return DatabaseClient.create(connectionFactory);
+    }
+}
@@ -0,0 +1,73 @@
+package com.tassm.library.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Set;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/*
+ * Gives each client read-your-writes consistency when reads are served by a replica. A write
+ * request sets a cookie holding the end of the sticky window, and requests carrying a cookie
+ * which has not yet expired read from the primary. The window is carried by the client, so it
+ * holds when its requests are balanced across instances. Reads made by streamed responses on an
+ * async thread are not pinned.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    static final String COOKIE_NAME = "library-primary-until";
+
+    private static final Set<String> SAFE_METHODS = Set.of("GET", "HEAD", "OPTIONS", "TRACE");
+
+    private final ReplicaStatus replicaStatus;
+
+    public ReadYourWritesFilter(ReplicaStatus replicaStatus) {
+        this.replicaStatus = replicaStatus;
+    }
+
+    @Override
+    protected void doFilterInternal(
+            HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long now = System.currentTimeMillis();
+        boolean write = !SAFE_METHODS.contains(request.getMethod());
+        if (write) {
+            // set before the response is committed, a failed write only pins the client briefly
+            long window = replicaStatus.getStickyWindow().toMillis();
+            Cookie cookie = new Cookie(COOKIE_NAME, Long.toString(now + window));
+            cookie.setMaxAge((int) Math.ceil(window / 1000.0));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            response.addCookie(cookie);
+        }
+        if (!write && pinnedUntil(request) <= now) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        ReplicaRoutingDataSource.pinToPrimary();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ReplicaRoutingDataSource.unpin();
+        }
+    }
+
+    private long pinnedUntil(HttpServletRequest request) {
+        if (request.getCookies() == null) {
+            return 0;
+        }
+        for (Cookie cookie : request.getCookies()) {
+            if (COOKIE_NAME.equals(cookie.getName())) {
+                try {
+                    return Long.parseLong(cookie.getValue());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+}
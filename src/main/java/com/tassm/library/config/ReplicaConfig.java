@@ -0,0 +1,111 @@
+package com.tassm.library.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+/*
+ * Opt-in read replica. Read-only transactions, such as finding and exporting books, are served by
+ * a replica configured in application-replica.yaml and all other work goes to the primary
+ * configured by spring.datasource as before. See ReplicaStatus for when the primary is used for
+ * reads as well.
+ */
+@Configuration
+@Profile("replica")
+public class ReplicaConfig {
+
+    /**
+     * The primary pool, configured like the pool created when there is no replica
+     *
+     * @param properties the spring.datasource properties
+     * @return HikariDataSource the primary pool
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource =
+                properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    /**
+     * The replica pool, using the driver of the primary
+     *
+     * @param properties the spring.datasource properties
+     * @param url the replica connection string
+     * @param username the replica username
+     * @param password the replica password
+     * @return HikariDataSource the replica pool
+     */
+    @Bean
+    @ConfigurationProperties("library.replica.datasource.hikari")
+    public HikariDataSource replicaDataSource(
+            DataSourceProperties properties,
+            @Value("${library.replica.datasource.url}") String url,
+            @Value("${library.replica.datasource.username}") String username,
+            @Value("${library.replica.datasource.password}") String password) {
+        HikariDataSource dataSource =
+                DataSourceBuilder.create()
+                        .type(HikariDataSource.class)
+                        .driverClassName(properties.determineDriverClassName())
+                        .url(url)
+                        .username(username)
+                        .password(password)
+                        .build();
+        dataSource.setPoolName("replica");
+        return dataSource;
+    }
+
+    /**
+     * The data source used by the application, choosing the primary or the replica when a
+     * transaction runs its first statement
+     *
+     * @param primary the primary pool
+     * @param replica the replica pool
+     * @param replicaStatus whether the replica can serve reads
+     * @param meterRegistry the registry to count the routed connections in
+     * @return DataSource the routing data source
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(
+            @Qualifier("primaryDataSource") DataSource primary,
+            @Qualifier("replicaDataSource") DataSource replica,
+            ReplicaStatus replicaStatus,
+            MeterRegistry meterRegistry) {
+        ReplicaRoutingDataSource routing =
+                new ReplicaRoutingDataSource(replicaStatus, meterRegistry);
+        routing.setTargetDataSources(
+                Map.of(
+                        ReplicaRoutingDataSource.PRIMARY, primary,
+                        ReplicaRoutingDataSource.REPLICA, replica));
+        routing.setDefaultTargetDataSource(primary);
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    /**
+     * Register the filter routing the reads of clients which have recently written to the primary
+     *
+     * @param replicaStatus the status holding the sticky window
+     * @return FilterRegistrationBean<ReadYourWritesFilter> the filter registration
+     */
+    @Bean
+    public FilterRegistrationBean<ReadYourWritesFilter> readYourWritesFilter(
+            ReplicaStatus replicaStatus) {
+        return new FilterRegistrationBean<>(new ReadYourWritesFilter(replicaStatus));
+    }
+}
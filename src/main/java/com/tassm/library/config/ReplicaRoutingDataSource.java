@@ -0,0 +1,70 @@
+package com.tassm.library.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/*
+ * Routes the connections of read-only transactions to the replica and everything else to the
+ * primary. A read-only transaction still goes to the primary when the current thread is pinned to
+ * it, or when the replica is not usable because it is lagging or has recently missed a write.
+ *
+ * The transaction is only marked read-only after it has begun, so this must be wrapped in a
+ * LazyConnectionDataSourceProxy which defers choosing the target until the first statement.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    static final String PRIMARY = "primary";
+    static final String REPLICA = "replica";
+
+    private static final ThreadLocal<Boolean> pinnedToPrimary = new ThreadLocal<>();
+
+    private final ReplicaStatus replicaStatus;
+    private final Counter primaryConnections;
+    private final Counter replicaConnections;
+
+    public ReplicaRoutingDataSource(ReplicaStatus replicaStatus, MeterRegistry meterRegistry) {
+        this.replicaStatus = replicaStatus;
+        this.primaryConnections = routedCounter(meterRegistry, PRIMARY);
+        this.replicaConnections = routedCounter(meterRegistry, REPLICA);
+    }
+
+    /** Route every connection of the current thread to the primary until unpinned */
+    public static void pinToPrimary() {
+        pinnedToPrimary.set(Boolean.TRUE);
+    }
+
+    /** Route read-only transactions of the current thread to the replica again */
+    public static void unpin() {
+        pinnedToPrimary.remove();
+    }
+
+    /**
+     * Whether the connections of the current thread are routed to the primary
+     *
+     * @return boolean true when pinned
+     */
+    public static boolean isPinnedToPrimary() {
+        return pinnedToPrimary.get() != null;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                && !isPinnedToPrimary()
+                && replicaStatus.isUsable()) {
+            replicaConnections.increment();
+            return REPLICA;
+        }
+        primaryConnections.increment();
+        return PRIMARY;
+    }
+
+    private static Counter routedCounter(MeterRegistry meterRegistry, String target) {
+        return Counter.builder("library.datasource.connections.routed")
+                .description("Connections obtained from the primary or the replica")
+                .tag("target", target)
+                .register(meterRegistry);
+    }
+}
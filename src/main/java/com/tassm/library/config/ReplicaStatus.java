@@ -0,0 +1,145 @@
+package com.tassm.library.config;
+
+import com.tassm.library.service.BookChangeEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/*
+ * Decides whether the replica can serve reads. Its lag is measured periodically with the
+ * configured lag query, and the replica is avoided while the lag is above the maximum or unknown.
+ *
+ * It is also avoided for the sticky window after a write committed by this instance, so a change
+ * is not followed by reads which miss it. Those reads would otherwise populate the book caches
+ * and the catalogue ETag with results older than the change.
+ */
+@Component
+@Profile("replica")
+public class ReplicaStatus {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaStatus.class);
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    DataSource replicaDataSource;
+
+    @Autowired MeterRegistry meterRegistry;
+
+    @Value("${library.replica.lag-query}")
+    String lagQuery;
+
+    @Value("${library.replica.max-lag}")
+    Duration maxLag;
+
+    @Value("${library.replica.lag-check-interval}")
+    Duration lagCheckInterval;
+
+    @Value("${library.replica.sticky-window}")
+    Duration stickyWindow;
+
+    private ScheduledExecutorService lagChecker;
+    private volatile double lagSeconds = Double.NaN;
+    private volatile long lastWriteNanos;
+
+    @PostConstruct
+    void start() {
+        if (stickyWindow.compareTo(maxLag.plus(lagCheckInterval)) < 0) {
+            log.warn(
+                    "The replica sticky window {} is shorter than the maximum lag {} plus the lag"
+                            + " check interval {}, reads may miss recent writes",
+                    stickyWindow,
+                    maxLag,
+                    lagCheckInterval);
+        }
+        lastWriteNanos = System.nanoTime() - stickyWindow.toNanos();
+        Gauge.builder("library.replica.lag", this, s -> s.lagSeconds)
+                .description("Replication lag of the replica, NaN when unknown")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        lagChecker =
+                Executors.newSingleThreadScheduledExecutor(
+                        r -> {
+                            Thread thread = new Thread(r, "replica-lag-check");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        lagChecker.scheduleWithFixedDelay(
+                this::checkLag, 0, lagCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        lagChecker.shutdownNow();
+    }
+
+    /**
+     * Whether read-only transactions can be routed to the replica
+     *
+     * @return boolean true when the replica lag is known and within the maximum, and there has been
+     *     no write within the sticky window
+     */
+    public boolean isUsable() {
+        return lagSeconds <= maxLag.toMillis() / 1000.0
+                && System.nanoTime() - lastWriteNanos >= stickyWindow.toNanos();
+    }
+
+    /**
+     * The period reads are routed to the primary after a write
+     *
+     * @return Duration the sticky window
+     */
+    public Duration getStickyWindow() {
+        return stickyWindow;
+    }
+
+    /**
+     * Record a write once it has been committed
+     *
+     * @param event the books which were saved and removed
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookChange(BookChangeEvent event) {
+        lastWriteNanos = System.nanoTime();
+    }
+
+    /** Measure the replica lag, which becomes unknown if the lag query fails */
+    void checkLag() {
+        if (lagQuery == null || lagQuery.isBlank()) {
+            lagSeconds = 0;
+            return;
+        }
+        try (Connection connection = replicaDataSource.getConnection();
+                Statement statement = connection.createStatement();
+                ResultSet result = statement.executeQuery(lagQuery)) {
+            double lag = Double.NaN;
+            if (result.next()) {
+                lag = result.getDouble(1);
+                lag = result.wasNull() ? Double.NaN : lag;
+            }
+            lagSeconds = lag;
+        } catch (SQLException e) {
+            if (!Double.isNaN(lagSeconds)) {
+                log.warn("Failed to check the replica lag, reading from the primary", e);
+            }
+            lagSeconds = Double.NaN;
+        }
+    }
+}
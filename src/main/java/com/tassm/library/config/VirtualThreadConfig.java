@@ -0,0 +1,71 @@
+package com.tassm.library.config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+/*
+ * Opt-in execution mode running Tomcat requests and async work (such as streamed responses) on
+ * Java 21 virtual threads instead of the platform thread pools. Blocking JDBC calls then park a
+ * cheap virtual thread rather than holding a pool thread, database concurrency stays bounded by
+ * the Hikari pool configured in application-virtual-threads.yaml.
+ */
+@Configuration
+@Profile("virtual-threads")
+public class VirtualThreadConfig {
+
+    /**
+     * An executor starting a new virtual thread for every task. The application is compiled for
+     * Java 17 so the factory method is looked up at runtime, failing startup on older JVMs.
+     *
+     * @return ExecutorService the virtual thread per task executor
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService)
+                    Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(
+                    "The virtual-threads profile requires Java 21 or later, running on "
+                            + System.getProperty("java.version"),
+                    e);
+        }
+    }
+
+    /**
+     * Handle every Tomcat request on its own virtual thread
+     *
+     * @param virtualThreadExecutor the virtual thread per task executor
+     * @return TomcatProtocolHandlerCustomizer<ProtocolHandler> the customizer replacing the request
+     *     thread pool
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandler(
+            ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+
+    /**
+     * Replace the application task executor, used for @Async methods and MVC async requests, with
+     * virtual threads
+     *
+     * @param virtualThreadExecutor the virtual thread per task executor
+     * @return AsyncTaskExecutor the application task executor
+     */
+    @Bean(
+            name = {
+                TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+                "taskExecutor"
+            })
+    public AsyncTaskExecutor applicationTaskExecutor(ExecutorService virtualThreadExecutor) {
+        return new TaskExecutorAdapter(virtualThreadExecutor);
+    }
+}
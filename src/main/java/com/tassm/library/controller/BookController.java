@@ -1,14 +1,48 @@
 package com.tassm.library.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.tassm.library.exception.BadRequestException;
+import com.tassm.library.exception.PreconditionFailedException;
+import com.tassm.library.exception.ResourceNotFoundException;
+import com.tassm.library.model.dto.BookBatchDTO;
+import com.tassm.library.model.dto.BookChangePageDTO;
 import com.tassm.library.model.dto.BookDTO;
+import com.tassm.library.model.dto.BookPageDTO;
+import com.tassm.library.model.dto.BookSearchResultDTO;
 import com.tassm.library.model.dto.CreateBookDTO;
+import com.tassm.library.model.dto.ImportResultDTO;
+import com.tassm.library.model.dto.WriteStatusDTO;
+import com.tassm.library.repository.BookFilter;
+import com.tassm.library.service.BookChangeFeedService;
+import com.tassm.library.service.BookExportService;
+import com.tassm.library.service.BookSearchService;
 import com.tassm.library.service.BookService;
+import com.tassm.library.service.BookWrite;
+import com.tassm.library.service.CatalogueChangeCounter;
+import com.tassm.library.service.ExportFormat;
+import com.tassm.library.service.WriteBehindService;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.time.Duration;
 import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.hibernate.validator.constraints.ISBN;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -17,83 +51,337 @@ import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+/*
+ * The book API served by Spring MVC, see ReactiveBookController for the reads served by WebFlux
+ * with the reactive profile.
+ */
 @Validated
 @RestController
 @RequestMapping("/book")
+@Profile("!reactive")
 public class BookController {
 
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 1000;
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final int MAX_IMPORT_SIZE = 10000;
+    static final int MAX_BATCH_SIZE = 1000;
+    static final String NDJSON = "application/x-ndjson";
+    static final int DEFAULT_SEARCH_PAGE_SIZE = 20;
+    static final int MAX_SEARCH_PAGE_SIZE = 100;
+    static final String PREFER_HEADER = "Prefer";
+    static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+    private static final Pattern PREFER_WAIT = Pattern.compile("\\bwait=(\\d{1,9})\\b");
+    private static final Pattern VERSION_ETAG = Pattern.compile("\"(\\d{1,18})\"");
+
     @Autowired BookService bookService;
+    @Autowired BookExportService bookExportService;
+    @Autowired BookSearchService bookSearchService;
+    @Autowired CatalogueChangeCounter catalogueChangeCounter;
+    @Autowired BookChangeFeedService bookChangeFeedService;
+
+    @Autowired(required = false)
+    WriteBehindService writeBehindService;
+
+    @Value("${library.write-behind.max-wait:5s}")
+    Duration maxWriteWait;
+
+    @Autowired ObjectMapper objectMapper;
 
     /**
-     * Request handler to retrieve multiple books with GET request
+     * Request handler to retrieve a page of books with GET request, the filters can be combined.
+     * When there are more books to retrieve the cursor for the next page is returned in the
+     * X-Next-Cursor and Link headers.
+     *
+     * <p>The version of the catalogue is returned as a weak ETag, when the If-None-Match header
+     * matches it nothing has changed and 304 is returned without querying the database.
      *
      * @param authorName the name of the author is used to filter
      * @param rangeStart the start of the publictionYear range to filter
      * @param rangeEnd the end of the publictionYear range to filter
-     * @return ResponseEntity<List<BookDTO>> the collection of books returned according to the
-     *     filters
+     * @param titlePrefix the start of the title to filter
+     * @param cursor the cursor of the page to retrieve, omitted for the first page
+     * @param limit the maximum number of books to return
+     * @param request the request, used to check the If-None-Match header
+     * @return ResponseEntity<List<BookDTO>> the page of books returned according to the filters
      */
     @GetMapping(produces = "application/json")
     public ResponseEntity<List<BookDTO>> getMany(
             @RequestParam(required = false) String authorName,
             @RequestParam(required = false) Integer rangeStart,
-            @RequestParam(required = false) Integer rangeEnd) {
-        // TODO: this kind of validation is commonly useful and should be rewritten into an aspect
-        // and annotation
-        if (authorName != null && (rangeStart != null || rangeEnd != null)) {
-            throw new BadRequestException(
-                    "Only one of author or year range query can be specified!");
+            @RequestParam(required = false) Integer rangeEnd,
+            @RequestParam(required = false) String titlePrefix,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) @Min(1) @Max(MAX_PAGE_SIZE)
+                    int limit,
+            ServletWebRequest request) {
+        BookFilter filter = toFilter(authorName, rangeStart, rangeEnd, titlePrefix);
+        String etag = "W/\"" + catalogueChangeCounter.currentVersion() + "\"";
+        if (request.checkNotModified(etag)) {
+            return null;
         }
-        if ((rangeStart != null && rangeEnd == null) || (rangeEnd != null && rangeStart == null)) {
-            throw new BadRequestException(
-                    "Both rangeStart and rangeEnd must be provided for year range query");
+        BookPageDTO page = bookService.findBooks(filter, cursor, limit);
+        ResponseEntity.BodyBuilder response =
+                ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache());
+        if (page.getNextCursor() == null) {
+            return response.body(page.getBooks());
         }
-        return ResponseEntity.ok(bookService.findBooks(authorName, rangeStart, rangeEnd));
+        String next =
+                ServletUriComponentsBuilder.fromCurrentRequest()
+                        .replaceQueryParam("cursor", page.getNextCursor())
+                        .toUriString();
+        return response.header(NEXT_CURSOR_HEADER, page.getNextCursor())
+                .header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"")
+                .body(page.getBooks());
     }
 
     /**
-     * Request handler to persist a book in the database
+     * Request handler to stream every book matching the filters as newline delimited JSON, for
+     * clients which need the whole result without paging through it
+     *
+     * @param authorName the name of the author is used to filter
+     * @param rangeStart the start of the publictionYear range to filter
+     * @param rangeEnd the end of the publictionYear range to filter
+     * @param titlePrefix the start of the title to filter
+     * @return ResponseEntity<StreamingResponseBody> the books written one JSON document per line
+     */
+    @GetMapping(params = "stream=true", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamMany(
+            @RequestParam(required = false) String authorName,
+            @RequestParam(required = false) Integer rangeStart,
+            @RequestParam(required = false) Integer rangeEnd,
+            @RequestParam(required = false) String titlePrefix) {
+        BookFilter filter = toFilter(authorName, rangeStart, rangeEnd, titlePrefix);
+        StreamingResponseBody body =
+                out -> {
+                    JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+                    // each document is terminated by a newline rather than the default space
+                    generator.setRootValueSeparator(null);
+                    bookService.streamBooks(
+                            filter,
+                            dto -> {
+                                try {
+                                    generator.writeObject(dto);
+                                    generator.writeRaw('\n');
+                                } catch (IOException e) {
+                                    throw new UncheckedIOException(e);
+                                }
+                            });
+                    generator.close();
+                };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    /**
+     * Request handler to search the titles and author names of books, the last word of the query
+     * also matches as a prefix. Results are ranked by relevance, only the first 1000 can be paged
+     * through.
+     *
+     * @param q the text to search for
+     * @param page the page of results, starting at 0
+     * @param size the number of results per page
+     * @return ResponseEntity<BookSearchResultDTO> the page of matching books, best match first
+     */
+    @GetMapping(value = "/search", produces = "application/json")
+    public ResponseEntity<BookSearchResultDTO> searchBooks(
+            @RequestParam @NotBlank String q,
+            @RequestParam(defaultValue = "0") @Min(0) int page,
+            @RequestParam(defaultValue = "" + DEFAULT_SEARCH_PAGE_SIZE)
+                    @Min(1)
+                    @Max(MAX_SEARCH_PAGE_SIZE)
+                    int size) {
+        return ResponseEntity.ok(bookSearchService.search(q, page, size));
+    }
+
+    /**
+     * Request handler to export every book in the catalogue, streamed straight from the database as
+     * newline delimited JSON or CSV
+     *
+     * @param format the format of the export, either ndjson (default) or csv
+     * @return ResponseEntity<StreamingResponseBody> the books written as an attachment
+     */
+    @GetMapping(value = "/export")
+    public ResponseEntity<StreamingResponseBody> exportBooks(
+            @RequestParam(defaultValue = "ndjson") String format) {
+        ExportFormat exportFormat = ExportFormat.parse(format);
+        StreamingResponseBody body = out -> bookExportService.exportBooks(exportFormat, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+                .header(
+                        HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment()
+                                .filename(exportFormat.getFileName())
+                                .build()
+                                .toString())
+                .body(body);
+    }
+
+    /**
+     * Request handler to persist a book in the database. In write-behind mode the book is queued
+     * and 202 is returned with the status of the write, unless it completes within the wait
+     * requested with a Prefer: wait=<seconds> header.
      *
      * @param dto A DTO representing the book to create
-     * @return ResponseEntity<BookDTO> the book as it was created
+     * @param prefer the Prefer header of the request
+     * @return ResponseEntity<?> the book as it was created, or the status of the queued write
      */
     @PostMapping(produces = "application/json")
-    public ResponseEntity<BookDTO> createBook(@RequestBody @Valid CreateBookDTO dto) {
-        BookDTO created = bookService.saveBookAndAuthors(dto);
+    public ResponseEntity<?> createBook(
+            @RequestBody @Valid CreateBookDTO dto,
+            @RequestHeader(name = PREFER_HEADER, required = false) String prefer)
+            throws InterruptedException {
+        BookDTO created;
+        if (writeBehindService != null) {
+            BookWrite write = writeBehindService.submitCreate(dto);
+            Optional<BookDTO> completed = write.await(preferredWait(prefer));
+            if (completed.isEmpty()) {
+                return accepted(write);
+            }
+            created = completed.get();
+        } else {
+            created = bookService.saveBookAndAuthors(dto);
+        }
         URI uri = URI.create("/book/" + created.getIsbn());
-        return ResponseEntity.created(uri).body(created);
+        return withETag(ResponseEntity.created(uri), created).body(created);
     }
 
     /**
-     * Request handler to retrieve a single book by ISBN
+     * Request handler to import many books in one request. Records which conflict with an existing
+     * book are skipped and reported in the response rather than failing the import.
+     *
+     * @param dtos DTOs representing the books to create
+     * @return ResponseEntity<ImportResultDTO> the number of books created and the conflicts
+     */
+    @PostMapping(value = "/import", produces = "application/json")
+    public ResponseEntity<ImportResultDTO> importBooks(
+            @RequestBody @Size(min = 1, max = MAX_IMPORT_SIZE) List<@Valid CreateBookDTO> dtos) {
+        return ResponseEntity.ok(bookService.importBooks(dtos));
+    }
+
+    /**
+     * Request handler to retrieve a single book by ISBN, the version of the book is returned as its
+     * ETag. When the If-None-Match header matches the current version 304 is returned, checked with
+     * only the version of the book rather than loading the whole book.
      *
      * @param isbn The ISBN identifier of the book to create
+     * @param request the request, used to check the If-None-Match header
      * @return ResponseEntity<BookDTO> the book with matching ISBN (if present)
      */
     @GetMapping(value = "/{isbn}", produces = "application/json")
     public ResponseEntity<BookDTO> getByIsbn(
-            @Valid @ISBN @PathVariable(name = "isbn") String isbn) {
-
+            @Valid @ISBN @PathVariable(name = "isbn") String isbn, ServletWebRequest request) {
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+                && request.checkNotModified(etag(bookService.findBookVersion(isbn)))) {
+            return null;
+        }
         BookDTO dto = bookService.findBookByIsbn(isbn);
-        return ResponseEntity.ok(dto);
+        return withETag(ResponseEntity.ok(), dto).body(dto);
     }
 
     /**
-     * Request handler to update a book
+     * Request handler to retrieve many books by ISBN in one request, for clients which would
+     * otherwise request them one at a time. Books which do not exist are listed in the response
+     * rather than failing the request.
+     *
+     * @param isbns the ISBNs of the books, up to MAX_BATCH_SIZE
+     * @return ResponseEntity<BookBatchDTO> the books found and the ISBNs not found
+     */
+    @PostMapping(value = "/batch", produces = "application/json")
+    public ResponseEntity<BookBatchDTO> getBatch(
+            @RequestBody @Size(min = 1, max = MAX_BATCH_SIZE) List<@NotBlank @ISBN String> isbns) {
+        return ResponseEntity.ok(bookService.findBooksByIsbn(isbns));
+    }
+
+    /**
+     * Request handler to update a book. With an If-Match header of the ETag of the book the update
+     * is only applied if the book has not changed since, otherwise 412 is returned. In write-behind
+     * mode the update is queued in the same way as a created book.
      *
      * @param isbn The ISBN identifier of the book to update
      * @param dto A DTO representing any field to update in the existing book
-     * @return ResponseEntity<BookDTO> the updated book
+     * @param ifMatch the If-Match header of the request
+     * @param prefer the Prefer header of the request
+     * @return ResponseEntity<?> the updated book, or the status of the queued write
      */
     @PatchMapping(value = "/{isbn}", produces = "application/json")
-    public ResponseEntity<BookDTO> patchBook(
-            @PathVariable(name = "isbn") String isbn, @RequestBody @Valid BookDTO dto) {
-        dto = bookService.updateBookAndAuthors(isbn, dto);
-        return ResponseEntity.ok(dto);
+    public ResponseEntity<?> patchBook(
+            @PathVariable(name = "isbn") String isbn,
+            @RequestBody @Valid BookDTO dto,
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestHeader(name = PREFER_HEADER, required = false) String prefer)
+            throws InterruptedException {
+        dto.setVersion(ifMatch == null ? null : matchedVersion(ifMatch));
+        if (writeBehindService != null) {
+            BookWrite write = writeBehindService.submitUpdate(isbn, dto);
+            Optional<BookDTO> completed = write.await(preferredWait(prefer));
+            if (completed.isEmpty()) {
+                return accepted(write);
+            }
+            dto = completed.get();
+        } else {
+            dto = bookService.updateBookAndAuthors(isbn, dto);
+        }
+        return withETag(ResponseEntity.ok(), dto).body(dto);
+    }
+
+    /**
+     * Request handler to retrieve the status of a write queued in write-behind mode
+     *
+     * @param id the id of the write
+     * @return ResponseEntity<WriteStatusDTO> the status of the write
+     */
+    @GetMapping(value = "/writes/{id}", produces = "application/json")
+    public ResponseEntity<WriteStatusDTO> getWriteStatus(@PathVariable(name = "id") String id) {
+        Optional<BookWrite> write =
+                writeBehindService == null ? Optional.empty() : writeBehindService.find(id);
+        if (write.isEmpty()) {
+            throw new ResourceNotFoundException("Write " + id + " was not found");
+        }
+        return ResponseEntity.ok(write.get().toStatusDTO());
+    }
+
+    /**
+     * Request handler to read the changes to the catalogue after a sequence, so a copy of the
+     * catalogue can be kept up to date without rescanning it. Without a sequence only the sequence
+     * of the last change is returned, to follow the catalogue from after a scan. Returns 410 when
+     * the changes have been pruned, the catalogue must then be rescanned.
+     *
+     * @param since the sequence of the last change already read
+     * @param limit the maximum number of changes to return
+     * @return ResponseEntity<BookChangePageDTO> the changes and the sequence of the last change
+     */
+    @GetMapping(value = "/changes", produces = "application/json")
+    public ResponseEntity<BookChangePageDTO> getChanges(
+            @RequestParam(required = false) @Min(0) Long since,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) @Min(1) @Max(MAX_PAGE_SIZE)
+                    int limit) {
+        return ResponseEntity.ok(bookChangeFeedService.findChanges(since, limit));
+    }
+
+    /**
+     * Request handler to stream the changes to the catalogue as server-sent events, starting after
+     * the sequence given by the Last-Event-ID header of a reconnecting client or by the since
+     * parameter, or with the next change when neither is given
+     *
+     * @param since the sequence of the last change already read
+     * @param lastEventId the id of the last event received before reconnecting
+     * @return SseEmitter the stream of changes
+     */
+    @GetMapping(value = "/changes/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(
+            @RequestParam(required = false) @Min(0) Long since,
+            @RequestHeader(name = LAST_EVENT_ID_HEADER, required = false) @Min(0)
+                    Long lastEventId) {
+        return bookChangeFeedService.subscribe(lastEventId != null ? lastEventId : since);
     }
 
     /**
@@ -107,4 +395,59 @@ public class BookController {
         bookService.deleteBook(isbn);
         return ResponseEntity.ok().body(null);
     }
+
+    private ResponseEntity<WriteStatusDTO> accepted(BookWrite write) {
+        return ResponseEntity.accepted()
+                .location(URI.create("/book/writes/" + write.getId()))
+                .body(write.toStatusDTO());
+    }
+
+    private static String etag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    private static ResponseEntity.BodyBuilder withETag(
+            ResponseEntity.BodyBuilder response, BookDTO book) {
+        return book.getVersion() == null ? response : response.eTag(etag(book.getVersion()));
+    }
+
+    /**
+     * The version required by an If-Match header, null for * which matches any version. Only a
+     * single strong ETag can match, anything else cannot match the book and fails the request.
+     */
+    private static Long matchedVersion(String ifMatch) {
+        String tag = ifMatch.trim();
+        if (tag.equals("*")) {
+            return null;
+        }
+        Matcher version = VERSION_ETAG.matcher(tag);
+        if (!version.matches()) {
+            throw new PreconditionFailedException("If-Match must be the ETag of the book, or *");
+        }
+        return Long.parseLong(version.group(1));
+    }
+
+    /** The wait requested with the RFC 7240 Prefer header, capped to the configured maximum */
+    private Duration preferredWait(String prefer) {
+        if (prefer == null) {
+            return Duration.ZERO;
+        }
+        Matcher wait = PREFER_WAIT.matcher(prefer);
+        if (!wait.find()) {
+            return Duration.ZERO;
+        }
+        Duration requested = Duration.ofSeconds(Long.parseLong(wait.group(1)));
+        return requested.compareTo(maxWriteWait) < 0 ? requested : maxWriteWait;
+    }
+
+    static BookFilter toFilter(
+            String authorName, Integer rangeStart, Integer rangeEnd, String titlePrefix) {
+        // TODO: this kind of validation is commonly useful and should be rewritten into an aspect
+        // and annotation
+        if ((rangeStart != null && rangeEnd == null) || (rangeEnd != null && rangeStart == null)) {
+            throw new BadRequestException(
+                    "Both rangeStart and rangeEnd must be provided for year range query");
+        }
+        return new BookFilter(authorName, rangeStart, rangeEnd, titlePrefix);
+    }
 }
@@ -0,0 +1,167 @@
+package com.tassm.library.controller;
+
+import static com.tassm.library.controller.BookController.DEFAULT_PAGE_SIZE;
+import static com.tassm.library.controller.BookController.MAX_BATCH_SIZE;
+import static com.tassm.library.controller.BookController.MAX_PAGE_SIZE;
+import static com.tassm.library.controller.BookController.NDJSON;
+import static com.tassm.library.controller.BookController.NEXT_CURSOR_HEADER;
+
+import com.tassm.library.model.dto.BookBatchDTO;
+import com.tassm.library.model.dto.BookDTO;
+import com.tassm.library.repository.BookFilter;
+import com.tassm.library.service.CatalogueChangeCounter;
+import com.tassm.library.service.ReactiveBookService;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+import java.util.List;
+import org.hibernate.validator.constraints.ISBN;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * The reads of the book API served by WebFlux with the reactive profile, with the same paths,
+ * parameters, headers and responses as BookController. A request waiting for the database holds
+ * no thread, so many more concurrent connections can be held open than there are threads.
+ *
+ * Only the lookups and listings are served. Writes, search, export and the change feed are served
+ * by instances without the reactive profile, and answer 404 here.
+ */
+@Validated
+@RestController
+@RequestMapping("/book")
+@Profile("reactive")
+public class ReactiveBookController {
+
+    @Autowired ReactiveBookService reactiveBookService;
+    @Autowired CatalogueChangeCounter catalogueChangeCounter;
+
+    /**
+     * Request handler to retrieve a page of books with GET request, see BookController.getMany
+     *
+     * @param authorName the name of the author is used to filter
+     * @param rangeStart the start of the publictionYear range to filter
+     * @param rangeEnd the end of the publictionYear range to filter
+     * @param titlePrefix the start of the title to filter
+     * @param cursor the cursor of the page to retrieve, omitted for the first page
+     * @param limit the maximum number of books to return
+     * @param exchange the exchange, used to check the If-None-Match header
+     * @return Mono<ResponseEntity<List<BookDTO>>> the page of books returned according to the
+     *     filters
+     */
+    @GetMapping(produces = "application/json")
+    public Mono<ResponseEntity<List<BookDTO>>> getMany(
+            @RequestParam(required = false) String authorName,
+            @RequestParam(required = false) Integer rangeStart,
+            @RequestParam(required = false) Integer rangeEnd,
+            @RequestParam(required = false) String titlePrefix,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) @Min(1) @Max(MAX_PAGE_SIZE)
+                    int limit,
+            ServerWebExchange exchange) {
+        BookFilter filter = BookController.toFilter(authorName, rangeStart, rangeEnd, titlePrefix);
+        String etag = "W/\"" + catalogueChangeCounter.currentVersion() + "\"";
+        if (exchange.checkNotModified(etag)) {
+            return Mono.empty();
+        }
+        return reactiveBookService
+                .findBooks(filter, cursor, limit)
+                .map(
+                        page -> {
+                            ResponseEntity.BodyBuilder response =
+                                    ResponseEntity.ok()
+                                            .eTag(etag)
+                                            .cacheControl(CacheControl.noCache());
+                            if (page.getNextCursor() == null) {
+                                return response.body(page.getBooks());
+                            }
+                            String next =
+                                    UriComponentsBuilder.fromHttpRequest(exchange.getRequest())
+                                            .replaceQueryParam("cursor", page.getNextCursor())
+                                            .toUriString();
+                            return response.header(NEXT_CURSOR_HEADER, page.getNextCursor())
+                                    .header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"")
+                                    .body(page.getBooks());
+                        });
+    }
+
+    /**
+     * Request handler to stream every book matching the filters as newline delimited JSON, see
+     * BookController.streamMany
+     *
+     * @param authorName the name of the author is used to filter
+     * @param rangeStart the start of the publictionYear range to filter
+     * @param rangeEnd the end of the publictionYear range to filter
+     * @param titlePrefix the start of the title to filter
+     * @return Flux<BookDTO> the books written one JSON document per line as they are read
+     */
+    @GetMapping(params = "stream=true", produces = NDJSON)
+    public Flux<BookDTO> streamMany(
+            @RequestParam(required = false) String authorName,
+            @RequestParam(required = false) Integer rangeStart,
+            @RequestParam(required = false) Integer rangeEnd,
+            @RequestParam(required = false) String titlePrefix) {
+        BookFilter filter = BookController.toFilter(authorName, rangeStart, rangeEnd, titlePrefix);
+        return reactiveBookService.streamBooks(filter);
+    }
+
+    /**
+     * Request handler to retrieve a single book by ISBN, see BookController.getByIsbn
+     *
+     * @param isbn The ISBN identifier of the book to create
+     * @param exchange the exchange, used to check the If-None-Match header
+     * @return Mono<ResponseEntity<BookDTO>> the book with matching ISBN (if present)
+     */
+    @GetMapping(value = "/{isbn}", produces = "application/json")
+    public Mono<ResponseEntity<BookDTO>> getByIsbn(
+            @Valid @ISBN @PathVariable(name = "isbn") String isbn, ServerWebExchange exchange) {
+        Mono<ResponseEntity<BookDTO>> book =
+                reactiveBookService.findBookByIsbn(isbn).map(ReactiveBookController::withETag);
+        if (exchange.getRequest().getHeaders().getFirst(HttpHeaders.IF_NONE_MATCH) == null) {
+            return book;
+        }
+        return reactiveBookService
+                .findBookVersion(isbn)
+                .flatMap(version -> exchange.checkNotModified(etag(version)) ? Mono.empty() : book);
+    }
+
+    /**
+     * Request handler to retrieve many books by ISBN in one request, see BookController.getBatch
+     *
+     * @param isbns the ISBNs of the books, up to MAX_BATCH_SIZE
+     * @return Mono<ResponseEntity<BookBatchDTO>> the books found and the ISBNs not found
+     */
+    @PostMapping(value = "/batch", produces = "application/json")
+    public Mono<ResponseEntity<BookBatchDTO>> getBatch(
+            @RequestBody @Size(min = 1, max = MAX_BATCH_SIZE) List<@NotBlank @ISBN String> isbns) {
+        return reactiveBookService.findBooksByIsbn(isbns).map(ResponseEntity::ok);
+    }
+
+    private static String etag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    private static ResponseEntity<BookDTO> withETag(BookDTO book) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        return book.getVersion() == null
+                ? response.body(book)
+                : response.eTag(etag(book.getVersion())).body(book);
+    }
+}
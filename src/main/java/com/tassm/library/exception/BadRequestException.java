@@ -1,8 +1,11 @@
 package com.tassm.library.exception;
 
+/*
+ * An invalid request, answered with 400. It is expected and created without a stack trace.
+ */
 public class BadRequestException extends RuntimeException {
     public BadRequestException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 
     public BadRequestException(String message, Throwable cause) {
@@ -0,0 +1,54 @@
+package com.tassm.library.exception;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Limits how many errors of each kind are logged per second, so a burst of failing requests
+ * cannot flood the log. Errors beyond the limit are counted, and the count is reported with the
+ * next error of the same kind which is logged.
+ */
+public class ErrorLogLimiter {
+
+    private final int maxPerSecond;
+    private final Map<Class<?>, Window> windows = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxPerSecond the number of errors of each kind logged per second
+     */
+    public ErrorLogLimiter(int maxPerSecond) {
+        this.maxPerSecond = maxPerSecond;
+    }
+
+    /**
+     * Take a permit to log an error of a kind
+     *
+     * @param kind the kind of error, such as its exception class
+     * @return long the number of errors of the kind not logged since the last permit, or -1 when
+     *     this error must not be logged
+     */
+    public long tryAcquire(Class<?> kind) {
+        return windows.computeIfAbsent(kind, k -> new Window()).tryAcquire(System.nanoTime());
+    }
+
+    private class Window {
+        private long start = Long.MIN_VALUE;
+        private int permits;
+        private long suppressed;
+
+        private synchronized long tryAcquire(long now) {
+            if (start == Long.MIN_VALUE || now - start >= 1_000_000_000L) {
+                start = now;
+                permits = 0;
+            }
+            if (permits >= maxPerSecond) {
+                suppressed++;
+                return -1;
+            }
+            permits++;
+            long count = suppressed;
+            suppressed = 0;
+            return count;
+        }
+    }
+}
@@ -1,17 +1,59 @@
 package com.tassm.library.exception;
 
 import com.tassm.library.model.dto.ErrorDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.ConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.CannotCreateTransactionException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.context.request.ServletWebRequest;
 
+/*
+ * Maps exceptions to error responses. Errors which are expected, such as a missing book, are not
+ * logged. Invalid requests and unhandled exceptions are logged at a limited rate, see
+ * ErrorLogLimiter, and the log is written asynchronously, see logback-spring.xml. The responses
+ * whose message never varies are serialized once. The reactive profile has its own handler, see
+ * ReactiveExceptionHandler.
+ */
 @ControllerAdvice
+@Profile("!reactive")
 public class GlobalExceptionHandler {
 
+    private static final Logger log = LoggerFactory.getLogger(GlobalExceptionHandler.class);
+
+    static final PreEncodedError INVALID_REQUEST =
+            new PreEncodedError(
+                    HttpStatus.BAD_REQUEST, "Invalid request body or parameter - try again");
+    static final PreEncodedError BUSY =
+            new PreEncodedError(
+                    HttpStatus.SERVICE_UNAVAILABLE, "The service is busy - try again later");
+    static final PreEncodedError UNHANDLED =
+            new PreEncodedError(
+                    HttpStatus.INTERNAL_SERVER_ERROR,
+                    "An unhandled exception occurred, see appliction logs");
+
+    @Value("${library.errors.log-rate}")
+    int logRate;
+
+    private ErrorLogLimiter logLimiter;
+
+    @PostConstruct
+    void createLogLimiter() {
+        logLimiter = new ErrorLogLimiter(logRate);
+    }
+
     /**
      * Handle resource not found as 404
      *
@@ -40,6 +82,35 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<ErrorDTO>(error, HttpStatus.CONFLICT);
     }
 
+    /**
+     * Handle a resource which existed but is no longer retained as HTTP 410
+     *
+     * @param exception
+     * @param request
+     * @return ResponseEntity<ErrorDTO> The response generated describing the error
+     */
+    @ExceptionHandler(ResourceGoneException.class)
+    public ResponseEntity<ErrorDTO> handleException(
+            ResourceGoneException exception, ServletWebRequest request) {
+        ErrorDTO error = new ErrorDTO(HttpStatus.GONE.value(), exception.getMessage());
+        return new ResponseEntity<ErrorDTO>(error, HttpStatus.GONE);
+    }
+
+    /**
+     * Handle a conditional request whose precondition does not hold as HTTP 412
+     *
+     * @param exception
+     * @param request
+     * @return ResponseEntity<ErrorDTO> The response generated describing the error
+     */
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<ErrorDTO> handleException(
+            PreconditionFailedException exception, ServletWebRequest request) {
+        ErrorDTO error =
+                new ErrorDTO(HttpStatus.PRECONDITION_FAILED.value(), exception.getMessage());
+        return new ResponseEntity<ErrorDTO>(error, HttpStatus.PRECONDITION_FAILED);
+    }
+
     /**
      * Handle validation error as as HTTP 400
      *
@@ -62,14 +133,12 @@ public class GlobalExceptionHandler {
      * @return ResponseEntity<ErrorDTO> The response generated describing the error
      */
     @ExceptionHandler(MethodArgumentNotValidException.class)
-    public ResponseEntity<ErrorDTO> handleException(
+    public ResponseEntity<byte[]> handleException(
             MethodArgumentNotValidException exception, ServletWebRequest request) {
-        ErrorDTO error =
-                new ErrorDTO(
-                        HttpStatus.BAD_REQUEST.value(),
-                        "Invalid request body or parameter - try again");
-        exception.printStackTrace();
-        return new ResponseEntity<ErrorDTO>(error, HttpStatus.BAD_REQUEST);
+        List<String> fields = new ArrayList<>();
+        exception.getBindingResult().getFieldErrors().forEach(e -> fields.add(e.getField()));
+        logError(HttpStatus.BAD_REQUEST, exception, request, String.join(",", fields));
+        return INVALID_REQUEST.toResponse();
     }
 
     /**
@@ -80,14 +149,43 @@ public class GlobalExceptionHandler {
      * @return ResponseEntity<ErrorDTO> The response generated describing the error
      */
     @ExceptionHandler(ConstraintViolationException.class)
-    public ResponseEntity<ErrorDTO> handleException(
+    public ResponseEntity<byte[]> handleException(
             ConstraintViolationException exception, ServletWebRequest request) {
+        List<String> paths = new ArrayList<>();
+        exception.getConstraintViolations().forEach(v -> paths.add(v.getPropertyPath().toString()));
+        logError(HttpStatus.BAD_REQUEST, exception, request, String.join(",", paths));
+        return INVALID_REQUEST.toResponse();
+    }
+
+    /**
+     * Handle a request which timed out waiting for a database connection as HTTP 503, so clients
+     * back off when the connection pool is exhausted
+     *
+     * @param exception
+     * @param request
+     * @return ResponseEntity<ErrorDTO> The response generated describing the error
+     */
+    @ExceptionHandler(CannotCreateTransactionException.class)
+    public ResponseEntity<byte[]> handleException(
+            CannotCreateTransactionException exception, ServletWebRequest request) {
+        return BUSY.toResponse();
+    }
+
+    /**
+     * Handle a request which cannot be accepted now as HTTP 503, asking the client to retry
+     *
+     * @param exception
+     * @param request
+     * @return ResponseEntity<ErrorDTO> The response generated describing the error
+     */
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public ResponseEntity<ErrorDTO> handleException(
+            ServiceUnavailableException exception, ServletWebRequest request) {
         ErrorDTO error =
-                new ErrorDTO(
-                        HttpStatus.BAD_REQUEST.value(),
-                        "Invalid request body or parameter - try again");
-        exception.printStackTrace();
-        return new ResponseEntity<ErrorDTO>(error, HttpStatus.BAD_REQUEST);
+                new ErrorDTO(HttpStatus.SERVICE_UNAVAILABLE.value(), exception.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(error);
     }
 
     /**
@@ -98,13 +196,37 @@ public class GlobalExceptionHandler {
      * @return ResponseEntity<ErrorDTO> The response generated describing the error
      */
     @ExceptionHandler(Exception.class)
-    public ResponseEntity<ErrorDTO> handleException(
-            Exception exception, ServletWebRequest request) {
-        ErrorDTO error =
-                new ErrorDTO(
-                        HttpStatus.INTERNAL_SERVER_ERROR.value(),
-                        "An unhandled exception occurred, see appliction logs");
-        exception.printStackTrace();
-        return new ResponseEntity<ErrorDTO>(error, HttpStatus.INTERNAL_SERVER_ERROR);
+    public ResponseEntity<byte[]> handleException(Exception exception, ServletWebRequest request) {
+        logError(HttpStatus.INTERNAL_SERVER_ERROR, exception, request, exception.getMessage());
+        return UNHANDLED.toResponse();
+    }
+
+    /**
+     * Log a handled error as key-value pairs, with its stack trace for server errors. Errors beyond
+     * the rate limit of their kind are only counted.
+     */
+    private void logError(
+            HttpStatus status, Exception exception, ServletWebRequest request, String detail) {
+        long suppressed = logLimiter.tryAcquire(exception.getClass());
+        if (suppressed < 0) {
+            return;
+        }
+        HttpServletRequest servletRequest = request.getRequest();
+        String format = "status={} method={} path={} error={} detail=\"{}\" suppressed={}";
+        Object[] args = {
+            status.value(),
+            servletRequest.getMethod(),
+            servletRequest.getRequestURI(),
+            exception.getClass().getSimpleName(),
+            detail,
+            suppressed,
+            exception
+        };
+        if (status.is5xxServerError()) {
+            log.error(format, args);
+        } else {
+            // expected errors are logged without their stack trace
+            log.info(format, Arrays.copyOf(args, args.length - 1));
+        }
     }
 }
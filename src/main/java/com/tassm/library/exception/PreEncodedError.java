@@ -0,0 +1,43 @@
+package com.tassm.library.exception;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tassm.library.model.dto.ErrorDTO;
+import java.io.UncheckedIOException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+/*
+ * An error response whose message never varies, serialized to JSON once so returning it costs no
+ * serialization. The body is the same as the ErrorDTO it is created from.
+ */
+public final class PreEncodedError {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final HttpStatus status;
+    private final byte[] body;
+
+    /**
+     * @param status the status of the response
+     * @param message the message of the ErrorDTO
+     */
+    public PreEncodedError(HttpStatus status, String message) {
+        this.status = status;
+        try {
+            this.body = objectMapper.writeValueAsBytes(new ErrorDTO(status.value(), message));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A response with the encoded body, sharing its bytes with every other response
+     *
+     * @return ResponseEntity<byte[]> the JSON response
+     */
+    public ResponseEntity<byte[]> toResponse() {
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+}
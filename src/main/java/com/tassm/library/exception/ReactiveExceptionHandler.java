@@ -0,0 +1,161 @@
+package com.tassm.library.exception;
+
+import com.tassm.library.model.dto.ErrorDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.validation.ConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebInputException;
+
+/*
+ * Maps the exceptions of the reactive profile to the same error responses as
+ * GlobalExceptionHandler, for the reads served by ReactiveBookController.
+ */
+@ControllerAdvice
+@Profile("reactive")
+public class ReactiveExceptionHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveExceptionHandler.class);
+
+    @Value("${library.errors.log-rate}")
+    int logRate;
+
+    private ErrorLogLimiter logLimiter;
+
+    @PostConstruct
+    void createLogLimiter() {
+        logLimiter = new ErrorLogLimiter(logRate);
+    }
+
+    /**
+     * Handle resource not found as 404
+     *
+     * @param exception
+     * @return ResponseEntity<ErrorDTO> The response generated describing the error
+     */
+    @ExceptionHandler(ResourceNotFoundException.class)
+    public ResponseEntity<ErrorDTO> handleException(ResourceNotFoundException exception) {
+        ErrorDTO error = new ErrorDTO(HttpStatus.NOT_FOUND.value(), exception.getMessage());
+        return new ResponseEntity<ErrorDTO>(error, HttpStatus.NOT_FOUND);
+    }
+
+    /**
+     * Handle validation error as as HTTP 400
+     *
+     * @param exception
+     * @return ResponseEntity<ErrorDTO> The response generated describing the error
+     */
+    @ExceptionHandler(BadRequestException.class)
+    public ResponseEntity<ErrorDTO> handleException(BadRequestException exception) {
+        ErrorDTO error = new ErrorDTO(HttpStatus.BAD_REQUEST.value(), exception.getMessage());
+        return new ResponseEntity<ErrorDTO>(error, HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * Handle constraint violation error as as HTTP 400
+     *
+     * @param exception
+     * @param exchange
+     * @return ResponseEntity<byte[]> The response generated describing the error
+     */
+    @ExceptionHandler(ConstraintViolationException.class)
+    public ResponseEntity<byte[]> handleException(
+            ConstraintViolationException exception, ServerWebExchange exchange) {
+        List<String> paths = new ArrayList<>();
+        exception.getConstraintViolations().forEach(v -> paths.add(v.getPropertyPath().toString()));
+        logError(HttpStatus.BAD_REQUEST, exception, exchange, String.join(",", paths));
+        return GlobalExceptionHandler.INVALID_REQUEST.toResponse();
+    }
+
+    /**
+     * Handle a missing or malformed parameter or body as HTTP 400
+     *
+     * @param exception
+     * @param exchange
+     * @return ResponseEntity<byte[]> The response generated describing the error
+     */
+    @ExceptionHandler(ServerWebInputException.class)
+    public ResponseEntity<byte[]> handleException(
+            ServerWebInputException exception, ServerWebExchange exchange) {
+        logError(HttpStatus.BAD_REQUEST, exception, exchange, exception.getReason());
+        return GlobalExceptionHandler.INVALID_REQUEST.toResponse();
+    }
+
+    /**
+     * Handle other errors of the request, such as an unsupported media type, with their status
+     *
+     * @param exception
+     * @return ResponseEntity<ErrorDTO> The response generated describing the error
+     */
+    @ExceptionHandler(ResponseStatusException.class)
+    public ResponseEntity<ErrorDTO> handleException(ResponseStatusException exception) {
+        HttpStatusCode status = exception.getStatusCode();
+        ErrorDTO error = new ErrorDTO(status.value(), exception.getReason());
+        return new ResponseEntity<ErrorDTO>(error, status);
+    }
+
+    /**
+     * Handle a request which timed out waiting for a database connection as HTTP 503, so clients
+     * back off when the connection pool is exhausted
+     *
+     * @param exception
+     * @return ResponseEntity<byte[]> The response generated describing the error
+     */
+    @ExceptionHandler(DataAccessResourceFailureException.class)
+    public ResponseEntity<byte[]> handleException(DataAccessResourceFailureException exception) {
+        return GlobalExceptionHandler.BUSY.toResponse();
+    }
+
+    /**
+     * Handle any other exception as HTTP 500
+     *
+     * @param exception
+     * @param exchange
+     * @return ResponseEntity<byte[]> The response generated describing the error
+     */
+    @ExceptionHandler(Exception.class)
+    public ResponseEntity<byte[]> handleException(Exception exception, ServerWebExchange exchange) {
+        logError(HttpStatus.INTERNAL_SERVER_ERROR, exception, exchange, exception.getMessage());
+        return GlobalExceptionHandler.UNHANDLED.toResponse();
+    }
+
+    /** Log a handled error in the same form as GlobalExceptionHandler */
+    private void logError(
+            HttpStatus status, Exception exception, ServerWebExchange exchange, String detail) {
+        long suppressed = logLimiter.tryAcquire(exception.getClass());
+        if (suppressed < 0) {
+            return;
+        }
+        ServerHttpRequest request = exchange.getRequest();
+        String format = "status={} method={} path={} error={} detail=\"{}\" suppressed={}";
+        Object[] args = {
+            status.value(),
+            request.getMethod(),
+            request.getPath().value(),
+            exception.getClass().getSimpleName(),
+            detail,
+            suppressed,
+            exception
+        };
+        if (status.is5xxServerError()) {
+            log.error(format, args);
+        } else {
+            // expected errors are logged without their stack trace
+            log.info(format, Arrays.copyOf(args, args.length - 1));
+        }
+    }
+}
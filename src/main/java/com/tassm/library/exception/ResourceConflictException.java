@@ -1,8 +1,12 @@
 package com.tassm.library.exception;
 
+/*
+ * A write conflicting with the current state, answered with 409. Created from a message only it
+ * is an expected outcome without a stack trace, wrapping a cause it keeps its stack trace.
+ */
 public class ResourceConflictException extends RuntimeException {
     public ResourceConflictException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 
     public ResourceConflictException(String message, Throwable cause) {
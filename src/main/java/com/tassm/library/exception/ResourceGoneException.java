@@ -0,0 +1,27 @@
+package com.tassm.library.exception;
+
+/*
+ * A resource which is no longer retained, answered with 410. It is expected and created without
+ * a stack trace.
+ */
+public class ResourceGoneException extends RuntimeException {
+    public ResourceGoneException(String message) {
+        super(message, null, false, false);
+    }
+
+    public ResourceGoneException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public ResourceGoneException(Throwable cause) {
+        super(cause);
+    }
+
+    protected ResourceGoneException(
+            String message,
+            Throwable cause,
+            boolean enableSuppression,
+            boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
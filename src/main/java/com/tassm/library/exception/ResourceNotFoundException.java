@@ -1,8 +1,12 @@
 package com.tassm.library.exception;
 
+/*
+ * A lookup of a missing resource, answered with 404. Scanners probing for ISBNs make this the
+ * most frequent error, so it is created without a stack trace.
+ */
 public class ResourceNotFoundException extends RuntimeException {
     public ResourceNotFoundException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 
     public ResourceNotFoundException(String message, Throwable cause) {
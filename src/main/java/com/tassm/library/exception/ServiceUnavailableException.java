@@ -0,0 +1,27 @@
+package com.tassm.library.exception;
+
+/*
+ * Load shedding, answered with 503. It is thrown most when the application is busiest, so from a
+ * message only it is created without a stack trace.
+ */
+public class ServiceUnavailableException extends RuntimeException {
+    public ServiceUnavailableException(String message) {
+        super(message, null, false, false);
+    }
+
+    public ServiceUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public ServiceUnavailableException(Throwable cause) {
+        super(cause);
+    }
+
+    protected ServiceUnavailableException(
+            String message,
+            Throwable cause,
+            boolean enableSuppression,
+            boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
@@ -0,0 +1,32 @@
+package com.tassm.library.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/*
+ * Hibernate statement inspector counting the SQL statements prepared by the current thread. It
+ * only sees statements issued through hibernate, not those run directly with a JdbcTemplate.
+ */
+public class SqlStatementCounter implements StatementInspector {
+
+    private final ThreadLocal<int[]> count = ThreadLocal.withInitial(() -> new int[1]);
+
+    @Override
+    public String inspect(String sql) {
+        count.get()[0]++;
+        return sql;
+    }
+
+    /** Reset the count of the current thread to zero */
+    public void reset() {
+        count.get()[0] = 0;
+    }
+
+    /**
+     * The number of statements prepared by the current thread since the last reset
+     *
+     * @return int the number of statements
+     */
+    public int get() {
+        return count.get()[0];
+    }
+}
@@ -0,0 +1,69 @@
+package com.tassm.library.model;
+
+/*
+ * Canonical form of an ISBN. Books are stored and looked up by their ISBN-13 as a number, so the
+ * hyphenated and plain forms of an ISBN-13, and the ISBN-10 it was derived from, all identify the
+ * same book. The ISBN a book was created with is kept as it was written for display.
+ *
+ * Check digits are validated by @ISBN on the requests and are not validated again here.
+ */
+public final class Isbn {
+
+    /** The canonical value of a string which is not an ISBN, no book has it */
+    public static final long INVALID = -1;
+
+    private Isbn() {}
+
+    /**
+     * The ISBN-13 of an ISBN-10 or ISBN-13 as a number, ignoring hyphens and spaces. An ISBN-10 is
+     * given the 978 prefix and the check digit of the ISBN-13.
+     *
+     * @param isbn the ISBN
+     * @return long the ISBN-13, or INVALID if the string is not an ISBN
+     */
+    public static long toIsbn13(String isbn) {
+        long digits = 0;
+        int count = 0;
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c >= '0' && c <= '9' && count < 13) {
+                digits = digits * 10 + (c - '0');
+                count++;
+            } else if ((c == 'X' || c == 'x') && count == 9 && i == lastDigitIndex(isbn)) {
+                // the check digit of an ISBN-10, which is replaced
+                digits = digits * 10;
+                count++;
+            } else if (c != '-' && c != ' ') {
+                return INVALID;
+            }
+        }
+        if (count == 13) {
+            return digits;
+        }
+        if (count != 10) {
+            return INVALID;
+        }
+        long isbn13 = 978_000_000_000L + digits / 10;
+        return isbn13 * 10 + checkDigit(isbn13);
+    }
+
+    /** The ISBN-13 check digit of its first twelve digits */
+    private static int checkDigit(long first12) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            int digit = (int) (first12 % 10);
+            first12 /= 10;
+            // weighted 1, 3, 1, ... from the left, so 3 for the rightmost of the twelve
+            sum += i % 2 == 0 ? 3 * digit : digit;
+        }
+        return (10 - sum % 10) % 10;
+    }
+
+    private static int lastDigitIndex(String isbn) {
+        int i = isbn.length() - 1;
+        while (i >= 0 && (isbn.charAt(i) == ' ' || isbn.charAt(i) == '-')) {
+            i--;
+        }
+        return i;
+    }
+}
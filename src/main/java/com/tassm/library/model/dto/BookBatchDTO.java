@@ -0,0 +1,23 @@
+package com.tassm.library.model.dto;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+
+/*
+ * DTO class to represent the outcome of a batch lookup, the books found in the order they were
+ * requested and the requested ISBNs which do not identify a book
+ */
+
+@Getter
+@Setter
+@RequiredArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class BookBatchDTO {
+    private List<BookDTO> books;
+    private List<String> missingIsbns;
+}
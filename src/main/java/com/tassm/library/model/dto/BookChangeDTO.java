@@ -0,0 +1,26 @@
+package com.tassm.library.model.dto;
+
+import java.time.Instant;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+
+/*
+ * DTO class to represent a change to the catalogue: SAVED with the book as it was saved, or
+ * REMOVED when the ISBN no longer identifies a book
+ */
+
+@Getter
+@Setter
+@RequiredArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class BookChangeDTO {
+    private long sequence;
+    private String type;
+    private String isbn;
+    private BookDTO book;
+    private Instant changedAt;
+}
@@ -0,0 +1,23 @@
+package com.tassm.library.model.dto;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+
+/*
+ * DTO class to represent a page of changes and the sequence of the last change made, there are
+ * more changes to read while the last change of the page is before it
+ */
+
+@Getter
+@Setter
+@RequiredArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class BookChangePageDTO {
+    private List<BookChangeDTO> changes;
+    private long lastSequence;
+}
@@ -1,5 +1,6 @@
 package com.tassm.library.model.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.tassm.library.validation.ValidPublicationYear;
 import jakarta.validation.constraints.Size;
 import java.util.Set;
@@ -12,6 +13,9 @@ import org.hibernate.validator.constraints.ISBN;
 
 /*
  * DTO class to represent the book during update (all fields are optional)
+ *
+ * The version of the book is carried alongside the fields so it is cached with them, it is exposed
+ * as the ETag of the book rather than in the body.
  */
 
 @Getter
@@ -29,4 +33,10 @@ public class BookDTO {
     private Set<String> authorNames;
 
     @ValidPublicationYear private Integer publicationYear;
+
+    @JsonIgnore @EqualsAndHashCode.Exclude private Long version;
+
+    public BookDTO(String isbn, String title, Set<String> authorNames, Integer publicationYear) {
+        this(isbn, title, authorNames, publicationYear, null);
+    }
 }
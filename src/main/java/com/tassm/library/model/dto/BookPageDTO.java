@@ -0,0 +1,23 @@
+package com.tassm.library.model.dto;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+
+/*
+ * DTO class to represent a page of books and the cursor to retrieve the next page (null if this
+ * is the last page)
+ */
+
+@Getter
+@Setter
+@RequiredArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class BookPageDTO {
+    private List<BookDTO> books;
+    private String nextCursor;
+}
@@ -0,0 +1,23 @@
+package com.tassm.library.model.dto;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+
+/*
+ * DTO class to represent a page of search results, best match first, and the number of matching
+ * books (exact up to 1000, a lower bound beyond)
+ */
+
+@Getter
+@Setter
+@RequiredArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class BookSearchResultDTO {
+    private List<BookDTO> books;
+    private long totalHits;
+}
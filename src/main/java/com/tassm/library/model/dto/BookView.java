@@ -0,0 +1,12 @@
+package com.tassm.library.model.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.tassm.library.model.mapping.BookViewSerializer;
+import java.util.List;
+
+/*
+ * Immutable read-only view of a book projected straight from the query result, with the author
+ * names held in a list of exactly their number. Serialized to the same JSON as BookDTO.
+ */
+@JsonSerialize(using = BookViewSerializer.class)
+public record BookView(String isbn, String title, List<String> authorNames, int publicationYear) {}
@@ -0,0 +1,23 @@
+package com.tassm.library.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+
+/*
+ * DTO class to represent a record of a bulk import which was not imported, identified by its
+ * position in the request
+ */
+
+@Getter
+@Setter
+@RequiredArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class ImportConflictDTO {
+    private int index;
+    private String isbn;
+    private String message;
+}
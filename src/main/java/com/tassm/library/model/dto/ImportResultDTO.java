@@ -0,0 +1,23 @@
+package com.tassm.library.model.dto;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+
+/*
+ * DTO class to represent the outcome of a bulk import, the number of books created and the records
+ * which were not imported
+ */
+
+@Getter
+@Setter
+@RequiredArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class ImportResultDTO {
+    private int created;
+    private List<ImportConflictDTO> conflicts;
+}
@@ -0,0 +1,24 @@
+package com.tassm.library.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+
+/*
+ * DTO class to represent the status of a queued write: PENDING, COMPLETED with the book as it was
+ * saved, or FAILED with the reason
+ */
+
+@Getter
+@Setter
+@RequiredArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class WriteStatusDTO {
+    private String id;
+    private String status;
+    private BookDTO book;
+    private String error;
+}
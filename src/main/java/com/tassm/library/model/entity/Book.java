@@ -1,5 +1,7 @@
 package com.tassm.library.model.entity;
 
+import com.tassm.library.model.Isbn;
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
@@ -11,37 +13,62 @@ import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.JoinTable;
 import jakarta.persistence.ManyToMany;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import java.util.HashSet;
 import java.util.Set;
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 /*
  * Hibernate/JPA entity to represent the book in the database.
  * Includes Many-to-Many association with authors.
+ *
+ * Ids are allocated from a pooled sequence rather than an identity column so hibernate can batch
+ * inserts, the same applies to authors.
+ *
+ * Books are identified by the canonical ISBN-13 of their ISBN as a number, see Isbn, which is set
+ * whenever the ISBN is and has the unique index. The column is nullable so it can be added to an
+ * existing table, the ISBN-13 of books saved before it existed is filled in at startup. Books whose
+ * ISBN is not an ISBN are left without one, they are listed but cannot be looked up by ISBN.
+ *
+ * The (publication_year, id) index serves the keyset ordering of the listing queries, and the
+ * (author_id, book_id) index the author filter, the join table primary key leads with book_id.
+ *
+ * The version is incremented by hibernate on every update, including changes to the authors, and
+ * an update of a stale copy of the book fails rather than overwriting the concurrent change.
+ *
+ * Books and their author collections are held in the second level cache, which hibernate updates
+ * as books are written.
  */
 
 @Entity
 @Getter
 @Setter
 @RequiredArgsConstructor
-@AllArgsConstructor
 @EqualsAndHashCode
-@Table(
-        name = "book",
-        indexes = {@Index(columnList = "publication_year"), @Index(columnList = "isbn")})
+@Table(name = "book", indexes = @Index(columnList = "publication_year, id"))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "book")
 public class Book {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_seq")
+    @SequenceGenerator(name = "book_seq", sequenceName = "book_seq", allocationSize = 50)
     private Long id;
 
-    @Column(name = "isbn", unique = true, nullable = false)
+    @Column(name = "isbn", nullable = false)
     private String isbn;
 
+    @Column(name = "isbn13", unique = true)
+    @Setter(AccessLevel.NONE)
+    private Long isbn13;
+
     @Column(name = "title", nullable = false)
     private String title;
 
@@ -51,10 +78,46 @@ public class Book {
     @JoinTable(
             name = "book_author",
             joinColumns = @JoinColumn(name = "book_id"),
-            inverseJoinColumns = @JoinColumn(name = "author_id"))
+            inverseJoinColumns = @JoinColumn(name = "author_id"),
+            indexes = @Index(columnList = "author_id, book_id"))
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "book-authors")
     @EqualsAndHashCode.Exclude
     private Set<Author> authors = new HashSet<>();
 
     @Column(name = "publication_year", nullable = false)
     private int publicationYear;
+
+    @Version
+    @Column(name = "version", nullable = false)
+    private long version;
+
+    public Book(
+            Long id,
+            String isbn,
+            String title,
+            Set<Author> authors,
+            int publicationYear,
+            long version) {
+        this.id = id;
+        setIsbn(isbn);
+        this.title = title;
+        this.authors = authors;
+        this.publicationYear = publicationYear;
+        this.version = version;
+    }
+
+    /**
+     * Set the ISBN and its canonical ISBN-13, throws an IllegalArgumentException if it is not an
+     * ISBN
+     *
+     * @param isbn the ISBN-10 or ISBN-13
+     */
+    public void setIsbn(String isbn) {
+        long canonical = Isbn.toIsbn13(isbn);
+        if (canonical == Isbn.INVALID) {
+            throw new IllegalArgumentException("Not an ISBN: " + isbn);
+        }
+        this.isbn = isbn;
+        this.isbn13 = canonical;
+    }
 }
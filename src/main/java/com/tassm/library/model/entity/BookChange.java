@@ -0,0 +1,61 @@
+package com.tassm.library.model.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import java.time.Instant;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+/*
+ * Hibernate/JPA entity to represent an entry of the change log of the catalogue, written in the
+ * same transaction as the change it records.
+ *
+ * Sequences are assigned by the change log head rather than a database sequence, so they are
+ * contiguous and in commit order. A consumer which has read up to a sequence never later finds a
+ * smaller one.
+ */
+
+@Entity
+@Getter
+@Setter
+@RequiredArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@Table(name = "book_change", indexes = @Index(columnList = "changed_at"))
+public class BookChange {
+
+    /** What happened to the book identified by the ISBN */
+    public enum Type {
+        SAVED,
+        REMOVED
+    }
+
+    @Id
+    @Column(name = "seq")
+    private Long sequence;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "change_type", nullable = false, length = 16)
+    private Type type;
+
+    @Column(name = "isbn", nullable = false)
+    private String isbn;
+
+    /** The book as it was saved as JSON, null when removed */
+    @JdbcTypeCode(SqlTypes.LONG32VARCHAR)
+    @Column(name = "book")
+    private String book;
+
+    @Column(name = "changed_at", nullable = false)
+    private Instant changedAt;
+}
@@ -0,0 +1,35 @@
+package com.tassm.library.model.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+
+/*
+ * Hibernate/JPA entity to represent the single row holding the last sequence of the change log.
+ * Appending locks the row until the transaction completes, which serialises the appends of
+ * concurrent transactions in commit order.
+ */
+
+@Entity
+@Getter
+@Setter
+@RequiredArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@Table(name = "book_change_head")
+public class BookChangeHead {
+
+    /** The id of the only row */
+    public static final long ID = 1;
+
+    @Id private Long id;
+
+    @Column(name = "last_sequence", nullable = false)
+    private long lastSequence;
+}
@@ -22,16 +22,19 @@ public class BookMapperImpl implements BookMapper {
         }
 
         BookDTO bookDTO = new BookDTO();
-        Set<String> authorNames = new HashSet<>();
-
+        // an immutable set of exactly the number of authors, rather than a HashSet and its entries
+        String[] names = new String[book.getAuthors().size()];
+        int i = 0;
         for (Author a : book.getAuthors()) {
-            authorNames.add(a.getName());
+            names[i++] = a.getName();
         }
+        Set<String> authorNames = Set.of(names);
 
         bookDTO.setIsbn(book.getIsbn());
         bookDTO.setPublicationYear(book.getPublicationYear());
         bookDTO.setTitle(book.getTitle());
         bookDTO.setAuthorNames(authorNames);
+        bookDTO.setVersion(book.getVersion());
 
         return bookDTO;
     }
@@ -0,0 +1,46 @@
+package com.tassm.library.model.mapping;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.tassm.library.model.dto.BookView;
+import java.io.IOException;
+import java.util.List;
+
+/*
+ * Writes a BookView field by field with pre-encoded field names, rather than through the bean
+ * introspection and per-property serializer lookups Jackson uses for BookDTO
+ */
+public class BookViewSerializer extends StdSerializer<BookView> {
+
+    private static final SerializedString ISBN = new SerializedString("isbn");
+    private static final SerializedString TITLE = new SerializedString("title");
+    private static final SerializedString AUTHOR_NAMES = new SerializedString("authorNames");
+    private static final SerializedString PUBLICATION_YEAR =
+            new SerializedString("publicationYear");
+
+    public BookViewSerializer() {
+        super(BookView.class);
+    }
+
+    @Override
+    public void serialize(BookView book, JsonGenerator generator, SerializerProvider provider)
+            throws IOException {
+        generator.writeStartObject(book);
+        generator.writeFieldName(ISBN);
+        generator.writeString(book.isbn());
+        generator.writeFieldName(TITLE);
+        generator.writeString(book.title());
+        generator.writeFieldName(AUTHOR_NAMES);
+        List<String> authorNames = book.authorNames();
+        generator.writeStartArray(authorNames, authorNames.size());
+        for (int i = 0; i < authorNames.size(); i++) {
+            generator.writeString(authorNames.get(i));
+        }
+        generator.writeEndArray();
+        generator.writeFieldName(PUBLICATION_YEAR);
+        generator.writeNumber(book.publicationYear());
+        generator.writeEndObject();
+    }
+}
@@ -1,12 +1,17 @@
 package com.tassm.library.repository;
 
 import com.tassm.library.model.entity.Author;
+import jakarta.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface AuthorRepository extends JpaRepository<Author, Long> {
+public interface AuthorRepository extends JpaRepository<Author, Long>, AuthorRepositoryCustom {
 
     /**
      * Find and author by their full name
@@ -15,4 +20,15 @@ public interface AuthorRepository extends JpaRepository<Author, Long> {
      * @return Optional<Author> the author with the matching name
      */
     Optional<Author> findByName(String name);
+
+    /**
+     * Find all authors matching any of the given names in a single query. The result is held in the
+     * query cache until the author table changes, the authors themselves are read from the second
+     * level cache.
+     *
+     * @param names the names of the authors
+     * @return List<Author> the authors with matching names, names without an author are omitted
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    List<Author> findByNameIn(Collection<String> names);
 }
@@ -0,0 +1,18 @@
+package com.tassm.library.repository;
+
+import java.util.Collection;
+
+/*
+ * Author repository operations which cannot be expressed as a derived or JPQL query
+ */
+public interface AuthorRepositoryCustom {
+
+    /**
+     * Insert an author for each of the given names which does not already have one, in a single
+     * statement. Names inserted concurrently by another transaction are skipped rather than failing
+     * on the unique constraint.
+     *
+     * @param names the names of the authors
+     */
+    void insertMissing(Collection<String> names);
+}
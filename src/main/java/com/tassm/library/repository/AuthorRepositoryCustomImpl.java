@@ -0,0 +1,73 @@
+package com.tassm.library.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.sql.DatabaseMetaData;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import javax.sql.DataSource;
+import org.hibernate.action.internal.BulkOperationCleanupAction;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.springframework.boot.jdbc.DatabaseDriver;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.transaction.annotation.Transactional;
+
+/*
+ * Implementation of the custom author repository operations with native SQL, as JPA has no way of
+ * expressing an insert which skips existing rows. Runs in the surrounding JPA transaction.
+ *
+ * Hibernate does not see statements run through JDBC, so when authors are inserted the author
+ * table is registered as modified, as hibernate does for its own native statements. Cached author
+ * queries are then invalidated when the transaction completes.
+ */
+public class AuthorRepositoryCustomImpl implements AuthorRepositoryCustom {
+
+    private static final String POSTGRES_INSERT_MISSING =
+            "INSERT INTO author (id, name) SELECT nextval('author_seq'), n FROM unnest(?) AS n"
+                    + " ON CONFLICT (name) DO NOTHING";
+
+    private static final String MERGE_INSERT_MISSING =
+            "MERGE INTO author a USING (VALUES %s) AS n(name) ON a.name = n.name"
+                    + " WHEN NOT MATCHED THEN INSERT (id, name)"
+                    + " VALUES (NEXT VALUE FOR author_seq, n.name)";
+
+    @PersistenceContext private EntityManager entityManager;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean postgres;
+
+    public AuthorRepositoryCustomImpl(DataSource dataSource) throws MetaDataAccessException {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        String product =
+                JdbcUtils.extractDatabaseMetaData(
+                        dataSource, DatabaseMetaData::getDatabaseProductName);
+        this.postgres = DatabaseDriver.fromProductName(product) == DatabaseDriver.POSTGRESQL;
+    }
+
+    @Override
+    @Transactional
+    public void insertMissing(Collection<String> names) {
+        if (names.isEmpty()) {
+            return;
+        }
+        Object[] values = names.toArray();
+        int inserted;
+        if (postgres) {
+            inserted =
+                    jdbcTemplate.update(
+                            POSTGRES_INSERT_MISSING,
+                            ps -> ps.setArray(1, ps.getConnection().createArrayOf("text", values)));
+        } else {
+            // databases without ON CONFLICT use a standard merge with one row per name
+            String rows = String.join(", ", Collections.nCopies(values.length, "(?)"));
+            inserted = jdbcTemplate.update(String.format(MERGE_INSERT_MISSING, rows), values);
+        }
+        if (inserted > 0) {
+            BulkOperationCleanupAction.schedule(
+                    entityManager.unwrap(SharedSessionContractImplementor.class), Set.of("author"));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.tassm.library.repository;
+
+import com.tassm.library.model.entity.BookChange;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface BookChangeRepository
+        extends JpaRepository<BookChange, Long>, BookChangeRepositoryCustom {
+
+    /**
+     * Find the changes after a sequence, in sequence order
+     *
+     * @param sequence the sequence of the last change already read
+     * @param pageable the page holding the maximum number of changes
+     * @return List<BookChange> the changes
+     */
+    List<BookChange> findBySequenceGreaterThanOrderBySequenceAsc(long sequence, Pageable pageable);
+
+    /**
+     * Find the sequence of the oldest retained change
+     *
+     * @return Optional<Long> the sequence, empty when no changes are retained
+     */
+    @Query("SELECT MIN(c.sequence) FROM BookChange c")
+    Optional<Long> findFirstSequence();
+
+    /**
+     * Find the sequence of the newest change made before an instant
+     *
+     * @param before the instant
+     * @return Optional<Long> the sequence, empty when there is no such change
+     */
+    @Query("SELECT MAX(c.sequence) FROM BookChange c WHERE c.changedAt < :before")
+    Optional<Long> findLastSequenceBefore(Instant before);
+
+    /**
+     * Delete the changes up to and including a sequence
+     *
+     * @param sequence the sequence of the last change to delete
+     * @return int the number of changes deleted
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM BookChange c WHERE c.sequence <= :sequence")
+    int deleteThrough(long sequence);
+}
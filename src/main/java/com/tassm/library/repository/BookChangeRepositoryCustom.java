@@ -0,0 +1,33 @@
+package com.tassm.library.repository;
+
+import com.tassm.library.model.entity.BookChange;
+import java.util.List;
+
+/*
+ * Change log operations which assign sequences through the change log head
+ */
+public interface BookChangeRepositoryCustom {
+
+    /**
+     * Append changes to the change log in the surrounding transaction, assigning each the next
+     * sequence. Concurrent appends wait for this transaction to complete.
+     *
+     * @param changes the changes without sequences, in the order they were made
+     */
+    void append(List<BookChange> changes);
+
+    /**
+     * Create the change log head at sequence 0 if it does not exist, in a transaction of its own.
+     * Fails on the primary key if another instance creates it concurrently.
+     *
+     * @return boolean true if the head was created, false if it already existed
+     */
+    boolean createHead();
+
+    /**
+     * Find the sequence of the last change appended
+     *
+     * @return long the sequence, 0 when nothing has been appended
+     */
+    long findLastSequence();
+}
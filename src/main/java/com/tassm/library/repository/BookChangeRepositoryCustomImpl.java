@@ -0,0 +1,70 @@
+package com.tassm.library.repository;
+
+import com.tassm.library.model.entity.BookChange;
+import com.tassm.library.model.entity.BookChangeHead;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.util.List;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/*
+ * Implementation of the change log operations. The head row is created at startup, see
+ * BookChangeFeedService, so appends only ever advance it and concurrent first appends do not race
+ * to insert it.
+ */
+public class BookChangeRepositoryCustomImpl implements BookChangeRepositoryCustom {
+
+    private static final String ADVANCE_HEAD =
+            "UPDATE BookChangeHead h SET h.lastSequence = h.lastSequence + :count WHERE h.id = :id";
+
+    private static final String SELECT_HEAD =
+            "SELECT h.lastSequence FROM BookChangeHead h WHERE h.id = :id";
+
+    @PersistenceContext private EntityManager entityManager;
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void append(List<BookChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        // advancing the head locks it until the transaction completes, and the update sees the
+        // sequence committed by the transaction it waited for
+        int updated =
+                entityManager
+                        .createQuery(ADVANCE_HEAD)
+                        .setParameter("count", (long) changes.size())
+                        .setParameter("id", BookChangeHead.ID)
+                        .executeUpdate();
+        if (updated == 0) {
+            throw new IllegalStateException("The change log head has not been created");
+        }
+        long sequence =
+                entityManager
+                                .createQuery(SELECT_HEAD, Long.class)
+                                .setParameter("id", BookChangeHead.ID)
+                                .getSingleResult()
+                        - changes.size();
+        for (BookChange change : changes) {
+            change.setSequence(++sequence);
+            entityManager.persist(change);
+        }
+    }
+
+    @Override
+    @Transactional
+    public boolean createHead() {
+        if (entityManager.find(BookChangeHead.class, BookChangeHead.ID) != null) {
+            return false;
+        }
+        entityManager.persist(new BookChangeHead(BookChangeHead.ID, 0));
+        return true;
+    }
+
+    @Override
+    public long findLastSequence() {
+        BookChangeHead head = entityManager.find(BookChangeHead.class, BookChangeHead.ID);
+        return head == null ? 0 : head.getLastSequence();
+    }
+}
@@ -0,0 +1,107 @@
+package com.tassm.library.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+/*
+ * Repository to read the whole catalogue with a forward only JDBC cursor, bypassing the
+ * persistence context so memory use does not depend on the number of books. On postgres the rows
+ * are only fetched in batches of the fetch size when read inside a transaction.
+ */
+@Repository
+public class BookExportRepository {
+
+    /** Number of rows fetched from the database per round trip */
+    static final int FETCH_SIZE = 1000;
+
+    private static final String EXPORT_QUERY =
+            "SELECT b.id, b.isbn, b.title, b.publication_year, a.name FROM book b"
+                    + " LEFT JOIN book_author ba ON ba.book_id = b.id"
+                    + " LEFT JOIN author a ON a.id = ba.author_id ORDER BY b.id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public BookExportRepository(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+    }
+
+    /** Callback receiving each exported book */
+    @FunctionalInterface
+    public interface ExportedBookHandler {
+
+        /**
+         * Handle a single book, the author list is reused between books and must not be retained
+         *
+         * @param isbn the ISBN of the book
+         * @param title the title of the book
+         * @param publicationYear the publication year of the book
+         * @param authorNames the names of the authors of the book
+         * @throws IOException if the book cannot be written
+         */
+        void handle(String isbn, String title, int publicationYear, List<String> authorNames)
+                throws IOException;
+    }
+
+    /**
+     * Pass every book and its authors to the handler in order of id
+     *
+     * @param handler the handler to pass each book to
+     */
+    public void forEachBook(ExportedBookHandler handler) {
+        BookRowGrouper grouper = new BookRowGrouper(handler);
+        jdbcTemplate.query(EXPORT_QUERY, grouper);
+        grouper.finish();
+    }
+
+    /** Groups the consecutive rows of each book, one row per author, into a single book */
+    private static class BookRowGrouper implements RowCallbackHandler {
+        private final ExportedBookHandler handler;
+        private final List<String> authorNames = new ArrayList<>();
+        private long id = -1;
+        private String isbn;
+        private String title;
+        private int publicationYear;
+
+        BookRowGrouper(ExportedBookHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            long rowId = rs.getLong(1);
+            if (rowId != id) {
+                finish();
+                id = rowId;
+                isbn = rs.getString(2);
+                title = rs.getString(3);
+                publicationYear = rs.getInt(4);
+            }
+            String authorName = rs.getString(5);
+            if (authorName != null) {
+                authorNames.add(authorName);
+            }
+        }
+
+        void finish() {
+            if (isbn == null) {
+                return;
+            }
+            try {
+                handler.handle(isbn, title, publicationYear, authorNames);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            authorNames.clear();
+            isbn = null;
+        }
+    }
+}
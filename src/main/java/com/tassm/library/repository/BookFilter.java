@@ -0,0 +1,49 @@
+package com.tassm.library.repository;
+
+import com.tassm.library.model.entity.Book;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.data.jpa.domain.Specification;
+
+/*
+ * Filter of the book listing queries. Every criteria is optional and any combination of them is
+ * applied together in the same query, a filter without criteria matches every book.
+ */
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+public class BookFilter {
+
+    /** Filter matching every book */
+    public static final BookFilter NONE = new BookFilter(null, null, null, null);
+
+    private final String authorName;
+    private final Integer rangeStart;
+    private final Integer rangeEnd;
+    private final String titlePrefix;
+
+    /**
+     * Compile the filter into a specification of the books it matches
+     *
+     * @return Specification<Book> the conjunction of the criteria which are set
+     */
+    public Specification<Book> toSpecification() {
+        Specification<Book> spec = Specification.where(null);
+        if (authorName != null) {
+            spec = spec.and(BookSpecifications.hasAuthor(authorName));
+        }
+        if (rangeStart != null) {
+            spec = spec.and(BookSpecifications.publishedFrom(rangeStart));
+        }
+        if (rangeEnd != null) {
+            spec = spec.and(BookSpecifications.publishedUntil(rangeEnd));
+        }
+        if (titlePrefix != null) {
+            spec = spec.and(BookSpecifications.titleStartsWith(titlePrefix));
+        }
+        return spec;
+    }
+}
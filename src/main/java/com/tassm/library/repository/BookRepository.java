@@ -1,6 +1,8 @@
 package com.tassm.library.repository;
 
+import com.tassm.library.model.Isbn;
 import com.tassm.library.model.entity.Book;
+import java.util.Collection;
 import java.util.Optional;
 import java.util.Set;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -9,36 +11,57 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+/*
+ * NOTE: the read queries fetch the authors with the books in a single statement. Without it the
+ * mapper would lazily load the authors of each book one at a time. Books are looked up by the
+ * canonical ISBN-13 of the ISBN, see Isbn, with the queries of BookRepositoryCustomImpl.
+ *
+ * The paged queries cannot fetch join a collection without hibernate applying the limit in memory,
+ * so they select the ids of a page which are then loaded with their authors by findAllWithAuthors.
+ * Filtered listing queries are built with the criteria API in BookRepositoryCustomImpl.
+ */
 @Repository
-public interface BookRepository extends JpaRepository<Book, Long> {
+public interface BookRepository extends JpaRepository<Book, Long>, BookRepositoryCustom {
 
-    Optional<Book> findByIsbn(String isbn);
+    /**
+     * Retrieve a book and its authors by ISBN, in any of its forms
+     *
+     * @param isbn the ISBN-10 or ISBN-13 of the book
+     * @return Optional<Book> the book with the matching ISBN
+     */
+    default Optional<Book> findByIsbn(String isbn) {
+        long isbn13 = Isbn.toIsbn13(isbn);
+        return isbn13 == Isbn.INVALID ? Optional.empty() : findByIsbn13(isbn13);
+    }
 
     /**
-     * Retrieve all books matching an authors name
+     * Retrieve only the version of a book by ISBN, in any of its forms
      *
-     * @param authorName the name of the author
-     * @return Set<Book> the collection of matching books
+     * @param isbn the ISBN-10 or ISBN-13 of the book
+     * @return Optional<Long> the version of the book with the matching ISBN
      */
-    @Query("SELECT DISTINCT b FROM Book b LEFT JOIN b.authors WHERE name = :authorName")
-    Set<Book> findByAuthorName(@Param("authorName") String authorName);
+    default Optional<Long> findVersionByIsbn(String isbn) {
+        long isbn13 = Isbn.toIsbn13(isbn);
+        return isbn13 == Isbn.INVALID ? Optional.empty() : findVersionByIsbn13(isbn13);
+    }
 
     /**
-     * Retrieve all books matching a range of publicationYears
+     * Find which of the given canonical ISBN-13s already belong to a book in a single query
      *
-     * @param startYear the start of the year range to search
-     * @param endYear the end of the year range to search
-     * @return Set<Book> the collection of matching books
+     * @param isbn13s the ISBN-13s to check as numbers, see Isbn
+     * @return Set<Long> the subset of the ISBN-13s which exist
      */
-    @Query("SELECT DISTINCT b FROM Book b WHERE b.publicationYear BETWEEN :startYear AND :endYear")
-    Set<Book> findBetweenYearRange(@Param("startYear") int start, @Param("endYear") int end);
+    @Query("SELECT b.isbn13 FROM Book b WHERE b.isbn13 IN :isbn13s")
+    Set<Long> findExistingIsbn13s(@Param("isbn13s") Collection<Long> isbn13s);
 
     /**
-     * Delete a book by a given ISBN
+     * Set the canonical ISBN-13 of a book saved before the column existed, without loading it
      *
-     * @param isbn the unique ISBN of the book
+     * @param id the id of the book
+     * @param isbn13 the ISBN-13 of its ISBN as a number
+     * @return int the number of books updated
      */
     @Modifying
-    @Query("DELETE FROM Book b WHERE b.isbn = :isbn")
-    void deleteByIsbn(@Param("isbn") String isbn);
+    @Query("UPDATE Book b SET b.isbn13 = :isbn13 WHERE b.id = :id")
+    int setIsbn13(@Param("id") long id, @Param("isbn13") long isbn13);
 }
@@ -0,0 +1,90 @@
+package com.tassm.library.repository;
+
+import com.tassm.library.model.dto.BookView;
+import com.tassm.library.model.entity.Book;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/*
+ * Book repository queries built from a BookFilter with the criteria API, so that any combination
+ * of criteria is compiled into a single statement, and the lookups by ISBN
+ */
+public interface BookRepositoryCustom {
+
+    /**
+     * Retrieve a book and its authors by canonical ISBN-13
+     *
+     * @param isbn13 the ISBN-13 of the book as a number, see Isbn
+     * @return Optional<Book> the book with the matching ISBN
+     */
+    Optional<Book> findByIsbn13(long isbn13);
+
+    /**
+     * Retrieve only the version of a book by canonical ISBN-13
+     *
+     * @param isbn13 the ISBN-13 of the book as a number, see Isbn
+     * @return Optional<Long> the version of the book with the matching ISBN
+     */
+    Optional<Long> findVersionByIsbn13(long isbn13);
+
+    /**
+     * Retrieve the ids of the books with the given canonical ISBN-13s in a single query, to be
+     * loaded with findAllWithAuthors
+     *
+     * @param isbn13s the ISBN-13s of the books as numbers, see Isbn
+     * @return List<Long> the ids of the books with matching ISBNs, in no particular order
+     */
+    List<Long> findIdsByIsbn13(Collection<Long> isbn13s);
+
+    /**
+     * Retrieve the ids of a page of books matching the filter, ordered by publicationYear and id.
+     * The page starts after the book identified by the given publicationYear and id (keyset
+     * pagination).
+     *
+     * @param filter the criteria the books must match
+     * @param afterYear the publicationYear of the last book of the previous page
+     * @param afterId the id of the last book of the previous page
+     * @param limit the size of the page
+     * @return List<Long> the ids of the page of matching books
+     */
+    List<Long> findPageIds(BookFilter filter, int afterYear, long afterId, int limit);
+
+    /**
+     * Retrieve books and their authors by id, in the order of the ids. Books and author collections
+     * held in the second level cache are not queried, the rest are loaded in batches.
+     *
+     * @param ids the ids of the books
+     * @return List<Book> the books with matching ids, ids without a book are omitted
+     */
+    List<Book> findAllWithAuthors(List<Long> ids);
+
+    /**
+     * Pass every book matching the filter with its authors to the consumer, projected from the rows
+     * of a single query without loading entities. Must be called within a transaction.
+     *
+     * @param filter the criteria the books must match
+     * @param consumer the consumer of the matching books, ordered by publicationYear and id
+     */
+    void forEachView(BookFilter filter, Consumer<BookView> consumer);
+
+    /**
+     * Pass the canonical ISBN-13 of every book to the consumer, read from the rows of a single
+     * query. Must be called within a transaction.
+     *
+     * @param consumer the consumer of the ISBN-13s as numbers, in no particular order
+     */
+    void forEachIsbn13(LongConsumer consumer);
+
+    /**
+     * Retrieve the ISBNs of books saved before the canonical ISBN-13 was stored, a page at a time
+     *
+     * @param afterId the id of the last book of the previous page
+     * @param limit the size of the page
+     * @return Map<Long, String> the ISBNs of the books by id, ordered by id
+     */
+    Map<Long, String> findIsbnsWithoutIsbn13(long afterId, int limit);
+}
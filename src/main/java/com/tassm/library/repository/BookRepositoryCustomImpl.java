@@ -0,0 +1,214 @@
+package com.tassm.library.repository;
+
+import com.tassm.library.model.dto.BookView;
+import com.tassm.library.model.entity.Author;
+import com.tassm.library.model.entity.Book;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.domain.Specification;
+
+/*
+ * Implementation of the filtered book queries with the JPA criteria API. The page is selected as
+ * ids, held in the query cache until a book or author changes, and the books are then loaded with
+ * findAllWithAuthors from the second level cache where present.
+ *
+ * The lookups by ISBN-13 are run directly on the entity manager, whose query plans are cached,
+ * rather than as @Query methods which Spring Data parses again on every call, and read the result
+ * list so a missing book does not throw a NoResultException.
+ *
+ * Streamed books are projected from the rows of a single query instead, as a scan of the catalogue
+ * would fill the persistence context and push the frequently read books out of the cache.
+ */
+public class BookRepositoryCustomImpl implements BookRepositoryCustom {
+
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    private static final String FIND_BY_ISBN13 =
+            "SELECT b FROM Book b LEFT JOIN FETCH b.authors WHERE b.isbn13 = :isbn13";
+
+    private static final String FIND_IDS_BY_ISBN13 =
+            "SELECT b.id FROM Book b WHERE b.isbn13 IN :isbn13s";
+
+    private static final String FIND_VERSION_BY_ISBN13 =
+            "SELECT b.version FROM Book b WHERE b.isbn13 = :isbn13";
+
+    @PersistenceContext private EntityManager entityManager;
+
+    @Override
+    public Optional<Book> findByIsbn13(long isbn13) {
+        return entityManager
+                .createQuery(FIND_BY_ISBN13, Book.class)
+                .setParameter("isbn13", isbn13)
+                .getResultList()
+                .stream()
+                .findFirst();
+    }
+
+    @Override
+    public Optional<Long> findVersionByIsbn13(long isbn13) {
+        return entityManager
+                .createQuery(FIND_VERSION_BY_ISBN13, Long.class)
+                .setParameter("isbn13", isbn13)
+                .getResultList()
+                .stream()
+                .findFirst();
+    }
+
+    @Override
+    public List<Long> findIdsByIsbn13(Collection<Long> isbn13s) {
+        return entityManager
+                .createQuery(FIND_IDS_BY_ISBN13, Long.class)
+                .setParameter("isbn13s", isbn13s)
+                .getResultList();
+    }
+
+    @Override
+    public List<Long> findPageIds(BookFilter filter, int afterYear, long afterId, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<Book> book = query.from(Book.class);
+        Specification<Book> spec =
+                filter.toSpecification().and(BookSpecifications.after(afterYear, afterId));
+        query.select(book.get("id"))
+                .where(spec.toPredicate(book, query, cb))
+                .orderBy(cb.asc(book.get("publicationYear")), cb.asc(book.get("id")));
+        return entityManager
+                .createQuery(query)
+                .setMaxResults(limit)
+                .setHint(HibernateHints.HINT_CACHEABLE, true)
+                .getResultList();
+    }
+
+    @Override
+    public List<Book> findAllWithAuthors(List<Long> ids) {
+        Session session = entityManager.unwrap(Session.class);
+        // the second level cache is only checked when the cache mode is given explicitly
+        List<Book> loaded =
+                session.byMultipleIds(Book.class)
+                        .with(session.getCacheMode())
+                        .enableSessionCheck(true)
+                        .multiLoad(ids);
+        List<Book> books = new ArrayList<>(loaded.size());
+        for (Book book : loaded) {
+            if (book != null) {
+                Hibernate.initialize(book.getAuthors());
+                books.add(book);
+            }
+        }
+        return books;
+    }
+
+    @Override
+    public void forEachView(BookFilter filter, Consumer<BookView> consumer) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = cb.createQuery(Object[].class);
+        Root<Book> book = query.from(Book.class);
+        Join<Book, Author> author = book.join("authors", JoinType.LEFT);
+        query.multiselect(
+                        book.get("id"),
+                        book.get("isbn"),
+                        book.get("title"),
+                        book.get("publicationYear"),
+                        author.get("name"))
+                .orderBy(cb.asc(book.get("publicationYear")), cb.asc(book.get("id")));
+        Predicate predicate = filter.toSpecification().toPredicate(book, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        BookViewGrouper grouper = new BookViewGrouper(consumer);
+        try (Stream<Object[]> rows =
+                entityManager
+                        .createQuery(query)
+                        .setHint(HibernateHints.HINT_FETCH_SIZE, STREAM_FETCH_SIZE)
+                        .getResultStream()) {
+            rows.forEach(grouper::add);
+        }
+        grouper.finish();
+    }
+
+    @Override
+    public void forEachIsbn13(LongConsumer consumer) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<Book> book = query.from(Book.class);
+        query.select(book.get("isbn13")).where(cb.isNotNull(book.get("isbn13")));
+        try (Stream<Long> isbn13s =
+                entityManager
+                        .createQuery(query)
+                        .setHint(HibernateHints.HINT_FETCH_SIZE, STREAM_FETCH_SIZE)
+                        .getResultStream()) {
+            isbn13s.forEach(consumer::accept);
+        }
+    }
+
+    @Override
+    public Map<Long, String> findIsbnsWithoutIsbn13(long afterId, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = cb.createQuery(Object[].class);
+        Root<Book> book = query.from(Book.class);
+        query.multiselect(book.get("id"), book.get("isbn"))
+                .where(cb.isNull(book.get("isbn13")), cb.gt(book.get("id"), afterId))
+                .orderBy(cb.asc(book.get("id")));
+        Map<Long, String> isbns = new LinkedHashMap<>();
+        for (Object[] row : entityManager.createQuery(query).setMaxResults(limit).getResultList()) {
+            isbns.put((Long) row[0], (String) row[1]);
+        }
+        return isbns;
+    }
+
+    /** Groups the consecutive rows of each book, one row per author, into a single view */
+    private static class BookViewGrouper {
+        private final Consumer<BookView> consumer;
+        private final List<String> authorNames = new ArrayList<>();
+        private long id = -1;
+        private String isbn;
+        private String title;
+        private int publicationYear;
+
+        BookViewGrouper(Consumer<BookView> consumer) {
+            this.consumer = consumer;
+        }
+
+        void add(Object[] row) {
+            long rowId = (Long) row[0];
+            if (rowId != id) {
+                finish();
+                id = rowId;
+                isbn = (String) row[1];
+                title = (String) row[2];
+                publicationYear = (Integer) row[3];
+            }
+            if (row[4] != null) {
+                authorNames.add((String) row[4]);
+            }
+        }
+
+        void finish() {
+            if (isbn == null) {
+                return;
+            }
+            // copied into an immutable list of exactly the number of authors
+            consumer.accept(new BookView(isbn, title, List.copyOf(authorNames), publicationYear));
+            authorNames.clear();
+            isbn = null;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.tassm.library.repository;
+
+import com.tassm.library.model.entity.Author;
+import com.tassm.library.model.entity.Book;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import org.springframework.data.jpa.domain.Specification;
+
+/*
+ * Specifications of the criteria books can be filtered by, combined by BookFilter
+ */
+final class BookSpecifications {
+
+    private static final char LIKE_ESCAPE = '\\';
+
+    private BookSpecifications() {}
+
+    /**
+     * Books written by the named author. The author is matched in a sub-query so that the author
+     * collection of each book is complete and not just the matching author.
+     *
+     * @param authorName the name of the author
+     * @return Specification<Book> the specification of the books of the author
+     */
+    static Specification<Book> hasAuthor(String authorName) {
+        return (book, query, cb) -> {
+            Subquery<Long> ids = query.subquery(Long.class);
+            Root<Book> authored = ids.from(Book.class);
+            Join<Book, Author> author = authored.join("authors");
+            ids.select(authored.get("id")).where(cb.equal(author.get("name"), authorName));
+            return book.get("id").in(ids);
+        };
+    }
+
+    static Specification<Book> publishedFrom(int year) {
+        return (book, query, cb) -> cb.greaterThanOrEqualTo(book.get("publicationYear"), year);
+    }
+
+    static Specification<Book> publishedUntil(int year) {
+        return (book, query, cb) -> cb.lessThanOrEqualTo(book.get("publicationYear"), year);
+    }
+
+    /**
+     * Books whose title starts with the given prefix, wildcards in the prefix are matched literally
+     *
+     * @param prefix the start of the title
+     * @return Specification<Book> the specification of the books with a matching title
+     */
+    static Specification<Book> titleStartsWith(String prefix) {
+        String pattern = likePrefix(prefix);
+        return (book, query, cb) -> cb.like(book.get("title"), pattern, LIKE_ESCAPE);
+    }
+
+    /**
+     * The LIKE pattern, escaped with a backslash, of the strings starting with the given prefix
+     *
+     * @param prefix the start of the strings
+     * @return String the pattern matching the prefix literally
+     */
+    static String likePrefix(String prefix) {
+        return prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+
+    /**
+     * Books ordered after the given publicationYear and id, the start of a keyset page
+     *
+     * @param afterYear the publicationYear of the last book of the previous page
+     * @param afterId the id of the last book of the previous page
+     * @return Specification<Book> the specification of the books after the position
+     */
+    static Specification<Book> after(int afterYear, long afterId) {
+        return (book, query, cb) ->
+                cb.or(
+                        cb.greaterThan(book.get("publicationYear"), afterYear),
+                        cb.and(
+                                cb.equal(book.get("publicationYear"), afterYear),
+                                cb.greaterThan(book.get("id"), afterId)));
+    }
+}
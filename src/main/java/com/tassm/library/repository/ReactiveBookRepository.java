@@ -0,0 +1,220 @@
+package com.tassm.library.repository;
+
+import com.tassm.library.model.dto.BookDTO;
+import io.r2dbc.spi.Readable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * Non-blocking reads of books with R2DBC for the reactive profile, see ReactiveBookController. The
+ * queries are the SQL equivalents of the JPA listing and lookup queries of BookRepository, with the
+ * same filters and the same (publication_year, id) ordering. Each book is read with its authors in
+ * one query, one row per author, and the consecutive rows of a book are grouped into its BookDTO.
+ *
+ * The books are read straight into DTOs, they are not entities and the second level cache is not
+ * used.
+ */
+@Repository
+@Profile("reactive")
+public class ReactiveBookRepository {
+
+    private static final String SELECT_WITH_AUTHORS =
+            "SELECT b.id, b.isbn, b.title, b.publication_year, b.version, a.name AS author_name ";
+
+    private static final String JOIN_AUTHORS =
+            "LEFT JOIN book_author ba ON ba.book_id = b.id "
+                    + "LEFT JOIN author a ON a.id = ba.author_id ";
+
+    private static final String ORDER = "ORDER BY b.publication_year, b.id";
+
+    @Autowired DatabaseClient databaseClient;
+
+    /** A book of a page with its id, which positions the cursor of the next page */
+    public record ListedBook(long id, BookDTO book) {}
+
+    /**
+     * Find a page of books matching a filter, ordered after the given publicationYear and id
+     *
+     * @param filter the criteria the books must match
+     * @param afterYear the publicationYear of the last book of the previous page
+     * @param afterId the id of the last book of the previous page
+     * @param limit the maximum number of books in the page
+     * @return Flux<ListedBook> the books of the page in order
+     */
+    public Flux<ListedBook> findPage(BookFilter filter, int afterYear, long afterId, int limit) {
+        Map<String, Object> binds = new HashMap<>();
+        List<String> criteria = criteria(filter, binds);
+        criteria.add(
+                "(b.publication_year > :afterYear"
+                        + " OR (b.publication_year = :afterYear AND b.id > :afterId))");
+        binds.put("afterYear", afterYear);
+        binds.put("afterId", afterId);
+        binds.put("limit", limit);
+        // the page is limited before the join so a book with many authors counts once
+        String sql =
+                SELECT_WITH_AUTHORS
+                        + "FROM (SELECT b.id, b.isbn, b.title, b.publication_year, b.version"
+                        + " FROM book b "
+                        + where(criteria)
+                        + ORDER
+                        + " LIMIT :limit) b "
+                        + JOIN_AUTHORS
+                        + ORDER;
+        return books(sql, binds, ListedBook::new);
+    }
+
+    /**
+     * Find every book matching a filter, in the same order as findPage, emitted as the rows are
+     * read so memory use does not grow with the number of books
+     *
+     * @param filter the criteria the books must match
+     * @return Flux<BookDTO> the books in order
+     */
+    public Flux<BookDTO> findAll(BookFilter filter) {
+        Map<String, Object> binds = new HashMap<>();
+        String sql =
+                SELECT_WITH_AUTHORS
+                        + "FROM book b "
+                        + JOIN_AUTHORS
+                        + where(criteria(filter, binds))
+                        + ORDER;
+        return books(sql, binds, (id, book) -> book);
+    }
+
+    /**
+     * Find a book with its authors by its canonical ISBN-13, see Isbn
+     *
+     * @param isbn13 the canonical ISBN-13 of the book
+     * @return Mono<BookDTO> the book, empty if it does not exist
+     */
+    public Mono<BookDTO> findByIsbn13(long isbn13) {
+        String sql =
+                SELECT_WITH_AUTHORS + "FROM book b " + JOIN_AUTHORS + "WHERE b.isbn13 = :isbn13";
+        return books(sql, Map.of("isbn13", isbn13), (id, book) -> book).next();
+    }
+
+    /**
+     * Find the books with their authors of many canonical ISBN-13s, see Isbn
+     *
+     * @param isbn13s the canonical ISBN-13s of the books
+     * @return Flux<BookDTO> the books which exist, in no particular order
+     */
+    public Flux<BookDTO> findAllByIsbn13(Collection<Long> isbn13s) {
+        String sql =
+                SELECT_WITH_AUTHORS
+                        + "FROM book b "
+                        + JOIN_AUTHORS
+                        + "WHERE b.isbn13 IN (:isbn13s) ORDER BY b.id";
+        return books(sql, Map.of("isbn13s", isbn13s), (id, book) -> book);
+    }
+
+    /**
+     * Find the version of a book by its canonical ISBN-13, see Isbn
+     *
+     * @param isbn13 the canonical ISBN-13 of the book
+     * @return Mono<Long> the version of the book, empty if it does not exist
+     */
+    public Mono<Long> findVersionByIsbn13(long isbn13) {
+        return databaseClient
+                .sql("SELECT version FROM book WHERE isbn13 = :isbn13")
+                .bind("isbn13", isbn13)
+                .map(row -> row.get("version", Long.class))
+                .one();
+    }
+
+    /** The SQL criteria of a filter on the book table aliased b, their values are added to binds */
+    private static List<String> criteria(BookFilter filter, Map<String, Object> binds) {
+        List<String> criteria = new ArrayList<>();
+        if (filter.getAuthorName() != null) {
+            // matched in a sub-query so the authors of each book are complete
+            criteria.add(
+                    "b.id IN (SELECT fba.book_id FROM book_author fba"
+                            + " JOIN author fa ON fa.id = fba.author_id"
+                            + " WHERE fa.name = :authorName)");
+            binds.put("authorName", filter.getAuthorName());
+        }
+        if (filter.getRangeStart() != null) {
+            criteria.add("b.publication_year >= :rangeStart");
+            binds.put("rangeStart", filter.getRangeStart());
+        }
+        if (filter.getRangeEnd() != null) {
+            criteria.add("b.publication_year <= :rangeEnd");
+            binds.put("rangeEnd", filter.getRangeEnd());
+        }
+        if (filter.getTitlePrefix() != null) {
+            criteria.add("b.title LIKE :titlePattern ESCAPE '\\'");
+            binds.put("titlePattern", BookSpecifications.likePrefix(filter.getTitlePrefix()));
+        }
+        return criteria;
+    }
+
+    private static String where(List<String> criteria) {
+        return criteria.isEmpty() ? "" : "WHERE " + String.join(" AND ", criteria) + " ";
+    }
+
+    /**
+     * Run a query of books with one row per author, ordered so the rows of each book are
+     * consecutive, and group the rows into books
+     */
+    private <T> Flux<T> books(String sql, Map<String, Object> binds, BookFactory<T> factory) {
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql);
+        for (Map.Entry<String, Object> bind : binds.entrySet()) {
+            spec = spec.bind(bind.getKey(), bind.getValue());
+        }
+        return spec.map(BookRow::read)
+                .all()
+                .bufferUntilChanged(BookRow::id)
+                .map(rows -> factory.create(rows.get(0).id(), toDTO(rows)));
+    }
+
+    private static BookDTO toDTO(List<BookRow> rows) {
+        BookRow book = rows.get(0);
+        // an immutable set of exactly the number of authors, as BookMapper creates
+        List<String> names = new ArrayList<>(rows.size());
+        for (BookRow row : rows) {
+            if (row.authorName() != null) {
+                names.add(row.authorName());
+            }
+        }
+        return new BookDTO(
+                book.isbn(),
+                book.title(),
+                Set.copyOf(names),
+                book.publicationYear(),
+                book.version());
+    }
+
+    private interface BookFactory<T> {
+        T create(long id, BookDTO book);
+    }
+
+    /** A row of a book and one of its authors, with no author name when it has none */
+    private record BookRow(
+            long id,
+            String isbn,
+            String title,
+            int publicationYear,
+            long version,
+            String authorName) {
+
+        static BookRow read(Readable row) {
+            return new BookRow(
+                    row.get("id", Long.class),
+                    row.get("isbn", String.class),
+                    row.get("title", String.class),
+                    row.get("publication_year", Integer.class),
+                    row.get("version", Long.class),
+                    row.get("author_name", String.class));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.tassm.library.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * A Bloom filter of long keys. It answers whether a key might have been added, with no false
+ * negatives and a false positive rate which grows with the number of keys added. Keys cannot be
+ * removed. The bits are held in an AtomicLongArray so keys can be added and looked up concurrently
+ * without locking.
+ *
+ * The bit positions of a key are derived from two 64 bit hashes of it (Kirsch and Mitzenmacher),
+ * so a lookup costs one hash and a load per position.
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+    private final AtomicLong keyCount = new AtomicLong();
+
+    /**
+     * @param expectedKeys the number of keys the filter is sized for
+     * @param falsePositiveRate the false positive rate once the expected number of keys is added
+     */
+    public BloomFilter(long expectedKeys, double falsePositiveRate) {
+        if (expectedKeys < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException(
+                    "A Bloom filter needs at least one key and a rate between 0 and 1");
+        }
+        double bits = -expectedKeys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        long wordCount = Math.max(1, (long) Math.ceil(bits / Long.SIZE));
+        if (wordCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The Bloom filter is too large");
+        }
+        words = new AtomicLongArray((int) wordCount);
+        bitCount = wordCount * Long.SIZE;
+        hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedKeys * Math.log(2)));
+    }
+
+    /**
+     * Add a key to the filter
+     *
+     * @param key the key
+     * @return boolean true if the filter changed, false if the key might already have been added
+     */
+    public boolean put(long key) {
+        long h1 = mix(key);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L);
+        boolean changed = false;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while ((current & mask) == 0) {
+                long witness = words.compareAndExchange(word, current, current | mask);
+                if (witness == current) {
+                    changed = true;
+                    break;
+                }
+                current = witness;
+            }
+        }
+        if (changed) {
+            keyCount.incrementAndGet();
+        }
+        return changed;
+    }
+
+    /**
+     * Check whether a key might have been added to the filter
+     *
+     * @param key the key
+     * @return boolean false if the key has certainly not been added
+     */
+    public boolean mightContain(long key) {
+        long h1 = mix(key);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The number of distinct keys added, approximate as a key whose bits were all already set by
+     * other keys is not counted
+     *
+     * @return long the number of keys
+     */
+    public long keyCount() {
+        return keyCount.get();
+    }
+
+    /**
+     * The memory held by the bits of the filter
+     *
+     * @return long the size in bytes
+     */
+    public long sizeInBytes() {
+        return bitCount / Byte.SIZE;
+    }
+
+    /**
+     * The false positive rate expected with the keys added so far
+     *
+     * @return double the probability that a key not added is reported as possibly added
+     */
+    public double expectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-hashCount * (double) keyCount.get() / bitCount), hashCount);
+    }
+
+    /** The finalizer of MurmurHash3, spreads every bit of the key over the hash */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,42 @@
+package com.tassm.library.service;
+
+import com.tassm.library.model.dto.BookDTO;
+import java.util.List;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+
+/*
+ * Application event published by BookService when books are created, updated or deleted. Listeners
+ * which keep a copy of the catalogue, such as the search index, should handle it once the
+ * transaction commits.
+ */
+@Getter
+@RequiredArgsConstructor
+public class BookChangeEvent {
+
+    /** The books as they were saved */
+    private final List<BookDTO> savedBooks;
+
+    /** The ISBNs which no longer identify a book */
+    private final List<String> removedIsbns;
+
+    /** The sequence of the last of the changes in the change log, set once they are appended */
+    @Setter(AccessLevel.PACKAGE)
+    private long lastSequence;
+
+    static BookChangeEvent saved(List<BookDTO> books) {
+        return new BookChangeEvent(books, List.of());
+    }
+
+    static BookChangeEvent updated(String previousIsbn, BookDTO book) {
+        List<String> removed =
+                previousIsbn.equals(book.getIsbn()) ? List.of() : List.of(previousIsbn);
+        return new BookChangeEvent(List.of(book), removed);
+    }
+
+    static BookChangeEvent deleted(String isbn) {
+        return new BookChangeEvent(List.of(), List.of(isbn));
+    }
+}
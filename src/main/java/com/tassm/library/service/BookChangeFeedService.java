@@ -0,0 +1,483 @@
+package com.tassm.library.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tassm.library.config.CacheConfig;
+import com.tassm.library.exception.ResourceGoneException;
+import com.tassm.library.exception.ServiceUnavailableException;
+import com.tassm.library.model.Isbn;
+import com.tassm.library.model.dto.BookChangeDTO;
+import com.tassm.library.model.dto.BookChangePageDTO;
+import com.tassm.library.model.dto.BookDTO;
+import com.tassm.library.model.entity.Book;
+import com.tassm.library.model.entity.BookChange;
+import com.tassm.library.repository.BookChangeRepository;
+import com.tassm.library.repository.BookRepository;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/*
+ * Change feed of the catalogue, so downstream copies can follow it without rescanning. Every
+ * change made through BookService is appended to the change log in the transaction making it,
+ * and the log holds exactly the committed changes in commit order. Consumers read it after the
+ * sequence they last saw, or subscribe to a stream of server-sent events.
+ *
+ * A single dispatcher thread feeds the subscribers. It wakes when this instance commits a change,
+ * and polls for changes committed by other instances, which also advance the catalogue version of
+ * this instance, see CatalogueChangeCounter, evict the changed books from its book by ISBN and
+ * second level caches and update its search index. Subscribers at the same sequence share one
+ * query.
+ * Changes older than the retention period are pruned, and a consumer which falls behind the
+ * pruning has to rescan the catalogue.
+ */
+@Service
+public class BookChangeFeedService {
+
+    static final String CHANGE_EVENT = "book-change";
+    static final String RESET_EVENT = "reset";
+
+    private static final Logger log = LoggerFactory.getLogger(BookChangeFeedService.class);
+
+    private static final int STREAM_BATCH_SIZE = 500;
+    private static final long HEARTBEAT_INTERVAL_NANOS = Duration.ofSeconds(15).toNanos();
+    private static final String BOOK_AUTHORS_ROLE = Book.class.getName() + ".authors";
+
+    @Autowired BookChangeRepository bookChangeRepository;
+    @Autowired ObjectMapper objectMapper;
+    @Autowired MeterRegistry meterRegistry;
+    @Autowired PlatformTransactionManager transactionManager;
+    @Autowired CatalogueChangeCounter catalogueChangeCounter;
+    @Autowired CacheManager cacheManager;
+    @Autowired BookRepository bookRepository;
+    @Autowired EntityManagerFactory entityManagerFactory;
+    @Autowired BookSearchService bookSearchService;
+
+    @Value("${library.changes.retention}")
+    Duration retention;
+
+    @Value("${library.changes.prune-interval}")
+    Duration pruneInterval;
+
+    @Value("${library.changes.poll-interval}")
+    Duration pollInterval;
+
+    @Value("${library.changes.max-subscribers}")
+    int maxSubscribers;
+
+    @Value("${library.changes.stream-timeout}")
+    Duration streamTimeout;
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final BlockingQueue<Boolean> wakeups = new ArrayBlockingQueue<>(1);
+    private final NavigableSet<Long> committedHere = new ConcurrentSkipListSet<>();
+    private TransactionTemplate readOnly;
+    private SessionFactory sessionFactory;
+    private long followedSequence;
+    private Thread dispatcher;
+    private volatile boolean running;
+
+    @PostConstruct
+    void start() {
+        createHead();
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        // before requests are served, so the version is never that of an empty catalogue
+        followedSequence = readOnly.execute(status -> bookChangeRepository.findLastSequence());
+        catalogueChangeCounter.advanceTo(followedSequence);
+        Gauge.builder("library.change.subscribers", subscribers, List::size)
+                .description("Clients subscribed to the change stream")
+                .register(meterRegistry);
+        running = true;
+        dispatcher = new Thread(this::run, "book-change-dispatcher");
+        dispatcher.start();
+    }
+
+    /** Create the change log head before any change is appended, see BookChangeRepositoryCustom */
+    private void createHead() {
+        try {
+            if (bookChangeRepository.createHead()) {
+                log.info("Created the change log head");
+            }
+        } catch (DataIntegrityViolationException e) {
+            // created by another instance starting at the same time
+            log.debug("The change log head was created concurrently", e);
+        }
+    }
+
+    /** Stop the dispatcher and end the streams */
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        wakeups.offer(Boolean.TRUE);
+        dispatcher.join();
+        subscribers.forEach(s -> s.emitter.complete());
+    }
+
+    /**
+     * Append a change to the change log in the transaction which made it
+     *
+     * @param event the books which were saved and removed
+     */
+    @EventListener
+    public void onBookChange(BookChangeEvent event) {
+        Instant now = Instant.now();
+        List<BookChange> changes =
+                new ArrayList<>(event.getRemovedIsbns().size() + event.getSavedBooks().size());
+        // removals first, an ISBN removed and saved again by the same transaction exists after it
+        event.getRemovedIsbns()
+                .forEach(
+                        isbn ->
+                                changes.add(
+                                        new BookChange(
+                                                null, BookChange.Type.REMOVED, isbn, null, now)));
+        event.getSavedBooks()
+                .forEach(
+                        book ->
+                                changes.add(
+                                        new BookChange(
+                                                null,
+                                                BookChange.Type.SAVED,
+                                                book.getIsbn(),
+                                                toJson(book),
+                                                now)));
+        bookChangeRepository.append(changes);
+        if (!changes.isEmpty()) {
+            event.setLastSequence(changes.get(changes.size() - 1).getSequence());
+        }
+    }
+
+    /**
+     * Record the sequences of the changes committed through this instance and wake the dispatcher
+     *
+     * @param event the books which were saved and removed
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookChangeCommitted(BookChangeEvent event) {
+        // before waking, so the dispatcher knows the changes are already in the caches
+        int count = event.getRemovedIsbns().size() + event.getSavedBooks().size();
+        for (long sequence = event.getLastSequence() - count + 1;
+                sequence <= event.getLastSequence();
+                sequence++) {
+            committedHere.add(sequence);
+        }
+        wakeups.offer(Boolean.TRUE);
+    }
+
+    /**
+     * Find the changes made after a sequence, throws a ResourceGoneException if some of them have
+     * been pruned. Without a sequence no changes are returned, only the sequence of the last change
+     * from which a consumer which has just scanned the catalogue can follow it.
+     *
+     * @param since the sequence of the last change already read, or null
+     * @param limit the maximum number of changes to return
+     * @return BookChangePageDTO the changes in sequence order and the sequence of the last change
+     */
+    @Timed("library.book.changes")
+    @Transactional(readOnly = true)
+    public BookChangePageDTO findChanges(Long since, int limit) {
+        long lastSequence = bookChangeRepository.findLastSequence();
+        if (since == null) {
+            return new BookChangePageDTO(List.of(), lastSequence);
+        }
+        List<BookChangeDTO> changes = findChangesAfter(since, limit);
+        if (isPruned(since, changes, lastSequence)) {
+            throw pruned(since);
+        }
+        return new BookChangePageDTO(changes, lastSequence);
+    }
+
+    /**
+     * Subscribe to the changes made after a sequence, sent as server-sent events with the sequence
+     * as the event id. A subscriber which falls behind the pruned changes is sent a reset event and
+     * the stream ends.
+     *
+     * @param since the sequence of the last change already read, or null to receive only new
+     *     changes
+     * @return SseEmitter the emitter of the stream
+     */
+    public SseEmitter subscribe(Long since) {
+        if (subscribers.size() >= maxSubscribers) {
+            throw new ServiceUnavailableException(
+                    "Too many change stream subscribers - try again later");
+        }
+        // read together, so both come from the replica or both from the primary
+        long lastSequence =
+                readOnly.execute(
+                        status -> {
+                            long last = bookChangeRepository.findLastSequence();
+                            if (since != null
+                                    && isPruned(since, findChangesAfter(since, 1), last)) {
+                                throw pruned(since);
+                            }
+                            return last;
+                        });
+        Subscriber subscriber =
+                new Subscriber(
+                        new SseEmitter(streamTimeout.toMillis()),
+                        since == null ? lastSequence : since);
+        subscriber.emitter.onCompletion(() -> subscribers.remove(subscriber));
+        subscriber.emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        wakeups.offer(Boolean.TRUE);
+        return subscriber.emitter;
+    }
+
+    /**
+     * Delete the changes made before an instant
+     *
+     * @param before the instant
+     * @return int the number of changes deleted
+     */
+    int prune(Instant before) {
+        return bookChangeRepository
+                .findLastSequenceBefore(before)
+                .map(bookChangeRepository::deleteThrough)
+                .orElse(0);
+    }
+
+    private void run() {
+        long nextPrune = System.nanoTime();
+        while (running) {
+            boolean more = false;
+            try {
+                if (System.nanoTime() - nextPrune >= 0) {
+                    int pruned = prune(Instant.now().minus(retention));
+                    if (pruned > 0) {
+                        log.info("Pruned {} changes older than {}", pruned, retention);
+                    }
+                    nextPrune = System.nanoTime() + pruneInterval.toNanos();
+                }
+                follow();
+                more = dispatch();
+            } catch (RuntimeException e) {
+                log.warn("Failed to dispatch book changes", e);
+            }
+            if (!more) {
+                try {
+                    wakeups.poll(pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Follow the changes committed by other instances: advance the catalogue version to them, evict
+     * their books from the book by ISBN cache and the second level cache, with the query results
+     * which may hold them, and apply them to the search index. They are read in a read-only
+     * transaction like the books, so the version is never newer than the books read, and an evicted
+     * book is read again with the change. The changes committed through this instance are already
+     * in its caches.
+     */
+    private void follow() {
+        List<BookChange> changes;
+        do {
+            long after = followedSequence;
+            List<BookChange> others = new ArrayList<>();
+            List<Long> bookIds = new ArrayList<>();
+            changes =
+                    readOnly.execute(
+                            status -> {
+                                List<BookChange> read =
+                                        bookChangeRepository
+                                                .findBySequenceGreaterThanOrderBySequenceAsc(
+                                                        after,
+                                                        PageRequest.of(0, STREAM_BATCH_SIZE));
+                                read.stream()
+                                        .filter(c -> !committedHere.remove(c.getSequence()))
+                                        .forEach(others::add);
+                                if (!others.isEmpty()) {
+                                    // removed books have no id, nothing reads them again
+                                    bookIds.addAll(bookRepository.findIdsByIsbn13(isbn13s(others)));
+                                }
+                                return read;
+                            });
+            if (changes.isEmpty()) {
+                return;
+            }
+            long last = changes.get(changes.size() - 1).getSequence();
+            // advanced before evicting, so a read which began before the change and finishes
+            // after the eviction does not cache its book, see LoadedBookCache
+            catalogueChangeCounter.advanceTo(last);
+            if (changes.get(0).getSequence() != after + 1) {
+                // the changed books are not known once changes have been pruned
+                cacheManager.getCache(CacheConfig.BOOKS_BY_ISBN).clear();
+                sessionFactory.getCache().evictAllRegions();
+                bookSearchService.rebuild();
+            } else {
+                evict(others, bookIds);
+                // with the changes made here, so the last change to an ISBN is the one indexed
+                bookSearchService.applyChanges(changes.stream().map(this::toDTO).toList());
+            }
+            // recorded by a commit after they had been read
+            committedHere.headSet(last, true).clear();
+            followedSequence = last;
+        } while (changes.size() == STREAM_BATCH_SIZE);
+    }
+
+    /** Evict books changed by other instances, and the query results which may hold them */
+    private void evict(List<BookChange> changes, List<Long> bookIds) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        Cache cache = cacheManager.getCache(CacheConfig.BOOKS_BY_ISBN);
+        changes.forEach(c -> cache.evict(Isbn.toIsbn13(c.getIsbn())));
+        for (Long id : bookIds) {
+            sessionFactory.getCache().evictEntityData(Book.class, id);
+            sessionFactory.getCache().evictCollectionData(BOOK_AUTHORS_ROLE, id);
+        }
+        // the cached pages and author lookups are only invalidated by local writes
+        sessionFactory.getCache().evictQueryRegions();
+    }
+
+    private static List<Long> isbn13s(List<BookChange> changes) {
+        return changes.stream().map(c -> Isbn.toIsbn13(c.getIsbn())).distinct().toList();
+    }
+
+    /** Send each subscriber the next batch of changes, true if any batch was full */
+    private boolean dispatch() {
+        if (subscribers.isEmpty()) {
+            return false;
+        }
+        Map<Long, List<Subscriber>> byCursor = new HashMap<>();
+        subscribers.forEach(s -> byCursor.computeIfAbsent(s.cursor, c -> new ArrayList<>()).add(s));
+        boolean more = false;
+        long now = System.nanoTime();
+        for (Map.Entry<Long, List<Subscriber>> entry : byCursor.entrySet()) {
+            List<BookChangeDTO> changes = findChangesAfter(entry.getKey(), STREAM_BATCH_SIZE);
+            more |= changes.size() == STREAM_BATCH_SIZE;
+            entry.getValue().forEach(s -> send(s, changes, now));
+        }
+        return more;
+    }
+
+    private void send(Subscriber subscriber, List<BookChangeDTO> changes, long now) {
+        SseEmitter emitter = subscriber.emitter;
+        try {
+            if (changes.isEmpty()) {
+                // lets proxies keep the connection open and finds clients which have gone
+                if (now - subscriber.lastSentNanos >= HEARTBEAT_INTERVAL_NANOS) {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                    subscriber.lastSentNanos = now;
+                }
+                return;
+            }
+            if (changes.get(0).getSequence() != subscriber.cursor + 1) {
+                subscribers.remove(subscriber);
+                emitter.send(
+                        SseEmitter.event()
+                                .name(RESET_EVENT)
+                                .data(pruned(subscriber.cursor).getMessage()));
+                emitter.complete();
+                return;
+            }
+            for (BookChangeDTO change : changes) {
+                emitter.send(
+                        SseEmitter.event()
+                                .id(Long.toString(change.getSequence()))
+                                .name(CHANGE_EVENT)
+                                .data(change, MediaType.APPLICATION_JSON));
+            }
+            subscriber.cursor = changes.get(changes.size() - 1).getSequence();
+            subscriber.lastSentNanos = now;
+        } catch (IOException | IllegalStateException e) {
+            // the client has gone or the stream has timed out
+            subscribers.remove(subscriber);
+        }
+    }
+
+    private List<BookChangeDTO> findChangesAfter(long since, int limit) {
+        List<BookChange> changes =
+                bookChangeRepository.findBySequenceGreaterThanOrderBySequenceAsc(
+                        since, PageRequest.of(0, limit));
+        List<BookChangeDTO> dtos = new ArrayList<>(changes.size());
+        changes.forEach(c -> dtos.add(toDTO(c)));
+        return dtos;
+    }
+
+    private BookChangeDTO toDTO(BookChange change) {
+        return new BookChangeDTO(
+                change.getSequence(),
+                change.getType().name(),
+                change.getIsbn(),
+                change.getBook() == null ? null : fromJson(change.getBook()),
+                change.getChangedAt());
+    }
+
+    /** Sequences are contiguous, so a gap after the sequence means changes have been pruned */
+    private static boolean isPruned(long since, List<BookChangeDTO> changes, long lastSequence) {
+        return changes.isEmpty() ? since < lastSequence : changes.get(0).getSequence() != since + 1;
+    }
+
+    private static ResourceGoneException pruned(long since) {
+        return new ResourceGoneException(
+                "Changes after sequence "
+                        + since
+                        + " are no longer retained - rescan the catalogue");
+    }
+
+    private String toJson(BookDTO book) {
+        try {
+            return objectMapper.writeValueAsString(book);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private BookDTO fromJson(String book) {
+        try {
+            return objectMapper.readValue(book, BookDTO.class);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** A client of the change stream and the sequence of the last change it was sent */
+    private static class Subscriber {
+        private final SseEmitter emitter;
+        private volatile long cursor;
+        private volatile long lastSentNanos = System.nanoTime();
+
+        private Subscriber(SseEmitter emitter, long cursor) {
+            this.emitter = emitter;
+            this.cursor = cursor;
+        }
+    }
+}
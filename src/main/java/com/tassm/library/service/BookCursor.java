@@ -0,0 +1,70 @@
+package com.tassm.library.service;
+
+import com.tassm.library.exception.BadRequestException;
+import com.tassm.library.model.entity.Book;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/*
+ * Opaque keyset pagination cursor identifying the last book of a page by (publicationYear, id).
+ * Clients receive it base64 encoded and should not depend on its contents.
+ */
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+class BookCursor {
+
+    /** Cursor positioned before every book, used when no cursor is provided */
+    static final BookCursor START = new BookCursor(Integer.MIN_VALUE, Long.MIN_VALUE);
+
+    private final int publicationYear;
+    private final long id;
+
+    /**
+     * Create a cursor positioned after the given book
+     *
+     * @param book the last book of a page
+     * @return BookCursor the cursor for the next page
+     */
+    static BookCursor after(Book book) {
+        return new BookCursor(book.getPublicationYear(), book.getId());
+    }
+
+    /**
+     * Decode a cursor previously returned to a client, throws a BadRequestException if it is
+     * invalid.
+     *
+     * @param cursor the encoded cursor, may be null for the first page
+     * @return BookCursor the decoded cursor
+     */
+    static BookCursor decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return START;
+        }
+        try {
+            String decoded =
+                    new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf(':');
+            return new BookCursor(
+                    Integer.parseInt(decoded.substring(0, separator)),
+                    Long.parseLong(decoded.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new BadRequestException("Invalid cursor", e);
+        }
+    }
+
+    /**
+     * Encode the cursor to be returned to a client
+     *
+     * @return String the encoded cursor
+     */
+    String encode() {
+        String raw = publicationYear + ":" + id;
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,118 @@
+package com.tassm.library.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tassm.library.repository.BookExportRepository;
+import io.micrometer.core.annotation.Timed;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/*
+ * Service to export the whole catalogue. Each book is written to the output as soon as it is read
+ * from the database cursor, no DTOs or entities are collected so memory use stays constant however
+ * many books there are.
+ */
+@Service
+public class BookExportService {
+
+    private static final String CSV_HEADER = "isbn,title,authorNames,publicationYear\r\n";
+    private static final char CSV_AUTHOR_SEPARATOR = ';';
+
+    @Autowired BookExportRepository bookExportRepository;
+    @Autowired ObjectMapper objectMapper;
+
+    /**
+     * Write every book and its authors to the output stream in the given format, ordered by the
+     * order in which the books were created. The output stream is flushed but not closed.
+     *
+     * @param format the format to write the books in
+     * @param out the stream to write the books to
+     * @throws IOException if the books cannot be written
+     */
+    @Timed("library.book.export")
+    @Transactional(readOnly = true)
+    public void exportBooks(ExportFormat format, OutputStream out) throws IOException {
+        switch (format) {
+            case NDJSON -> exportNdjson(out);
+            case CSV -> exportCsv(out);
+        }
+    }
+
+    private void exportNdjson(OutputStream out) throws IOException {
+        JsonGenerator generator =
+                objectMapper
+                        .getFactory()
+                        .createGenerator(out)
+                        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // each document is terminated by a newline rather than the default space
+        generator.setRootValueSeparator(null);
+        bookExportRepository.forEachBook(
+                (isbn, title, publicationYear, authorNames) -> {
+                    // same fields and order as a serialized BookDTO
+                    generator.writeStartObject();
+                    generator.writeStringField("isbn", isbn);
+                    generator.writeStringField("title", title);
+                    generator.writeArrayFieldStart("authorNames");
+                    for (String name : authorNames) {
+                        generator.writeString(name);
+                    }
+                    generator.writeEndArray();
+                    generator.writeNumberField("publicationYear", publicationYear);
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                });
+        generator.close();
+    }
+
+    private void exportCsv(OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write(CSV_HEADER);
+        bookExportRepository.forEachBook(
+                (isbn, title, publicationYear, authorNames) -> {
+                    writeCsvField(writer, isbn);
+                    writer.write(',');
+                    writeCsvField(writer, title);
+                    writer.write(',');
+                    writeCsvField(writer, joinAuthorNames(authorNames));
+                    writer.write(',');
+                    writer.write(Integer.toString(publicationYear));
+                    writer.write("\r\n");
+                });
+        writer.flush();
+    }
+
+    private static String joinAuthorNames(List<String> authorNames) {
+        StringBuilder joined = new StringBuilder();
+        for (String name : authorNames) {
+            if (joined.length() > 0) {
+                joined.append(CSV_AUTHOR_SEPARATOR);
+            }
+            joined.append(name);
+        }
+        return joined.toString();
+    }
+
+    /** Write a field quoted as per RFC 4180 when it contains a separator, quote or line break */
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
@@ -0,0 +1,359 @@
+package com.tassm.library.service;
+
+import com.tassm.library.exception.BadRequestException;
+import com.tassm.library.model.dto.BookChangeDTO;
+import com.tassm.library.model.dto.BookDTO;
+import com.tassm.library.model.dto.BookSearchResultDTO;
+import com.tassm.library.model.entity.BookChange;
+import com.tassm.library.repository.BookChangeRepository;
+import com.tassm.library.repository.BookExportRepository;
+import io.micrometer.core.annotation.Timed;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.ngram.EdgeNGramTokenFilter;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/*
+ * Full text search of book titles and author names with an embedded lucene index. The index holds
+ * every field of the books so results are served without querying the database. It is rebuilt
+ * from the database at startup and kept in sync with the changes made through BookService once
+ * they are committed, and with the changes made through other instances as they are read from the
+ * change log, see BookChangeFeedService.
+ *
+ * Titles and author names are also indexed as edge n-grams, so the prefix of the last word typed
+ * is matched with a single term lookup rather than by expanding every term with that prefix.
+ */
+@Service
+public class BookSearchService implements SmartInitializingSingleton {
+
+    /** Maximum number of results which can be paged through */
+    public static final int MAX_RESULTS = 1000;
+
+    private static final Logger log = LoggerFactory.getLogger(BookSearchService.class);
+
+    private static final String ISBN = "isbn";
+    private static final String TITLE = "title";
+    private static final String AUTHOR = "author";
+    private static final String TITLE_PREFIX = "title.prefix";
+    private static final String AUTHOR_PREFIX = "author.prefix";
+    private static final String PUBLICATION_YEAR = "publicationYear";
+    private static final int MAX_PREFIX_LENGTH = 20;
+    private static final float TITLE_BOOST = 2f;
+    private static final float WHOLE_WORD_BOOST = 2f;
+
+    @Autowired BookExportRepository bookExportRepository;
+    @Autowired BookChangeRepository bookChangeRepository;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    @Value("${library.search.index-path:}")
+    String indexPath;
+
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private Directory directory;
+    private IndexWriter writer;
+    private SearcherManager searcherManager;
+    private long indexedSequence;
+
+    @PostConstruct
+    void open() throws IOException {
+        directory =
+                indexPath.isBlank()
+                        ? new ByteBuffersDirectory()
+                        : FSDirectory.open(Path.of(indexPath));
+        Analyzer prefixAnalyzer = prefixAnalyzer();
+        Analyzer indexAnalyzer =
+                new PerFieldAnalyzerWrapper(
+                        analyzer,
+                        Map.of(TITLE_PREFIX, prefixAnalyzer, AUTHOR_PREFIX, prefixAnalyzer));
+        writer =
+                new IndexWriter(
+                        directory,
+                        new IndexWriterConfig(indexAnalyzer)
+                                .setOpenMode(IndexWriterConfig.OpenMode.CREATE));
+        searcherManager = new SearcherManager(writer, null);
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        rebuild();
+    }
+
+    /**
+     * Replace the contents of the index with every book in the database, read with the same cursor
+     * as the catalogue export
+     */
+    public synchronized void rebuild() {
+        long start = System.nanoTime();
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        try {
+            writer.deleteAll();
+            readOnly.executeWithoutResult(
+                    status -> {
+                        // the scan sees every change up to the last sequence read before it
+                        indexedSequence = bookChangeRepository.findLastSequence();
+                        bookExportRepository.forEachBook(
+                                (isbn, title, publicationYear, authorNames) ->
+                                        writer.addDocument(
+                                                document(
+                                                        isbn,
+                                                        title,
+                                                        publicationYear,
+                                                        authorNames)));
+                    });
+            writer.commit();
+            searcherManager.maybeRefreshBlocking();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.info(
+                "Indexed {} books for search in {} ms",
+                writer.getDocStats().numDocs,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Apply the changes made to books to the index once they are committed. A failure is logged
+     * rather than thrown as the change itself has already been committed.
+     *
+     * @param event the books which were saved and removed
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookChange(BookChangeEvent event) {
+        try {
+            for (String isbn : event.getRemovedIsbns()) {
+                writer.deleteDocuments(new Term(ISBN, isbn));
+            }
+            for (BookDTO book : event.getSavedBooks()) {
+                writer.updateDocument(
+                        new Term(ISBN, book.getIsbn()),
+                        document(
+                                book.getIsbn(),
+                                book.getTitle(),
+                                book.getPublicationYear(),
+                                book.getAuthorNames()));
+            }
+            searcherManager.maybeRefreshBlocking();
+        } catch (IOException e) {
+            log.error("Failed to update the search index, rebuild it to recover", e);
+        }
+    }
+
+    /**
+     * Apply changes read from the change log in their order, including those already applied by
+     * onBookChange, so the latest change to an ISBN wins whichever instance made it. Changes the
+     * last rebuild has already seen are skipped. A failure is logged rather than thrown, as in
+     * onBookChange.
+     *
+     * @param changes the changes in sequence order, with the book of each saved one
+     */
+    public synchronized void applyChanges(List<BookChangeDTO> changes) {
+        try {
+            for (BookChangeDTO change : changes) {
+                if (change.getSequence() <= indexedSequence) {
+                    continue;
+                }
+                BookDTO book = change.getBook();
+                if (BookChange.Type.REMOVED.name().equals(change.getType())) {
+                    writer.deleteDocuments(new Term(ISBN, change.getIsbn()));
+                } else if (book != null) {
+                    writer.updateDocument(
+                            new Term(ISBN, book.getIsbn()),
+                            document(
+                                    book.getIsbn(),
+                                    book.getTitle(),
+                                    book.getPublicationYear(),
+                                    book.getAuthorNames()));
+                }
+            }
+            searcherManager.maybeRefreshBlocking();
+        } catch (IOException e) {
+            log.error("Failed to update the search index, rebuild it to recover", e);
+        }
+    }
+
+    /**
+     * Search the titles and author names of books, every word of the text must match and the last
+     * word also matches as a prefix so results can be shown as the text is typed. Results are
+     * ranked by relevance with title matches ranked above author matches.
+     *
+     * @param text the text to search for
+     * @param page the page of results, starting at 0
+     * @param size the number of results per page
+     * @return BookSearchResultDTO the page of matching books
+     */
+    @Timed("library.book.search")
+    public BookSearchResultDTO search(String text, int page, int size) {
+        // computed as a long so a large page cannot overflow to a small limit
+        long end = (page + 1L) * size;
+        if (end > MAX_RESULTS) {
+            throw new BadRequestException(
+                    "Only the first " + MAX_RESULTS + " search results can be retrieved");
+        }
+        int limit = (int) end;
+        List<String> words = analyze(text);
+        if (words.isEmpty()) {
+            return new BookSearchResultDTO(List.of(), 0);
+        }
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                TopDocs top = searcher.search(query(words), limit);
+                StoredFields storedFields = searcher.storedFields();
+                List<BookDTO> books = new ArrayList<>(size);
+                ScoreDoc[] hits = top.scoreDocs;
+                for (int i = page * size; i < hits.length; i++) {
+                    books.add(toDTO(storedFields.document(hits[i].doc)));
+                }
+                return new BookSearchResultDTO(books, top.totalHits.value);
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Query query(List<String> words) {
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        int last = words.size() - 1;
+        for (int i = 0; i < last; i++) {
+            query.add(wholeWord(words.get(i)), BooleanClause.Occur.MUST);
+        }
+        String prefix = words.get(last);
+        String gram = prefix.substring(0, Math.min(prefix.length(), MAX_PREFIX_LENGTH));
+        Query lastWord =
+                new BooleanQuery.Builder()
+                        .add(
+                                new BoostQuery(wholeWord(prefix), WHOLE_WORD_BOOST),
+                                BooleanClause.Occur.SHOULD)
+                        .add(
+                                new BoostQuery(
+                                        new TermQuery(new Term(TITLE_PREFIX, gram)), TITLE_BOOST),
+                                BooleanClause.Occur.SHOULD)
+                        .add(
+                                new TermQuery(new Term(AUTHOR_PREFIX, gram)),
+                                BooleanClause.Occur.SHOULD)
+                        .build();
+        query.add(lastWord, BooleanClause.Occur.MUST);
+        return query.build();
+    }
+
+    private Query wholeWord(String word) {
+        return new BooleanQuery.Builder()
+                .add(
+                        new BoostQuery(new TermQuery(new Term(TITLE, word)), TITLE_BOOST),
+                        BooleanClause.Occur.SHOULD)
+                .add(new TermQuery(new Term(AUTHOR, word)), BooleanClause.Occur.SHOULD)
+                .build();
+    }
+
+    private List<String> analyze(String text) {
+        List<String> words = new ArrayList<>();
+        try (TokenStream tokens = analyzer.tokenStream(TITLE, text)) {
+            CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+            tokens.reset();
+            while (tokens.incrementToken()) {
+                words.add(term.toString());
+            }
+            tokens.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return words;
+    }
+
+    private static Document document(
+            String isbn, String title, int publicationYear, Collection<String> authorNames) {
+        Document document = new Document();
+        document.add(new StringField(ISBN, isbn, Field.Store.YES));
+        document.add(new TextField(TITLE, title, Field.Store.YES));
+        document.add(new TextField(TITLE_PREFIX, title, Field.Store.NO));
+        for (String authorName : authorNames) {
+            document.add(new TextField(AUTHOR, authorName, Field.Store.YES));
+            document.add(new TextField(AUTHOR_PREFIX, authorName, Field.Store.NO));
+        }
+        document.add(new StoredField(PUBLICATION_YEAR, publicationYear));
+        return document;
+    }
+
+    private static BookDTO toDTO(Document document) {
+        IndexableField[] authors = document.getFields(AUTHOR);
+        Set<String> authorNames = new HashSet<>(authors.length * 2);
+        for (IndexableField author : authors) {
+            authorNames.add(author.stringValue());
+        }
+        return new BookDTO(
+                document.get(ISBN),
+                document.get(TITLE),
+                authorNames,
+                document.getField(PUBLICATION_YEAR).numericValue().intValue());
+    }
+
+    private static Analyzer prefixAnalyzer() {
+        return new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                Tokenizer tokenizer = new StandardTokenizer();
+                TokenStream grams =
+                        new EdgeNGramTokenFilter(
+                                new LowerCaseFilter(tokenizer), 1, MAX_PREFIX_LENGTH, true);
+                return new TokenStreamComponents(tokenizer, grams);
+            }
+        };
+    }
+}
@@ -1,143 +1,642 @@
 package com.tassm.library.service;
 
+import com.tassm.library.config.CacheConfig;
+import com.tassm.library.config.ReplicaRoutingDataSource;
+import com.tassm.library.exception.PreconditionFailedException;
 import com.tassm.library.exception.ResourceConflictException;
 import com.tassm.library.exception.ResourceNotFoundException;
+import com.tassm.library.model.Isbn;
+import com.tassm.library.model.dto.BookBatchDTO;
 import com.tassm.library.model.dto.BookDTO;
+import com.tassm.library.model.dto.BookPageDTO;
+import com.tassm.library.model.dto.BookView;
 import com.tassm.library.model.dto.CreateBookDTO;
+import com.tassm.library.model.dto.ImportConflictDTO;
+import com.tassm.library.model.dto.ImportResultDTO;
 import com.tassm.library.model.entity.Author;
 import com.tassm.library.model.entity.Book;
 import com.tassm.library.model.mapping.BookMapper;
 import com.tassm.library.repository.AuthorRepository;
+import com.tassm.library.repository.BookFilter;
 import com.tassm.library.repository.BookRepository;
-import jakarta.transaction.Transactional;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Service
 public class BookService {
 
+    /** Name of the timer of the service methods, tagged with the method name */
+    static final String METRIC_NAME = "library.book.service";
+
+    /** Cache key of the returned book, books are cached by their canonical ISBN-13 */
+    private static final String RESULT_KEY =
+            "T(com.tassm.library.model.Isbn).toIsbn13(#result.isbn)";
+
+    /** Cache key of the ISBN parameter */
+    private static final String ISBN_KEY = "T(com.tassm.library.model.Isbn).toIsbn13(#isbn)";
+
+    /** Number of records of a bulk import resolved and inserted together */
+    static final int IMPORT_CHUNK_SIZE = 1000;
+
+    /** Number of ISBNs of a batch lookup resolved by one query */
+    static final int BATCH_CHUNK_SIZE = 500;
+
     @Autowired BookRepository bookRepository;
     @Autowired AuthorRepository authorRepository;
     @Autowired BookMapper bookMapper;
+    @Autowired EntityManager entityManager;
+    @Autowired MeterRegistry meterRegistry;
+    @Autowired ApplicationEventPublisher eventPublisher;
+    @Autowired CacheManager cacheManager;
+    @Autowired PlatformTransactionManager transactionManager;
+    @Autowired CatalogueChangeCounter catalogueChangeCounter;
+    @Autowired IsbnFilter isbnFilter;
+    @Autowired LoadedBookCache loadedBookCache;
+
+    @Value("${library.single-flight.max-wait}")
+    Duration singleFlightMaxWait;
+
+    private DistributionSummary findBooksRows;
+    private TransactionTemplate readOnly;
+    private SingleFlight<BookLoad, BookDTO> bookLoads;
+    private SingleFlight<PageLoad, BookPageDTO> pageLoads;
+
+    @PostConstruct
+    void registerMetrics() {
+        findBooksRows =
+                DistributionSummary.builder("library.book.find.rows")
+                        .description("Books returned by a findBooks page")
+                        .baseUnit("books")
+                        .register(meterRegistry);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        bookLoads = new SingleFlight<>("findBookByIsbn", singleFlightMaxWait, meterRegistry);
+        pageLoads = new SingleFlight<>("findBooks", singleFlightMaxWait, meterRegistry);
+    }
 
     /**
-     * Find books by either author name or by a range of publication years If publicationYear ranges
-     * are used then both must be provided. Filtering by both author and publication year is NOT
-     * IMPLEMENTED
+     * Find a page of books matching a filter of any combination of author name, publication year
+     * range and title prefix, applied together in a single query. Books are ordered by
+     * publicationYear and then by the order in which they were created. Concurrent identical calls
+     * share a single query, see SingleFlight.
      *
-     * @param authorName the name of the author to filter by
-     * @param rangeStart the start of the publicationYear range
-     * @param rangeEnd the end of the publicationYear range
-     * @return
+     * @param filter the criteria the books must match
+     * @param cursor the cursor returned with the previous page, null for the first page
+     * @param limit the maximum number of books in the page
+     * @return BookPageDTO the page of books and the cursor of the next page
      */
-    @Transactional
-    public List<BookDTO> findBooks(String authorName, Integer rangeStart, Integer rangeEnd) {
-        List<BookDTO> books = new ArrayList<>();
-        if (authorName != null) {
-            bookRepository
-                    .findByAuthorName(authorName)
-                    .forEach(b -> books.add(bookMapper.bookEntityToDTO(b)));
-        } else if (rangeStart != null) {
-            bookRepository
-                    .findBetweenYearRange(rangeStart, rangeEnd)
-                    .forEach(b -> books.add(bookMapper.bookEntityToDTO(b)));
+    @Timed(METRIC_NAME)
+    public BookPageDTO findBooks(BookFilter filter, String cursor, int limit) {
+        BookPageDTO page =
+                coalesce(
+                        pageLoads,
+                        new PageLoad(catalogueChangeCounter.currentCount(), filter, cursor, limit),
+                        () -> readOnly.execute(status -> loadBooks(filter, cursor, limit)));
+        findBooksRows.record(page.getBooks().size());
+        return page;
+    }
+
+    private BookPageDTO loadBooks(BookFilter filter, String cursor, int limit) {
+        BookCursor after = BookCursor.decode(cursor);
+        List<Long> ids =
+                bookRepository.findPageIds(
+                        filter, after.getPublicationYear(), after.getId(), limit);
+        List<Book> books = ids.isEmpty() ? List.of() : bookRepository.findAllWithAuthors(ids);
+        List<BookDTO> dtos = new ArrayList<>(books.size());
+        books.forEach(b -> dtos.add(bookMapper.bookEntityToDTO(b)));
+        String nextCursor = null;
+        if (!books.isEmpty() && books.size() == limit) {
+            nextCursor = BookCursor.after(books.get(books.size() - 1)).encode();
         }
-        return books;
+        return new BookPageDTO(dtos, nextCursor);
+    }
+
+    /**
+     * Stream every book matching a filter to a consumer, in the same order as findBooks. The books
+     * are projected straight from the query rows without loading entities, so memory use does not
+     * grow with the number of books.
+     *
+     * @param filter the criteria the books must match
+     * @param consumer the consumer to pass each book to
+     */
+    @Timed(METRIC_NAME)
+    @Transactional(readOnly = true)
+    public void streamBooks(BookFilter filter, Consumer<BookView> consumer) {
+        bookRepository.forEachView(filter, consumer);
     }
 
     /**
      * Save a book and associated authors in the database. Saves authors and then saves books with a
-     * reference to the persisted authors.
+     * reference to the persisted authors. The ISBN is only looked up when the IsbnFilter reports it
+     * might exist, and an insert racing with one of the same ISBN is also reported as a conflict.
      *
      * @param dto the DTO representing the new book to save
      * @return BookDTO representing the saved book
      */
+    @Timed(METRIC_NAME)
     @Transactional
+    @CachePut(cacheNames = CacheConfig.BOOKS_BY_ISBN, key = RESULT_KEY)
     public BookDTO saveBookAndAuthors(CreateBookDTO dto) {
         Book book = bookMapper.createBookDtoToEntity(dto);
 
-        if (bookRepository.findByIsbn(dto.getIsbn()).isPresent()) {
-            throw new ResourceConflictException("The book with this ISBN already exists");
+        if (isbnFilter.mightExist(book.getIsbn13())) {
+            if (bookRepository.findVersionByIsbn13(book.getIsbn13()).isPresent()) {
+                throw new ResourceConflictException("The book with this ISBN already exists");
+            }
+            isbnFilter.recordMiss(book.getIsbn13());
         }
         Set<Author> authors = saveAuthorsFromNames(dto.getAuthorNames());
         book.getAuthors().addAll(authors);
-        bookRepository.saveAndFlush(book);
-        return bookMapper.bookEntityToDTO(book);
+        try {
+            bookRepository.saveAndFlush(book);
+        } catch (DataIntegrityViolationException e) {
+            throw new ResourceConflictException("The book with this ISBN already exists", e);
+        }
+        BookDTO saved = bookMapper.bookEntityToDTO(book);
+        eventPublisher.publishEvent(BookChangeEvent.saved(List.of(saved)));
+        return saved;
+    }
+
+    /**
+     * Import many books and their authors in one transaction. Records are processed in chunks, for
+     * each chunk the existing ISBNs and authors are resolved with one query each and the new
+     * authors and books are inserted in JDBC batches. Records whose ISBN already exists, or is
+     * repeated in the request, are not imported and are reported as conflicts instead.
+     *
+     * @param dtos the DTOs representing the new books to save
+     * @return ImportResultDTO the number of books created and the conflicting records
+     */
+    @Timed(METRIC_NAME)
+    @Transactional
+    public ImportResultDTO importBooks(List<CreateBookDTO> dtos) {
+        List<ImportConflictDTO> conflicts = new ArrayList<>();
+        Set<Long> seenIsbns = new HashSet<>();
+        int created = 0;
+        for (int from = 0; from < dtos.size(); from += IMPORT_CHUNK_SIZE) {
+            int to = Math.min(dtos.size(), from + IMPORT_CHUNK_SIZE);
+            created += importChunk(dtos.subList(from, to), from, seenIsbns, conflicts);
+            // keep the persistence context from growing with the size of the import
+            entityManager.flush();
+            entityManager.clear();
+        }
+        return new ImportResultDTO(created, conflicts);
+    }
+
+    /**
+     * Apply a batch of queued creates and updates in one transaction, in the order they were
+     * queued. The existing ISBNs and the authors of the whole batch are resolved up front and new
+     * books are inserted in JDBC batches. A write which conflicts, by creating or changing to an
+     * ISBN already in use, or targets a missing book is recorded as failed without affecting the
+     * rest of the batch. The outcome of each write is recorded on it, the caller publishes them
+     * once the transaction has committed.
+     *
+     * @param writes the queued writes
+     */
+    @Timed(METRIC_NAME)
+    @Transactional
+    public void applyWrites(List<BookWrite> writes) {
+        Set<Long> newIsbns = new HashSet<>();
+        Set<String> authorNames = new HashSet<>();
+        for (BookWrite write : writes) {
+            if (write.isCreate()) {
+                newIsbns.add(Isbn.toIsbn13(write.getCreate().getIsbn()));
+                authorNames.addAll(write.getCreate().getAuthorNames());
+            } else {
+                if (write.getUpdate().getIsbn() != null) {
+                    newIsbns.add(Isbn.toIsbn13(write.getUpdate().getIsbn()));
+                }
+                if (write.getUpdate().getAuthorNames() != null) {
+                    authorNames.addAll(write.getUpdate().getAuthorNames());
+                }
+            }
+        }
+        Set<Long> existingIsbns = new HashSet<>(bookRepository.findExistingIsbn13s(newIsbns));
+        Map<String, Author> authorsByName = new HashMap<>();
+        saveAuthorsFromNames(authorNames).forEach(a -> authorsByName.put(a.getName(), a));
+
+        Map<BookWrite, Book> applied = new LinkedHashMap<>();
+        Map<BookWrite, String> previousIsbns = new HashMap<>();
+        for (BookWrite write : writes) {
+            if (write.isCreate()) {
+                CreateBookDTO dto = write.getCreate();
+                if (!existingIsbns.add(Isbn.toIsbn13(dto.getIsbn()))) {
+                    write.failed(
+                            new ResourceConflictException(
+                                    "The book with this ISBN already exists"));
+                    continue;
+                }
+                Book book = bookMapper.createBookDtoToEntity(dto);
+                dto.getAuthorNames()
+                        .forEach(name -> book.getAuthors().add(authorsByName.get(name)));
+                bookRepository.save(book);
+                applied.put(write, book);
+            } else {
+                Optional<Book> book = bookRepository.findByIsbn(write.getIsbn());
+                if (book.isEmpty()) {
+                    write.failed(notFound(write.getIsbn()));
+                    continue;
+                }
+                if (!matchesVersion(write.getUpdate(), book.get())) {
+                    write.failed(preconditionFailed(write.getIsbn()));
+                    continue;
+                }
+                long isbn13 = book.get().getIsbn13();
+                long newIsbn13 =
+                        write.getUpdate().getIsbn() == null
+                                ? isbn13
+                                : Isbn.toIsbn13(write.getUpdate().getIsbn());
+                if (newIsbn13 != isbn13) {
+                    if (!existingIsbns.add(newIsbn13)) {
+                        write.failed(
+                                new ResourceConflictException(
+                                        "The book with this ISBN already exists"));
+                        continue;
+                    }
+                    // free for a later write of the batch
+                    existingIsbns.remove(isbn13);
+                }
+                previousIsbns.put(write, book.get().getIsbn());
+                bookMapper.updateBookFromDTO(write.getUpdate(), book.get());
+                if (write.getUpdate().getAuthorNames() != null) {
+                    Set<Author> authors = new HashSet<>();
+                    write.getUpdate()
+                            .getAuthorNames()
+                            .forEach(name -> authors.add(authorsByName.get(name)));
+                    book.get().setAuthors(authors);
+                }
+                applied.put(write, book.get());
+            }
+        }
+        // the books are mapped once flushed so the DTOs carry the incremented versions
+        bookRepository.flush();
+        List<BookDTO> saved = new ArrayList<>(applied.size());
+        List<String> removedIsbns = new ArrayList<>();
+        applied.forEach(
+                (write, book) -> {
+                    BookDTO dto = bookMapper.bookEntityToDTO(book);
+                    String previousIsbn = previousIsbns.get(write);
+                    if (previousIsbn != null && !previousIsbn.equals(dto.getIsbn())) {
+                        removedIsbns.add(previousIsbn);
+                    }
+                    write.succeeded(dto);
+                    saved.add(dto);
+                });
+
+        // the cache is transaction aware so the entries only change once the batch commits
+        Cache cache = cacheManager.getCache(CacheConfig.BOOKS_BY_ISBN);
+        removedIsbns.forEach(isbn -> cache.evict(Isbn.toIsbn13(isbn)));
+        saved.forEach(b -> cache.put(Isbn.toIsbn13(b.getIsbn()), b));
+        eventPublisher.publishEvent(new BookChangeEvent(saved, removedIsbns));
     }
 
     /**
      * Retrieve a book by its unique ISBN, throws a ResourceNotFoundException if it does not exist.
+     * The ISBN may be in any of its forms, see Isbn, and found books are cached by their canonical
+     * ISBN-13, see LoadedBookCache, so every form of an ISBN shares the cached book and the load.
+     * ISBNs the IsbnFilter reports as certainly absent are not looked up. Concurrent lookups of an
+     * uncached ISBN share a single load, and its ResourceNotFoundException when the book does not
+     * exist, see SingleFlight.
+     *
+     * <p>The cache is used directly rather than with @Cacheable, whose interceptor wraps the
+     * exception of every miss in a new exception with a stack trace.
      *
      * @param isbn unique ISBN of the book
      * @return BookDTO representing the matching book
      */
-    @Transactional
+    @Timed(METRIC_NAME)
     public BookDTO findBookByIsbn(String isbn) {
-        Optional<Book> book = bookRepository.findByIsbn(isbn);
+        long isbn13 = Isbn.toIsbn13(isbn);
+        Cache cache = cacheManager.getCache(CacheConfig.BOOKS_BY_ISBN);
+        BookDTO cached = cache.get(isbn13, BookDTO.class);
+        if (cached != null) {
+            return cached;
+        }
+        if (isbn13 == Isbn.INVALID || !isbnFilter.mightExist(isbn13)) {
+            throw notFound(isbn);
+        }
+        long readBegan = loadedBookCache.beginRead();
+        BookDTO book =
+                coalesce(
+                        bookLoads,
+                        new BookLoad(readBegan, isbn13),
+                        () -> readOnly.execute(status -> loadBook(isbn, isbn13)));
+        loadedBookCache.put(isbn13, book, readBegan);
+        return book;
+    }
+
+    private BookDTO loadBook(String isbn, long isbn13) {
+        Optional<Book> book = bookRepository.findByIsbn13(isbn13);
         if (book.isEmpty()) {
-            throw new ResourceNotFoundException("Book with ISBN " + isbn + " was not found");
+            isbnFilter.recordMiss(isbn13);
+            throw notFound(isbn);
         }
         var dto = bookMapper.bookEntityToDTO(book.get());
         return dto;
     }
 
+    /**
+     * Retrieve many books by ISBN at once. ISBNs may be in any of their forms and are resolved once
+     * each, cached books are taken from the cache and ISBNs the IsbnFilter reports as certainly
+     * absent are not looked up. For the rest the ids of each chunk of BATCH_CHUNK_SIZE ISBNs are
+     * selected with one query, in one transaction, and the books are loaded with their authors by
+     * findAllWithAuthors, from the second level cache where present. The loaded books are cached.
+     *
+     * @param isbns the ISBNs of the books
+     * @return BookBatchDTO the books found, in the order of their ISBNs, and the ISBNs not found
+     */
+    @Timed(METRIC_NAME)
+    public BookBatchDTO findBooksByIsbn(List<String> isbns) {
+        Cache cache = cacheManager.getCache(CacheConfig.BOOKS_BY_ISBN);
+        // the first form of each ISBN in the request, by canonical ISBN-13
+        Map<Long, String> requested = new LinkedHashMap<>();
+        Map<Long, BookDTO> found = new HashMap<>();
+        List<Long> toLoad = new ArrayList<>();
+        for (String isbn : isbns) {
+            long isbn13 = Isbn.toIsbn13(isbn);
+            if (isbn13 == Isbn.INVALID || requested.putIfAbsent(isbn13, isbn) != null) {
+                continue;
+            }
+            BookDTO cached = cache.get(isbn13, BookDTO.class);
+            if (cached != null) {
+                found.put(isbn13, cached);
+            } else if (isbnFilter.mightExist(isbn13)) {
+                toLoad.add(isbn13);
+            }
+        }
+        if (!toLoad.isEmpty()) {
+            long readBegan = loadedBookCache.beginRead();
+            readOnly.executeWithoutResult(status -> loadBooks(toLoad, found));
+            toLoad.forEach(
+                    isbn13 -> {
+                        BookDTO book = found.get(isbn13);
+                        if (book == null) {
+                            isbnFilter.recordMiss(isbn13);
+                        } else {
+                            loadedBookCache.put(isbn13, book, readBegan);
+                        }
+                    });
+        }
+
+        List<BookDTO> books = new ArrayList<>(found.size());
+        List<String> missingIsbns = new ArrayList<>();
+        requested.forEach(
+                (isbn13, isbn) -> {
+                    BookDTO book = found.get(isbn13);
+                    if (book == null) {
+                        missingIsbns.add(isbn);
+                    } else {
+                        books.add(book);
+                    }
+                });
+        return new BookBatchDTO(books, missingIsbns);
+    }
+
+    private void loadBooks(List<Long> isbn13s, Map<Long, BookDTO> found) {
+        for (int from = 0; from < isbn13s.size(); from += BATCH_CHUNK_SIZE) {
+            List<Long> chunk =
+                    isbn13s.subList(from, Math.min(isbn13s.size(), from + BATCH_CHUNK_SIZE));
+            List<Long> ids = bookRepository.findIdsByIsbn13(chunk);
+            for (Book book :
+                    ids.isEmpty() ? List.<Book>of() : bookRepository.findAllWithAuthors(ids)) {
+                found.put(book.getIsbn13(), bookMapper.bookEntityToDTO(book));
+            }
+            // keep the persistence context from growing with the size of the batch
+            entityManager.clear();
+        }
+    }
+
+    /**
+     * Run a read through a single flight. The key holds the count of committed changes, so a call
+     * made after a change never shares a load started before it. Reads which must see writes not
+     * yet visible to other callers, those in a write transaction or pinned to the primary by a
+     * recent write of their client, load on their own.
+     */
+    private <K, V> V coalesce(SingleFlight<K, V> flight, K key, Supplier<V> loader) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                || ReplicaRoutingDataSource.isPinnedToPrimary()) {
+            return loader.get();
+        }
+        return flight.load(key, loader);
+    }
+
     /**
      * Update a book by its unique ISBN, throws a ResourceNotFoundException if it does not exist.
+     * The cached book is replaced, or evicted if the update changes its canonical ISBN-13.
+     *
+     * <p>When the DTO has a version the update is conditional on the book still being at that
+     * version and a PreconditionFailedException is thrown otherwise. An update which races with a
+     * concurrent update of the same book fails rather than overwriting it, with a
+     * PreconditionFailedException when conditional and a ResourceConflictException otherwise. A
+     * change of ISBN to the ISBN of another book is also a ResourceConflictException.
      *
      * @param isbn unique ISBN of the book to update
      * @param updatedBook DTO including any fields which are to be updated
      * @return BookDTO representing the updated book
      */
+    @Timed(METRIC_NAME)
     @Transactional
+    @Caching(
+            put = @CachePut(cacheNames = CacheConfig.BOOKS_BY_ISBN, key = RESULT_KEY),
+            evict =
+                    @CacheEvict(
+                            cacheNames = CacheConfig.BOOKS_BY_ISBN,
+                            key = ISBN_KEY,
+                            condition = ISBN_KEY + " != " + RESULT_KEY))
     public BookDTO updateBookAndAuthors(String isbn, BookDTO updatedBook) {
         Optional<Book> book = bookRepository.findByIsbn(isbn);
         if (book.isEmpty()) {
-            throw new ResourceNotFoundException("Book with ISBN " + isbn + " was not found");
+            throw notFound(isbn);
+        }
+        if (!matchesVersion(updatedBook, book.get())) {
+            throw preconditionFailed(isbn);
         }
+        String previousIsbn = book.get().getIsbn();
         bookMapper.updateBookFromDTO(updatedBook, book.get());
         // update the author records associated with a book
         if (updatedBook.getAuthorNames() != null) {
             Set<Author> updatedAuthors = saveAuthorsFromNames(updatedBook.getAuthorNames());
             book.get().setAuthors(updatedAuthors);
         }
-        Book res = bookRepository.saveAndFlush(book.get());
-        return bookMapper.bookEntityToDTO(res);
+        Book res;
+        try {
+            res = bookRepository.saveAndFlush(book.get());
+        } catch (OptimisticLockingFailureException e) {
+            if (updatedBook.getVersion() != null) {
+                throw preconditionFailed(isbn);
+            }
+            throw new ResourceConflictException(
+                    "The book was modified by another request - try again", e);
+        } catch (DataIntegrityViolationException e) {
+            // the ISBN was changed to one which identifies another book
+            throw new ResourceConflictException("The book with this ISBN already exists", e);
+        }
+        BookDTO updated = bookMapper.bookEntityToDTO(res);
+        eventPublisher.publishEvent(BookChangeEvent.updated(previousIsbn, updated));
+        return updated;
+    }
+
+    /**
+     * Retrieve the current version of a book by its unique ISBN, throws a ResourceNotFoundException
+     * if it does not exist. The version of a cached book is returned without querying the database,
+     * otherwise only the version is queried, so conditional requests are answered without loading
+     * the authors.
+     *
+     * @param isbn unique ISBN of the book
+     * @return long the version of the book
+     */
+    @Timed(METRIC_NAME)
+    public long findBookVersion(String isbn) {
+        BookDTO cached =
+                cacheManager
+                        .getCache(CacheConfig.BOOKS_BY_ISBN)
+                        .get(Isbn.toIsbn13(isbn), BookDTO.class);
+        if (cached != null && cached.getVersion() != null) {
+            return cached.getVersion();
+        }
+        Optional<Long> version = bookRepository.findVersionByIsbn(isbn);
+        if (version.isEmpty()) {
+            throw notFound(isbn);
+        }
+        return version.get();
     }
 
     /**
      * Delete a book by its unique ISBN, throws a ResourceNotFoundException if it does not exist.
+     * The ISBN is always looked up, not checked against the IsbnFilter, which may not yet hold a
+     * book written directly to the database or very recently by another instance.
      *
      * @param isbn unique ISBN of the book to delete
      */
+    @Timed(METRIC_NAME)
     @Transactional
+    @CacheEvict(cacheNames = CacheConfig.BOOKS_BY_ISBN, key = ISBN_KEY)
     public void deleteBook(String isbn) {
-        Optional<Book> book = bookRepository.findByIsbn(isbn);
+        long isbn13 = Isbn.toIsbn13(isbn);
+        if (isbn13 == Isbn.INVALID) {
+            throw notFound(isbn);
+        }
+        Optional<Book> book = bookRepository.findByIsbn13(isbn13);
         if (book.isEmpty()) {
-            throw new ResourceNotFoundException("Book with ISBN " + isbn + " was not found");
+            throw notFound(isbn);
         }
-        bookRepository.deleteByIsbn(isbn);
+        // removed as an entity so only this book is evicted from the second level cache
+        bookRepository.delete(book.get());
         bookRepository.flush();
+        eventPublisher.publishEvent(BookChangeEvent.deleted(book.get().getIsbn()));
     }
 
-    private Set<Author> saveAuthorsFromNames(Iterable<String> authorNames) {
-        Set<Author> authors = new HashSet<>();
-        for (String s : authorNames) {
-            var a = authorRepository.findByName(s);
-            if (a.isPresent()) {
-                authors.add(a.get());
+    private int importChunk(
+            List<CreateBookDTO> chunk,
+            int offset,
+            Set<Long> seenIsbns,
+            List<ImportConflictDTO> conflicts) {
+        long[] isbn13s = new long[chunk.size()];
+        Set<Long> isbns = new HashSet<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            isbn13s[i] = Isbn.toIsbn13(chunk.get(i).getIsbn());
+            isbns.add(isbn13s[i]);
+        }
+        Set<Long> existingIsbns = bookRepository.findExistingIsbn13s(isbns);
+
+        List<CreateBookDTO> accepted = new ArrayList<>(chunk.size());
+        Set<String> authorNames = new HashSet<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            CreateBookDTO dto = chunk.get(i);
+            if (existingIsbns.contains(isbn13s[i])) {
+                conflicts.add(
+                        new ImportConflictDTO(
+                                offset + i,
+                                dto.getIsbn(),
+                                "The book with this ISBN already exists"));
+            } else if (!seenIsbns.add(isbn13s[i])) {
+                conflicts.add(
+                        new ImportConflictDTO(
+                                offset + i, dto.getIsbn(), "The ISBN is repeated in the import"));
             } else {
-                Author newAuthor = new Author();
-                newAuthor.setName(s);
-                newAuthor = authorRepository.save(newAuthor);
-                authors.add(newAuthor);
+                accepted.add(dto);
+                authorNames.addAll(dto.getAuthorNames());
             }
         }
-        authorRepository.flush();
+
+        Map<String, Author> authorsByName = new HashMap<>();
+        saveAuthorsFromNames(authorNames).forEach(a -> authorsByName.put(a.getName(), a));
+
+        List<Book> books = new ArrayList<>(accepted.size());
+        for (CreateBookDTO dto : accepted) {
+            Book book = bookMapper.createBookDtoToEntity(dto);
+            dto.getAuthorNames().forEach(name -> book.getAuthors().add(authorsByName.get(name)));
+            books.add(book);
+        }
+        bookRepository.saveAll(books);
+        List<BookDTO> saved = new ArrayList<>(books.size());
+        books.forEach(b -> saved.add(bookMapper.bookEntityToDTO(b)));
+        eventPublisher.publishEvent(BookChangeEvent.saved(saved));
+        return books.size();
+    }
+
+    /** Key of a findBookByIsbn load */
+    private record BookLoad(long catalogueChanges, long isbn13) {}
+
+    /** Key of a findBooks load */
+    private record PageLoad(long catalogueChanges, BookFilter filter, String cursor, int limit) {}
+
+    /** An update without a version is unconditional */
+    private static boolean matchesVersion(BookDTO update, Book book) {
+        return update.getVersion() == null || update.getVersion() == book.getVersion();
+    }
+
+    private static ResourceNotFoundException notFound(String isbn) {
+        return new ResourceNotFoundException("Book with ISBN " + isbn + " was not found");
+    }
+
+    private static PreconditionFailedException preconditionFailed(String isbn) {
+        return new PreconditionFailedException(
+                "Book with ISBN " + isbn + " has been modified since the version in If-Match");
+    }
+
+    /**
+     * Resolve the authors with the given names, inserting any which do not exist. Runs a constant
+     * number of statements however many names there are: one select, and when authors are missing
+     * one insert of all of them and one select of the inserted authors.
+     */
+    private Set<Author> saveAuthorsFromNames(Collection<String> authorNames) {
+        Set<String> names = new HashSet<>(authorNames);
+        Set<Author> authors = new HashSet<>(authorRepository.findByNameIn(names));
+        if (authors.size() < names.size()) {
+            authors.forEach(a -> names.remove(a.getName()));
+            authorRepository.insertMissing(names);
+            authors.addAll(authorRepository.findByNameIn(names));
+        }
         return authors;
     }
 }
@@ -0,0 +1,103 @@
+package com.tassm.library.service;
+
+import com.tassm.library.model.dto.BookDTO;
+import com.tassm.library.model.dto.CreateBookDTO;
+import com.tassm.library.model.dto.WriteStatusDTO;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import lombok.Getter;
+
+/*
+ * A create or update of a book queued by WriteBehindService. The outcome is recorded by
+ * BookService.applyWrites inside the batch transaction and only published to waiting clients once
+ * the transaction has committed.
+ */
+public class BookWrite {
+
+    @Getter private final String id = UUID.randomUUID().toString();
+
+    /** The ISBN of the book to update, null for a create */
+    @Getter private final String isbn;
+
+    @Getter private final CreateBookDTO create;
+    @Getter private final BookDTO update;
+
+    private final CompletableFuture<BookDTO> future = new CompletableFuture<>();
+    private BookDTO result;
+    private RuntimeException error;
+
+    private BookWrite(String isbn, CreateBookDTO create, BookDTO update) {
+        this.isbn = isbn;
+        this.create = create;
+        this.update = update;
+    }
+
+    static BookWrite create(CreateBookDTO dto) {
+        return new BookWrite(null, dto, null);
+    }
+
+    static BookWrite update(String isbn, BookDTO dto) {
+        return new BookWrite(isbn, null, dto);
+    }
+
+    boolean isCreate() {
+        return create != null;
+    }
+
+    void succeeded(BookDTO book) {
+        result = book;
+        error = null;
+    }
+
+    void failed(RuntimeException exception) {
+        result = null;
+        error = exception;
+    }
+
+    /** Publish the recorded outcome to the clients waiting on it */
+    void complete() {
+        if (error != null) {
+            future.completeExceptionally(error);
+        } else {
+            future.complete(result);
+        }
+    }
+
+    /**
+     * Wait for the write to complete, rethrowing the exception it failed with
+     *
+     * @param timeout the maximum time to wait
+     * @return Optional<BookDTO> the saved book, empty if the write is still pending
+     */
+    public Optional<BookDTO> await(Duration timeout) throws InterruptedException {
+        try {
+            return Optional.of(future.get(timeout.toNanos(), TimeUnit.NANOSECONDS));
+        } catch (TimeoutException e) {
+            return Optional.empty();
+        } catch (ExecutionException e) {
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    /**
+     * Describe the current status of the write
+     *
+     * @return WriteStatusDTO the status, with the book or the error once completed
+     */
+    public WriteStatusDTO toStatusDTO() {
+        if (!future.isDone()) {
+            return new WriteStatusDTO(id, "PENDING", null, null);
+        }
+        try {
+            return new WriteStatusDTO(id, "COMPLETED", future.join(), null);
+        } catch (CompletionException e) {
+            return new WriteStatusDTO(id, "FAILED", null, e.getCause().getMessage());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.tassm.library.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/*
+ * Tracks the sequence of the last committed change to the catalogue in the change log, see
+ * BookChangeFeedService, so clients polling the book listings can be told nothing has changed
+ * without querying the database. The sequence is shared by every instance, so the version of the
+ * catalogue is the same on all of them.
+ *
+ * Changes made through this instance advance the sequence as they commit, and those of other
+ * instances when the change feed next reads the change log, within library.changes.poll-interval.
+ * Changes written to the database directly, bypassing BookService, are not noticed.
+ */
+@Component
+public class CatalogueChangeCounter {
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Advance to the sequence of a change once it has been committed
+     *
+     * @param event the books which were saved and removed, with the sequence of their changes
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookChange(BookChangeEvent event) {
+        advanceTo(event.getLastSequence());
+    }
+
+    /**
+     * Advance to the sequence of a committed change, an older sequence is ignored
+     *
+     * @param committed the sequence of the change
+     */
+    public void advanceTo(long committed) {
+        sequence.accumulateAndGet(committed, Math::max);
+    }
+
+    /**
+     * The current version of the catalogue. Read it before querying the catalogue, a change
+     * committed during the query then only makes the version older than the result.
+     *
+     * @return String the version, which changes whenever a change to the catalogue is committed
+     */
+    public String currentVersion() {
+        return Long.toString(sequence.get());
+    }
+
+    /**
+     * The sequence of the last committed change known to this instance
+     *
+     * @return long the sequence, which increases whenever a change is committed
+     */
+    public long currentCount() {
+        return sequence.get();
+    }
+}
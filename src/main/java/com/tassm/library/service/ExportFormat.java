@@ -0,0 +1,33 @@
+package com.tassm.library.service;
+
+import com.tassm.library.exception.BadRequestException;
+import java.util.Locale;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/*
+ * The formats the catalogue can be exported in
+ */
+@Getter
+@AllArgsConstructor
+public enum ExportFormat {
+    NDJSON("application/x-ndjson", "books.ndjson"),
+    CSV("text/csv", "books.csv");
+
+    private final String contentType;
+    private final String fileName;
+
+    /**
+     * Parse the format requested by a client, throws a BadRequestException if it is not supported
+     *
+     * @param format the case insensitive name of the format
+     * @return ExportFormat the matching format
+     */
+    public static ExportFormat parse(String format) {
+        try {
+            return valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Export format must be one of ndjson or csv", e);
+        }
+    }
+}
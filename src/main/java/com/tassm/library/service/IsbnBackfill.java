@@ -0,0 +1,108 @@
+package com.tassm.library.service;
+
+import com.tassm.library.model.Isbn;
+import com.tassm.library.repository.BookRepository;
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/*
+ * Fills in the canonical ISBN-13 of books saved before it was stored, see Isbn. Runs once at
+ * startup, before the IsbnFilter is built and before requests are served, as books without it
+ * cannot be looked up. The books are read a page at a time as ids and ISBNs, without loading
+ * entities, and updated with one statement each in a transaction per page, which leaves their
+ * versions unchanged. Books whose ISBN is not an ISBN are logged and left without one, as are
+ * books whose ISBN is another spelling of the ISBN of another book, which the unique ISBN-13
+ * would otherwise reject and fail the startup with.
+ */
+@Service
+public class IsbnBackfill {
+
+    private static final Logger log = LoggerFactory.getLogger(IsbnBackfill.class);
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Autowired BookRepository bookRepository;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    /** Set the ISBN-13 of every book which has none */
+    @PostConstruct
+    public void backfill() {
+        // a read write transaction is routed to the primary
+        TransactionTemplate primary = new TransactionTemplate(transactionManager);
+        long lastId = 0;
+        int books = 0;
+        int skipped = 0;
+        Map<Long, String> page;
+        do {
+            long afterId = lastId;
+            page =
+                    primary.execute(
+                            status -> bookRepository.findIsbnsWithoutIsbn13(afterId, BATCH_SIZE));
+            Map<Long, String> isbns = page;
+            skipped += primary.execute(status -> setIsbn13s(isbns));
+            books += page.size();
+            for (long id : page.keySet()) {
+                lastId = id;
+            }
+        } while (page.size() == BATCH_SIZE);
+        if (books > 0) {
+            log.info(
+                    "Set the ISBN-13 of {} books, {} have an invalid or duplicate ISBN",
+                    books - skipped,
+                    skipped);
+        }
+    }
+
+    /**
+     * Set the ISBN-13 of each book from its ISBN, the first book of the page for each ISBN-13
+     * unless another book already has it
+     *
+     * @param isbns the ISBNs of the books by id, in the order of their ids
+     * @return the number of books left without an ISBN-13
+     */
+    private int setIsbn13s(Map<Long, String> isbns) {
+        int skipped = 0;
+        Map<Long, List<Long>> idsByIsbn13 = new LinkedHashMap<>();
+        for (Map.Entry<Long, String> book : isbns.entrySet()) {
+            long isbn13 = Isbn.toIsbn13(book.getValue());
+            if (isbn13 == Isbn.INVALID) {
+                log.warn("Book {} has the invalid ISBN {}", book.getKey(), book.getValue());
+                skipped++;
+            } else {
+                idsByIsbn13.computeIfAbsent(isbn13, key -> new ArrayList<>()).add(book.getKey());
+            }
+        }
+        if (idsByIsbn13.isEmpty()) {
+            return skipped;
+        }
+        Set<Long> existing = bookRepository.findExistingIsbn13s(idsByIsbn13.keySet());
+        for (Map.Entry<Long, List<Long>> books : idsByIsbn13.entrySet()) {
+            long isbn13 = books.getKey();
+            List<Long> ids = books.getValue();
+            List<Long> duplicates = ids;
+            if (!existing.contains(isbn13)) {
+                bookRepository.setIsbn13(ids.get(0), isbn13);
+                duplicates = ids.subList(1, ids.size());
+            }
+            for (long id : duplicates) {
+                log.warn(
+                        "Book {} has the ISBN {}, the ISBN-13 {} of which another book has",
+                        id,
+                        isbns.get(id),
+                        isbn13);
+                skipped++;
+            }
+        }
+        return skipped;
+    }
+}
@@ -0,0 +1,329 @@
+package com.tassm.library.service;
+
+import com.tassm.library.config.ReplicaRoutingDataSource;
+import com.tassm.library.model.Isbn;
+import com.tassm.library.model.entity.BookChange;
+import com.tassm.library.repository.BookChangeRepository;
+import com.tassm.library.repository.BookRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/*
+ * In memory Bloom filter of the canonical ISBN-13s in the catalogue, see Isbn, so lookups of ISBNs
+ * which certainly do not exist are answered without querying the database. The filter holds a
+ * superset of the ISBNs: it is built at startup by scanning the ISBN-13s of every book, an ISBN is
+ * added by the transaction saving its book before it commits, and books saved by other instances
+ * are added by following the change log. Removed ISBNs stay in the filter as false positives until
+ * the next rebuild.
+ *
+ * A book saved by another instance is only missing from the filter until it next reads the change
+ * log. If it has not read the change log to its end within the maximum staleness, because reading
+ * it fails or falls behind, every ISBN is reported as possibly present until it has.
+ *
+ * The filter is rebuilt periodically, which drops removed ISBNs and picks up books written to the
+ * database directly, bypassing BookService, and sooner when more books have been added than it was
+ * sized for. It is built from and follows the primary, so a lagging replica cannot hide a book.
+ * Clients pinned to the primary by a recent write bypass it, as the write may have been made
+ * through another instance whose change this one has not read yet.
+ */
+@Service
+public class IsbnFilter implements SmartInitializingSingleton {
+
+    static final String CHECKS_METRIC = "library.isbn.filter.checks";
+    static final String FALSE_POSITIVES_METRIC = "library.isbn.filter.false.positives";
+
+    private static final Logger log = LoggerFactory.getLogger(IsbnFilter.class);
+
+    private static final int CHANGE_BATCH_SIZE = 1000;
+
+    @Autowired BookRepository bookRepository;
+    @Autowired BookChangeRepository bookChangeRepository;
+    @Autowired PlatformTransactionManager transactionManager;
+    @Autowired MeterRegistry meterRegistry;
+
+    @Value("${library.isbn-filter.enabled}")
+    boolean enabled;
+
+    @Value("${library.isbn-filter.false-positive-rate}")
+    double falsePositiveRate;
+
+    @Value("${library.isbn-filter.min-capacity}")
+    long minCapacity;
+
+    @Value("${library.isbn-filter.poll-interval}")
+    Duration pollInterval;
+
+    @Value("${library.isbn-filter.rebuild-interval}")
+    Duration rebuildInterval;
+
+    @Value("${library.isbn-filter.max-staleness}")
+    Duration maxStaleness;
+
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private TransactionTemplate primary;
+    private Counter absent;
+    private Counter maybe;
+    private Counter stale;
+    private Counter falsePositives;
+    private Thread refresher;
+    private volatile BloomFilter filter;
+    private volatile BloomFilter building;
+    private volatile long capacity;
+    private long appliedSequence;
+    private volatile long caughtUpNanos;
+
+    @PostConstruct
+    void registerMetrics() {
+        // a read write transaction is routed to the primary
+        primary = new TransactionTemplate(transactionManager);
+        absent = checkCounter("absent");
+        maybe = checkCounter("maybe");
+        stale = checkCounter("stale");
+        falsePositives =
+                Counter.builder(FALSE_POSITIVES_METRIC)
+                        .description("ISBNs the filter reported as possibly present which were not")
+                        .register(meterRegistry);
+        filterGauge(
+                "library.isbn.filter.size",
+                "Memory held by the filter",
+                "bytes",
+                BloomFilter::sizeInBytes);
+        filterGauge(
+                "library.isbn.filter.isbns",
+                "Distinct ISBNs added to the filter",
+                "isbns",
+                BloomFilter::keyCount);
+        filterGauge(
+                "library.isbn.filter.expected.false.positive.rate",
+                "False positive rate expected with the ISBNs added to the filter",
+                null,
+                BloomFilter::expectedFalsePositiveRate);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) {
+            return;
+        }
+        rebuild();
+        refresher = new Thread(this::run, "isbn-filter-refresher");
+        refresher.start();
+    }
+
+    /** Stop following the change log */
+    @PreDestroy
+    void stop() throws InterruptedException {
+        stopped.countDown();
+        if (refresher != null) {
+            refresher.join();
+        }
+    }
+
+    /**
+     * Check whether a book with an ISBN might exist. Answers true without checking when the filter
+     * is disabled or the current thread is pinned to the primary, and for an ISBN absent from the
+     * filter when it has not caught up with the change log within the maximum staleness.
+     *
+     * @param isbn13 the canonical ISBN-13 of the book, see Isbn
+     * @return boolean false if the book certainly does not exist
+     */
+    public boolean mightExist(long isbn13) {
+        BloomFilter current = filter;
+        if (current == null || ReplicaRoutingDataSource.isPinnedToPrimary()) {
+            return true;
+        }
+        if (current.mightContain(isbn13)) {
+            maybe.increment();
+            return true;
+        }
+        if (System.nanoTime() - caughtUpNanos > maxStaleness.toNanos()) {
+            // the book may have been saved by another instance since the change log was read
+            stale.increment();
+            return true;
+        }
+        absent.increment();
+        return false;
+    }
+
+    /**
+     * Record that the database had no book with an ISBN, counted as a false positive when the
+     * filter reports it as possibly present
+     *
+     * @param isbn13 the canonical ISBN-13 of the book which was not found, see Isbn
+     */
+    public void recordMiss(long isbn13) {
+        BloomFilter current = filter;
+        if (current != null
+                && !ReplicaRoutingDataSource.isPinnedToPrimary()
+                && current.mightContain(isbn13)) {
+            falsePositives.increment();
+        }
+    }
+
+    /**
+     * Add the saved ISBNs in the transaction saving them, so they are found by the rest of it and
+     * no lookup can miss them once it commits
+     *
+     * @param event the books which were saved and removed
+     */
+    @EventListener
+    public void onBookChange(BookChangeEvent event) {
+        event.getSavedBooks().forEach(book -> add(book.getIsbn()));
+    }
+
+    /**
+     * Add the saved ISBNs again once committed, in case the filter was replaced by a rebuild which
+     * started before the commit and read the change log before it
+     *
+     * @param event the books which were saved and removed
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookChangeCommitted(BookChangeEvent event) {
+        event.getSavedBooks().forEach(book -> add(book.getIsbn()));
+    }
+
+    /**
+     * Replace the filter with one built from the ISBNs of every book, sized for twice their number.
+     * Changes committed during the scan are read from the change log before the filter is swapped
+     * in, and books saved during the rebuild are added to both filters.
+     */
+    public synchronized void rebuild() {
+        long start = System.nanoTime();
+        BloomFilter rebuilt =
+                primary.execute(
+                        status -> {
+                            long isbns = bookRepository.count();
+                            long size = Math.max(minCapacity, 2 * isbns);
+                            BloomFilter next = new BloomFilter(size, falsePositiveRate);
+                            building = next;
+                            // the scan sees every change up to the last sequence read before it
+                            appliedSequence = bookChangeRepository.findLastSequence();
+                            bookRepository.forEachIsbn13(next::put);
+                            capacity = size;
+                            return next;
+                        });
+        applyChanges(rebuilt);
+        filter = rebuilt;
+        building = null;
+        log.info(
+                "Built the ISBN filter of {} books, {} bytes, in {} ms",
+                rebuilt.keyCount(),
+                rebuilt.sizeInBytes(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void add(String isbn) {
+        long key = Isbn.toIsbn13(isbn);
+        // read the filter being built first, so a rebuild swapping it in cannot lose the key
+        BloomFilter next = building;
+        if (next != null) {
+            next.put(key);
+        }
+        BloomFilter current = filter;
+        if (current != null) {
+            current.put(key);
+        }
+    }
+
+    private void run() {
+        long nextRebuild = System.nanoTime() + rebuildInterval.toNanos();
+        try {
+            while (!stopped.await(pollInterval.toMillis(), TimeUnit.MILLISECONDS)) {
+                try {
+                    if (System.nanoTime() - nextRebuild >= 0 || filter.keyCount() > capacity) {
+                        rebuild();
+                        nextRebuild = System.nanoTime() + rebuildInterval.toNanos();
+                    } else {
+                        followChanges();
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("Failed to refresh the ISBN filter", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void followChanges() {
+        if (!applyChanges(filter)) {
+            log.info("Changes after sequence {} have been pruned, rebuilding", appliedSequence);
+            rebuild();
+        }
+    }
+
+    /**
+     * Add the ISBNs saved after the applied sequence, false if some changes have been pruned. Once
+     * the end of the change log is reached the filter holds every book committed before the read
+     * began.
+     */
+    private boolean applyChanges(BloomFilter target) {
+        long began = System.nanoTime();
+        List<BookChange> changes;
+        do {
+            changes =
+                    primary.execute(
+                            status ->
+                                    bookChangeRepository
+                                            .findBySequenceGreaterThanOrderBySequenceAsc(
+                                                    appliedSequence,
+                                                    PageRequest.of(0, CHANGE_BATCH_SIZE)));
+            if (changes.isEmpty()) {
+                caughtUpNanos = began;
+                return true;
+            }
+            // sequences are contiguous, so a gap means changes have been pruned
+            if (changes.get(0).getSequence() != appliedSequence + 1) {
+                return false;
+            }
+            for (BookChange change : changes) {
+                if (change.getType() == BookChange.Type.SAVED) {
+                    target.put(Isbn.toIsbn13(change.getIsbn()));
+                }
+            }
+            appliedSequence = changes.get(changes.size() - 1).getSequence();
+        } while (changes.size() == CHANGE_BATCH_SIZE);
+        caughtUpNanos = began;
+        return true;
+    }
+
+    private Counter checkCounter(String result) {
+        return Counter.builder(CHECKS_METRIC)
+                .description("ISBN lookups checked against the filter by result")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private void filterGauge(
+            String name, String description, String unit, ToDoubleFunction<BloomFilter> value) {
+        Gauge.builder(
+                        name,
+                        this,
+                        f -> {
+                            BloomFilter current = f.filter;
+                            return current == null ? 0 : value.applyAsDouble(current);
+                        })
+                .description(description)
+                .baseUnit(unit)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,78 @@
+package com.tassm.library.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.tassm.library.config.CacheConfig;
+import com.tassm.library.model.dto.BookDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/*
+ * Caches the books read by the lookups of BookService and ReactiveBookService in the book by ISBN
+ * cache. A read can complete after a concurrent change has committed and updated or evicted the
+ * cached book, and caching what it read would then put the book back as it was before the change
+ * for as long as the cache keeps it.
+ *
+ * So a book read is not cached when a change has been committed since the read began, and
+ * otherwise only replaces a cached book with a lower version, atomically. Writes put and evict
+ * books in the cache as before.
+ */
+@Component
+public class LoadedBookCache {
+
+    @Autowired CacheManager cacheManager;
+    @Autowired CatalogueChangeCounter catalogueChangeCounter;
+
+    /**
+     * Mark the start of a read, before its query
+     *
+     * @return long the count of committed changes to pass to put
+     */
+    public long beginRead() {
+        return catalogueChangeCounter.currentCount();
+    }
+
+    /**
+     * Cache a book which has been read, once the surrounding transaction if any has committed
+     *
+     * @param isbn13 the canonical ISBN-13 of the book, see Isbn
+     * @param book the book read
+     * @param readBegan the count returned by beginRead before the book was read
+     */
+    public void put(long isbn13, BookDTO book, long readBegan) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            putIfNewer(isbn13, book, readBegan);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        putIfNewer(isbn13, book, readBegan);
+                    }
+                });
+    }
+
+    @SuppressWarnings("unchecked")
+    private void putIfNewer(long isbn13, BookDTO book, long readBegan) {
+        if (catalogueChangeCounter.currentCount() != readBegan) {
+            return;
+        }
+        Cache<Object, Object> cache =
+                (Cache<Object, Object>)
+                        cacheManager.getCache(CacheConfig.BOOKS_BY_ISBN).getNativeCache();
+        cache.asMap()
+                .compute(isbn13, (key, cached) -> isNewer(book, (BookDTO) cached) ? book : cached);
+    }
+
+    private static boolean isNewer(BookDTO book, BookDTO cached) {
+        if (cached == null) {
+            return true;
+        }
+        return book.getVersion() != null
+                && cached.getVersion() != null
+                && book.getVersion() > cached.getVersion();
+    }
+}
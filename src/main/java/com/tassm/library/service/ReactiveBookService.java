@@ -0,0 +1,205 @@
+package com.tassm.library.service;
+
+import com.tassm.library.config.CacheConfig;
+import com.tassm.library.exception.ResourceNotFoundException;
+import com.tassm.library.model.Isbn;
+import com.tassm.library.model.dto.BookBatchDTO;
+import com.tassm.library.model.dto.BookDTO;
+import com.tassm.library.model.dto.BookPageDTO;
+import com.tassm.library.repository.BookFilter;
+import com.tassm.library.repository.ReactiveBookRepository;
+import com.tassm.library.repository.ReactiveBookRepository.ListedBook;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * The reads of BookService without blocking, for the reactive profile. Books are read with
+ * ReactiveBookRepository and share the book by ISBN cache and the IsbnFilter with BookService, so
+ * the books it writes at startup and those written by other instances are found in the same way.
+ *
+ * Concurrent identical reads are not coalesced as in BookService, a waiting request holds no
+ * thread and the R2DBC pool bounds the queries running at once.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveBookService {
+
+    @Autowired ReactiveBookRepository reactiveBookRepository;
+    @Autowired CacheManager cacheManager;
+    @Autowired IsbnFilter isbnFilter;
+    @Autowired LoadedBookCache loadedBookCache;
+
+    /**
+     * Find a page of books matching a filter, see BookService.findBooks
+     *
+     * @param filter the criteria the books must match
+     * @param cursor the cursor returned with the previous page, null for the first page
+     * @param limit the maximum number of books in the page
+     * @return Mono<BookPageDTO> the page of books and the cursor of the next page
+     */
+    public Mono<BookPageDTO> findBooks(BookFilter filter, String cursor, int limit) {
+        return Mono.defer(
+                () -> {
+                    BookCursor after = BookCursor.decode(cursor);
+                    return reactiveBookRepository
+                            .findPage(filter, after.getPublicationYear(), after.getId(), limit)
+                            .collectList()
+                            .map(books -> toPage(books, limit));
+                });
+    }
+
+    private static BookPageDTO toPage(List<ListedBook> books, int limit) {
+        List<BookDTO> dtos = new ArrayList<>(books.size());
+        books.forEach(b -> dtos.add(b.book()));
+        String nextCursor = null;
+        if (!books.isEmpty() && books.size() == limit) {
+            ListedBook last = books.get(books.size() - 1);
+            nextCursor = new BookCursor(last.book().getPublicationYear(), last.id()).encode();
+        }
+        return new BookPageDTO(dtos, nextCursor);
+    }
+
+    /**
+     * Stream every book matching a filter, in the same order as findBooks
+     *
+     * @param filter the criteria the books must match
+     * @return Flux<BookDTO> the books, emitted as they are read
+     */
+    public Flux<BookDTO> streamBooks(BookFilter filter) {
+        return reactiveBookRepository.findAll(filter);
+    }
+
+    /**
+     * Retrieve a book by its unique ISBN in any of its forms, failing with a
+     * ResourceNotFoundException if it does not exist, see BookService.findBookByIsbn
+     *
+     * @param isbn unique ISBN of the book
+     * @return Mono<BookDTO> the matching book
+     */
+    public Mono<BookDTO> findBookByIsbn(String isbn) {
+        return Mono.defer(
+                () -> {
+                    long isbn13 = Isbn.toIsbn13(isbn);
+                    Cache cache = cacheManager.getCache(CacheConfig.BOOKS_BY_ISBN);
+                    BookDTO cached = cache.get(isbn13, BookDTO.class);
+                    if (cached != null) {
+                        return Mono.just(cached);
+                    }
+                    if (isbn13 == Isbn.INVALID || !isbnFilter.mightExist(isbn13)) {
+                        return Mono.error(notFound(isbn));
+                    }
+                    long readBegan = loadedBookCache.beginRead();
+                    return reactiveBookRepository
+                            .findByIsbn13(isbn13)
+                            .doOnNext(book -> loadedBookCache.put(isbn13, book, readBegan))
+                            .switchIfEmpty(
+                                    Mono.error(
+                                            () -> {
+                                                isbnFilter.recordMiss(isbn13);
+                                                return notFound(isbn);
+                                            }));
+                });
+    }
+
+    /**
+     * Retrieve the current version of a book by its unique ISBN, failing with a
+     * ResourceNotFoundException if it does not exist, see BookService.findBookVersion
+     *
+     * @param isbn unique ISBN of the book
+     * @return Mono<Long> the version of the book
+     */
+    public Mono<Long> findBookVersion(String isbn) {
+        return Mono.defer(
+                () -> {
+                    long isbn13 = Isbn.toIsbn13(isbn);
+                    BookDTO cached =
+                            cacheManager
+                                    .getCache(CacheConfig.BOOKS_BY_ISBN)
+                                    .get(isbn13, BookDTO.class);
+                    if (cached != null && cached.getVersion() != null) {
+                        return Mono.just(cached.getVersion());
+                    }
+                    return reactiveBookRepository
+                            .findVersionByIsbn13(isbn13)
+                            .switchIfEmpty(Mono.error(() -> notFound(isbn)));
+                });
+    }
+
+    /**
+     * Retrieve many books by ISBN at once, see BookService.findBooksByIsbn. The books which are not
+     * cached are read BookService.BATCH_CHUNK_SIZE at a time, one query per chunk.
+     *
+     * @param isbns the ISBNs of the books
+     * @return Mono<BookBatchDTO> the books found, in the order of their ISBNs, and the ISBNs not
+     *     found
+     */
+    public Mono<BookBatchDTO> findBooksByIsbn(List<String> isbns) {
+        return Mono.defer(
+                () -> {
+                    Cache cache = cacheManager.getCache(CacheConfig.BOOKS_BY_ISBN);
+                    // the first form of each ISBN in the request, by canonical ISBN-13
+                    Map<Long, String> requested = new LinkedHashMap<>();
+                    Map<Long, BookDTO> found = new ConcurrentHashMap<>();
+                    List<Long> toLoad = new ArrayList<>();
+                    for (String isbn : isbns) {
+                        long isbn13 = Isbn.toIsbn13(isbn);
+                        if (isbn13 == Isbn.INVALID || requested.putIfAbsent(isbn13, isbn) != null) {
+                            continue;
+                        }
+                        BookDTO cached = cache.get(isbn13, BookDTO.class);
+                        if (cached != null) {
+                            found.put(isbn13, cached);
+                        } else if (isbnFilter.mightExist(isbn13)) {
+                            toLoad.add(isbn13);
+                        }
+                    }
+                    long readBegan = loadedBookCache.beginRead();
+                    return Flux.fromIterable(toLoad)
+                            .buffer(BookService.BATCH_CHUNK_SIZE)
+                            .concatMap(reactiveBookRepository::findAllByIsbn13)
+                            .doOnNext(
+                                    book -> {
+                                        long isbn13 = Isbn.toIsbn13(book.getIsbn());
+                                        found.put(isbn13, book);
+                                        loadedBookCache.put(isbn13, book, readBegan);
+                                    })
+                            .then(Mono.fromCallable(() -> toBatch(requested, toLoad, found)));
+                });
+    }
+
+    private BookBatchDTO toBatch(
+            Map<Long, String> requested, List<Long> loaded, Map<Long, BookDTO> found) {
+        loaded.forEach(
+                isbn13 -> {
+                    if (!found.containsKey(isbn13)) {
+                        isbnFilter.recordMiss(isbn13);
+                    }
+                });
+        List<BookDTO> books = new ArrayList<>(found.size());
+        List<String> missingIsbns = new ArrayList<>();
+        requested.forEach(
+                (isbn13, isbn) -> {
+                    BookDTO book = found.get(isbn13);
+                    if (book == null) {
+                        missingIsbns.add(isbn);
+                    } else {
+                        books.add(book);
+                    }
+                });
+        return new BookBatchDTO(books, missingIsbns);
+    }
+
+    private static ResourceNotFoundException notFound(String isbn) {
+        return new ResourceNotFoundException("Book with ISBN " + isbn + " was not found");
+    }
+}
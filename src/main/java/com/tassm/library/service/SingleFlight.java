@@ -0,0 +1,113 @@
+package com.tassm.library.service;
+
+import com.tassm.library.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/*
+ * Coalesces concurrent loads of the same key, so a burst of identical requests for a popular book
+ * costs a single query. The first caller runs the load on its own thread, and callers arriving
+ * while it is in flight wait for its result, or its exception, instead of loading it again. They
+ * wait for at most the maximum wait and then fail with a ServiceUnavailableException rather than
+ * piling more load onto a database which is already slow.
+ *
+ * A load is only shared while it is in flight, its result is not kept, so caching is left to the
+ * caller. A caller which must see a change committed after a load started should use a key which
+ * differs from that of the load.
+ */
+public class SingleFlight<K, V> {
+
+    static final String LOADS_METRIC = "library.single.flight.loads";
+    static final String TIMEOUTS_METRIC = "library.single.flight.timeouts";
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Duration maxWait;
+    private final Counter executed;
+    private final Counter coalesced;
+    private final Counter timeouts;
+
+    /**
+     * @param name the name of the loads, tagged on the metrics
+     * @param maxWait how long a caller waits for a load in flight
+     * @param meterRegistry the registry to record the loads in
+     */
+    public SingleFlight(String name, Duration maxWait, MeterRegistry meterRegistry) {
+        this.maxWait = maxWait;
+        executed = loadCounter(name, "executed", meterRegistry);
+        coalesced = loadCounter(name, "coalesced", meterRegistry);
+        timeouts =
+                Counter.builder(TIMEOUTS_METRIC)
+                        .description("Callers which gave up waiting for a load in flight")
+                        .tag("name", name)
+                        .register(meterRegistry);
+        Gauge.builder("library.single.flight.in.flight", inFlight, Map::size)
+                .description("Distinct keys being loaded")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Load the value of a key, sharing the load of the same key if one is in flight. Throws the
+     * exception of the load when it fails, and a ServiceUnavailableException when a shared load
+     * does not complete within the maximum wait.
+     *
+     * @param key the key of the load
+     * @param loader the load to run when none is in flight
+     * @return V the loaded value
+     */
+    public V load(K key, Supplier<V> loader) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> leader = inFlight.putIfAbsent(key, flight);
+        if (leader != null) {
+            coalesced.increment();
+            return await(leader);
+        }
+        executed.increment();
+        try {
+            V value = loader.get();
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private V await(CompletableFuture<V> flight) {
+        try {
+            return flight.get(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw (RuntimeException) e.getCause();
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            throw new ServiceUnavailableException(
+                    "Timed out waiting for an identical request - try again later");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException(
+                    "Interrupted waiting for an identical request", e);
+        }
+    }
+
+    private static Counter loadCounter(String name, String outcome, MeterRegistry meterRegistry) {
+        return Counter.builder(LOADS_METRIC)
+                .description("Loads executed, and loads coalesced into one in flight")
+                .tag("name", name)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,211 @@
+package com.tassm.library.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tassm.library.exception.ServiceUnavailableException;
+import com.tassm.library.model.dto.BookDTO;
+import com.tassm.library.model.dto.CreateBookDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+/*
+ * Optional write-behind mode for creating and updating books. Writes are queued in a bounded
+ * in-memory queue and a single writer thread applies them in batches, each batch in one
+ * transaction, so throughput is no longer bounded by one commit per request. A batch is written
+ * once it is full or the oldest write has waited for the maximum delay.
+ *
+ * When the queue is full submitting a write waits briefly and then fails with a
+ * ServiceUnavailableException, so clients back off instead of the queue growing without limit.
+ * Queued writes are lost if the application stops abnormally, they are only durable once completed.
+ */
+@Service
+@ConditionalOnProperty(name = "library.write-behind.enabled", havingValue = "true")
+public class WriteBehindService {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindService.class);
+
+    private static final long POLL_INTERVAL_MS = 100;
+    private static final int MAX_RETAINED_STATUSES = 100000;
+
+    @Autowired BookService bookService;
+    @Autowired MeterRegistry meterRegistry;
+
+    @Value("${library.write-behind.queue-capacity}")
+    int queueCapacity;
+
+    @Value("${library.write-behind.max-batch-size}")
+    int maxBatchSize;
+
+    @Value("${library.write-behind.max-batch-delay}")
+    Duration maxBatchDelay;
+
+    @Value("${library.write-behind.enqueue-timeout}")
+    Duration enqueueTimeout;
+
+    @Value("${library.write-behind.status-retention}")
+    Duration statusRetention;
+
+    private BlockingQueue<BookWrite> queue;
+    private Cache<String, BookWrite> writesById;
+    private Thread writer;
+    private volatile boolean running;
+    private Counter rejected;
+    private DistributionSummary batchSizes;
+
+    @PostConstruct
+    void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        writesById =
+                Caffeine.newBuilder()
+                        .maximumSize(MAX_RETAINED_STATUSES)
+                        .expireAfterWrite(statusRetention)
+                        .build();
+        Gauge.builder("library.write.queue.size", queue, BlockingQueue::size)
+                .description("Writes waiting to be applied")
+                .register(meterRegistry);
+        rejected =
+                Counter.builder("library.write.rejected")
+                        .description("Writes rejected because the queue was full")
+                        .register(meterRegistry);
+        batchSizes =
+                DistributionSummary.builder("library.write.batch.size")
+                        .description("Writes applied per transaction")
+                        .register(meterRegistry);
+        running = true;
+        writer = new Thread(this::run, "book-write-behind");
+        writer.start();
+    }
+
+    /** Stop accepting writes and wait for the queued writes to be applied */
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        writer.join();
+    }
+
+    /**
+     * Queue the creation of a book
+     *
+     * @param dto the DTO representing the new book
+     * @return BookWrite the queued write
+     */
+    public BookWrite submitCreate(CreateBookDTO dto) {
+        return submit(BookWrite.create(dto));
+    }
+
+    /**
+     * Queue the update of a book
+     *
+     * @param isbn unique ISBN of the book to update
+     * @param dto DTO including any fields which are to be updated
+     * @return BookWrite the queued write
+     */
+    public BookWrite submitUpdate(String isbn, BookDTO dto) {
+        return submit(BookWrite.update(isbn, dto));
+    }
+
+    /**
+     * Find a write submitted within the status retention period
+     *
+     * @param id the id of the write
+     * @return Optional<BookWrite> the write, empty if unknown or expired
+     */
+    public Optional<BookWrite> find(String id) {
+        return Optional.ofNullable(writesById.getIfPresent(id));
+    }
+
+    private BookWrite submit(BookWrite write) {
+        if (!running) {
+            throw new ServiceUnavailableException("The application is shutting down");
+        }
+        writesById.put(write.getId(), write);
+        boolean queued;
+        try {
+            queued = queue.offer(write, enqueueTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (!queued) {
+            writesById.invalidate(write.getId());
+            rejected.increment();
+            throw new ServiceUnavailableException("Too many pending writes - try again later");
+        }
+        return write;
+    }
+
+    private void run() {
+        List<BookWrite> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                BookWrite first = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxBatchDelay.toNanos();
+                while (batch.size() < maxBatchSize) {
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    BookWrite next =
+                            remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                log.warn("Write-behind writer interrupted, {} writes not applied", queue.size());
+                return;
+            } catch (RuntimeException e) {
+                log.error("Write-behind writer failed to complete a batch", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<BookWrite> batch) {
+        batchSizes.record(batch.size());
+        try {
+            bookService.applyWrites(batch);
+        } catch (RuntimeException e) {
+            // a failure of the whole batch, such as a constraint violation, is isolated by
+            // applying each write in its own transaction
+            log.warn("Batch of {} writes failed, applying them one at a time", batch.size(), e);
+            batch.forEach(this::writeOne);
+        }
+        batch.forEach(BookWrite::complete);
+    }
+
+    private void writeOne(BookWrite write) {
+        try {
+            write.succeeded(
+                    write.isCreate()
+                            ? bookService.saveBookAndAuthors(write.getCreate())
+                            : bookService.updateBookAndAuthors(write.getIsbn(), write.getUpdate()));
+        } catch (RuntimeException e) {
+            write.failed(e);
+        }
+    }
+}
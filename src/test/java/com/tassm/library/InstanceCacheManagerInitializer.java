@@ -0,0 +1,37 @@
+package com.tassm.library;
+
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.cache.Caching;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/*
+ * Gives the second level cache of every application context started by the tests a JCache manager
+ * of its own, as each instance of the application has in its own JVM. The default manager is
+ * shared by the JVM, so the contexts would otherwise share their regions, and the books another
+ * context changes would be evicted from every context. Registered in META-INF/spring.factories.
+ */
+public class InstanceCacheManagerInitializer
+        implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    @Override
+    public void initialize(ConfigurableApplicationContext context) {
+        URI uri = URI.create("urn:library:instance:" + instances.incrementAndGet());
+        HibernatePropertiesCustomizer customizer =
+                properties ->
+                        properties.put(
+                                ConfigSettings.CACHE_MANAGER,
+                                Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                                        .getCacheManager(uri, getClass().getClassLoader()));
+        context.addBeanFactoryPostProcessor(
+                beanFactory ->
+                        beanFactory.registerSingleton(
+                                "instanceCacheManagerCustomizer", customizer));
+    }
+}
@@ -0,0 +1,60 @@
+package com.tassm.library.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import com.tassm.library.model.dto.CreateBookDTO;
+import com.tassm.library.repository.AuthorRepository;
+import com.tassm.library.repository.BookRepository;
+import com.tassm.library.service.BookService;
+import com.zaxxer.hikari.HikariDataSource;
+import java.util.Set;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+/*
+ * Integration test of the production profile against the in memory h2 database
+ */
+@SpringBootTest(
+        properties = {
+            "library.datasource.database-cores=2",
+            "library.datasource.max-connections=12",
+            "library.datasource.instances=4"
+        })
+@ActiveProfiles({"h2", "production"})
+public class ProductionConfigTests {
+
+    @Autowired HikariDataSource dataSource;
+
+    @Autowired BookService bookService;
+
+    @Autowired BookRepository bookRepository;
+
+    @Autowired AuthorRepository authorRepository;
+
+    @Test
+    @DisplayName("Test the pool size is bounded by the database cores and its share of connections")
+    public void testPoolSize() {
+        assertEquals(5, ConnectionPoolSizer.poolSize(2, 97, 1));
+        assertEquals(3, ConnectionPoolSizer.poolSize(2, 12, 4));
+        assertEquals(1, ConnectionPoolSizer.poolSize(8, 3, 4));
+        assertEquals(3, dataSource.getMaximumPoolSize());
+    }
+
+    @Test
+    @DisplayName("Test writes are committed with auto-commit disabled in the pool")
+    public void testWrites_committed() {
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+
+        bookService.saveBookAndAuthors(
+                new CreateBookDTO("978-3-16-148410-0", "Title", Set.of("Author"), 2000));
+
+        assertFalse(dataSource.isAutoCommit());
+        assertEquals(1, bookRepository.count());
+        assertEquals(1, authorRepository.count());
+    }
+}
@@ -0,0 +1,204 @@
+package com.tassm.library.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tassm.library.model.dto.BookDTO;
+import com.tassm.library.model.dto.CreateBookDTO;
+import com.tassm.library.repository.AuthorRepository;
+import com.tassm.library.repository.BookFilter;
+import com.tassm.library.repository.BookRepository;
+import com.tassm.library.service.BookChangeFeedService;
+import com.tassm.library.service.BookService;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.servlet.http.Cookie;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import javax.sql.DataSource;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+/*
+ * Integration test of the read replica routing against two in memory h2 databases. Replication is
+ * simulated by copying the primary to the replica, so a book saved afterwards is only visible
+ * when reading from the primary.
+ */
+@SpringBootTest(
+        properties = {
+            "library.replica.datasource.url=jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1",
+            "library.replica.lag-query=SELECT seconds FROM replica_lag",
+            "library.replica.lag-check-interval=1h",
+            "library.replica.sticky-window=0s"
+        })
+@AutoConfigureMockMvc
+@ActiveProfiles({"h2", "replica"})
+public class ReplicaRoutingTests {
+
+    @Autowired BookRepository bookRepository;
+
+    @Autowired AuthorRepository authorRepository;
+
+    @Autowired BookService bookService;
+
+    @Autowired BookChangeFeedService bookChangeFeedService;
+
+    @Autowired ReplicaStatus replicaStatus;
+
+    @Autowired MeterRegistry meterRegistry;
+
+    @Autowired MockMvc mockMvc;
+
+    @Autowired EntityManagerFactory entityManagerFactory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    @Qualifier("primaryDataSource")
+    DataSource primaryDataSource;
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    DataSource replicaDataSource;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        // the books cached by the previous tests, whose ids this h2 database reuses
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAllRegions();
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+        bookService.saveBookAndAuthors(
+                new CreateBookDTO("9780000000001", "Title 1", Set.of("Author 1"), 2000));
+        replicate();
+        replicaStatus.checkLag();
+    }
+
+    @AfterEach
+    public void teardown() {
+        replicaStatus.stickyWindow = Duration.ZERO;
+    }
+
+    @Test
+    @DisplayName("Test read-only transactions read from the replica and writes go to the primary")
+    public void testReads_routedToReplica() {
+        double replicaReads = routedConnections(ReplicaRoutingDataSource.REPLICA);
+        bookService.saveBookAndAuthors(
+                new CreateBookDTO("9780000000002", "Title 2", Set.of("Author 2"), 2000));
+        bookService.updateBookAndAuthors("9780000000002", new BookDTO(null, "Title 3", null, null));
+
+        assertEquals(List.of("9780000000001"), findIsbns());
+        assertTrue(routedConnections(ReplicaRoutingDataSource.REPLICA) > replicaReads);
+    }
+
+    @Test
+    @DisplayName("Test reads go to the primary while the replica lag is too high or unknown")
+    public void testReads_lagGuard() {
+        bookService.saveBookAndAuthors(
+                new CreateBookDTO("9780000000002", "Title 2", Set.of("Author 2"), 2000));
+
+        new JdbcTemplate(replicaDataSource).update("UPDATE replica_lag SET seconds = 5");
+        replicaStatus.checkLag();
+        assertEquals(List.of("9780000000001", "9780000000002"), findIsbns());
+
+        new JdbcTemplate(replicaDataSource).execute("DROP TABLE replica_lag");
+        replicaStatus.checkLag();
+        assertEquals(List.of("9780000000001", "9780000000002"), findIsbns());
+    }
+
+    @Test
+    @DisplayName("Test reads go to the primary within the sticky window after a write")
+    public void testReads_readYourWrites() throws Exception {
+        bookService.saveBookAndAuthors(
+                new CreateBookDTO("9780000000002", "Title 2", Set.of("Author 2"), 2000));
+        this.mockMvc
+                .perform(get("/book"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(1));
+        // a client which wrote recently reads from the primary, once the page is no longer cached
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictQueryRegions();
+        Cookie pinned =
+                new Cookie(
+                        ReadYourWritesFilter.COOKIE_NAME,
+                        Long.toString(System.currentTimeMillis() + 60000));
+        this.mockMvc
+                .perform(get("/book").cookie(pinned))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(2));
+
+        // a write sets the cookie and pins the reads of this instance
+        replicaStatus.stickyWindow = Duration.ofMinutes(1);
+        this.mockMvc
+                .perform(
+                        post("/book")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(
+                                        objectMapper.writeValueAsString(
+                                                new CreateBookDTO(
+                                                        "978-3-16-148410-0",
+                                                        "Title 3",
+                                                        Set.of("Author 3"),
+                                                        2000))))
+                .andExpect(MockMvcResultMatchers.status().isCreated())
+                .andExpect(
+                        MockMvcResultMatchers.cookie()
+                                .maxAge(ReadYourWritesFilter.COOKIE_NAME, 60));
+        assertEquals(List.of("9780000000001", "9780000000002", "978-3-16-148410-0"), findIsbns());
+    }
+
+    @Test
+    @DisplayName("Test a change stream subscriber is not told to rescan while the replica lags")
+    public void testSubscribe_replicaLagging() {
+        long replicated = bookChangeFeedService.findChanges(null, 1).getLastSequence();
+        bookService.saveBookAndAuthors(
+                new CreateBookDTO("9780000000002", "Title 2", Set.of("Author 2"), 2000));
+
+        bookChangeFeedService.subscribe(replicated).complete();
+    }
+
+    private List<String> findIsbns() {
+        return bookService
+                .findBooks(new BookFilter(null, null, null, null), null, 100)
+                .getBooks()
+                .stream()
+                .map(BookDTO::getIsbn)
+                .toList();
+    }
+
+    private double routedConnections(String target) {
+        return meterRegistry
+                .get("library.datasource.connections.routed")
+                .tag("target", target)
+                .counter()
+                .count();
+    }
+
+    private void replicate() throws Exception {
+        Path script = Files.createTempFile("replica", ".sql");
+        try {
+            new JdbcTemplate(primaryDataSource).execute("SCRIPT DROP TO '" + script + "'");
+            JdbcTemplate replica = new JdbcTemplate(replicaDataSource);
+            replica.execute("DROP ALL OBJECTS");
+            replica.execute("RUNSCRIPT FROM '" + script + "'");
+            replica.execute("CREATE TABLE replica_lag (seconds double precision)");
+            replica.update("INSERT INTO replica_lag VALUES (0)");
+        } finally {
+            Files.delete(script);
+        }
+    }
+}
@@ -1,25 +1,50 @@
 package com.tassm.library.controller;
 
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tassm.library.exception.PreconditionFailedException;
+import com.tassm.library.exception.ResourceGoneException;
+import com.tassm.library.model.dto.BookBatchDTO;
+import com.tassm.library.model.dto.BookChangeDTO;
+import com.tassm.library.model.dto.BookChangePageDTO;
 import com.tassm.library.model.dto.BookDTO;
+import com.tassm.library.model.dto.BookPageDTO;
+import com.tassm.library.model.dto.BookSearchResultDTO;
+import com.tassm.library.model.dto.BookView;
 import com.tassm.library.model.dto.CreateBookDTO;
 import com.tassm.library.model.dto.ErrorDTO;
+import com.tassm.library.model.dto.ImportConflictDTO;
+import com.tassm.library.model.dto.ImportResultDTO;
 import com.tassm.library.model.mapping.BookMapper;
+import com.tassm.library.repository.BookFilter;
+import com.tassm.library.service.BookChangeFeedService;
+import com.tassm.library.service.BookExportService;
+import com.tassm.library.service.BookSearchService;
 import com.tassm.library.service.BookService;
+import com.tassm.library.service.CatalogueChangeCounter;
+import com.tassm.library.service.ExportFormat;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -28,14 +53,20 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.transaction.CannotCreateTransactionException;
 
-@WebMvcTest({BookController.class, BookMapper.class})
+@WebMvcTest({BookController.class, BookMapper.class, CatalogueChangeCounter.class})
 public class BookControllerTests {
 
     @Autowired MockMvc mockMvc;
     @Autowired BookMapper bookMapper;
+    @Autowired CatalogueChangeCounter catalogueChangeCounter;
     @MockBean BookService bookService;
+    @MockBean BookChangeFeedService bookChangeFeedService;
+    @MockBean BookExportService bookExportService;
+    @MockBean BookSearchService bookSearchService;
 
     private BookDTO bookDTO;
     private ObjectMapper objectMapper = new ObjectMapper();
@@ -120,9 +151,88 @@ public class BookControllerTests {
         missingMandatoryFieldTest(createBookDTO);
     }
 
+    @Test
+    @DisplayName("Import should succeed with 200 ok and report the result")
+    public void testImport_succeedsWith200() throws Exception {
+        var createBookDTO = bookMapper.bookDTOToCreateBookDTO(bookDTO);
+        var result =
+                new ImportResultDTO(
+                        1, List.of(new ImportConflictDTO(1, bookDTO.getIsbn(), "duplicate")));
+        when(bookService.importBooks(eq(List.of(createBookDTO, createBookDTO)))).thenReturn(result);
+        this.mockMvc
+                .perform(
+                        post("/book/import")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(
+                                        objectMapper.writeValueAsString(
+                                                List.of(createBookDTO, createBookDTO))))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(
+                        MockMvcResultMatchers.content()
+                                .string(objectMapper.writeValueAsString(result)));
+    }
+
+    @Test
+    @DisplayName("Import should fail with 400 when any record is invalid")
+    public void testImport_fails400_invalidRecord() throws Exception {
+        var createBookDTO = bookMapper.bookDTOToCreateBookDTO(bookDTO);
+        var invalidDTO = bookMapper.bookDTOToCreateBookDTO(bookDTO);
+        invalidDTO.setTitle(null);
+        this.mockMvc
+                .perform(
+                        post("/book/import")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(
+                                        objectMapper.writeValueAsString(
+                                                List.of(createBookDTO, invalidDTO))))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        verify(bookService, times(0)).importBooks(any());
+    }
+
     /*
      * GET TESTS
      */
+    @Test
+    @DisplayName("Batch get should succeed with 200 ok and list the missing ISBNs")
+    public void testGetBatch_succeedsWith200() throws Exception {
+        var isbns = List.of(bookDTO.getIsbn(), "978-0-306-40615-7");
+        var result = new BookBatchDTO(List.of(bookDTO), List.of("978-0-306-40615-7"));
+        when(bookService.findBooksByIsbn(eq(isbns))).thenReturn(result);
+        this.mockMvc
+                .perform(
+                        post("/book/batch")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(isbns)))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(
+                        MockMvcResultMatchers.content()
+                                .string(objectMapper.writeValueAsString(result)));
+    }
+
+    @Test
+    @DisplayName("Batch get should fail with 400 when an ISBN is invalid or there are too many")
+    public void testGetBatch_fails400() throws Exception {
+        this.mockMvc
+                .perform(
+                        post("/book/batch")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(
+                                        objectMapper.writeValueAsString(
+                                                List.of(bookDTO.getIsbn(), "not-an-isbn"))))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        this.mockMvc
+                .perform(
+                        post("/book/batch")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(
+                                        objectMapper.writeValueAsString(
+                                                Collections.nCopies(
+                                                        BookController.MAX_BATCH_SIZE + 1,
+                                                        bookDTO.getIsbn()))))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        verify(bookService, times(0)).findBooksByIsbn(any());
+    }
+
     @Test
     @DisplayName("Get one by ISBN should succeed with with 200 ok")
     public void testGet_succeedsWith200() throws Exception {
@@ -135,22 +245,160 @@ public class BookControllerTests {
                 .andExpect(MockMvcResultMatchers.content().string(bodyAsString));
     }
 
+    @Test
+    @DisplayName("Get one by ISBN should fail with 503 when no database connection is available")
+    public void testGet_noConnection_fails503() throws Exception {
+        String isbn = bookDTO.getIsbn();
+        when(bookService.findBookByIsbn(eq(isbn)))
+                .thenThrow(new CannotCreateTransactionException("Connection is not available"));
+        this.mockMvc
+                .perform(get("/book/" + isbn).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(MockMvcResultMatchers.status().isServiceUnavailable());
+    }
+
+    @Test
+    @DisplayName("Get one by ISBN should return the version as the ETag and 304 when it matches")
+    public void testGet_ifNoneMatch_notModifiedWith304() throws Exception {
+        String isbn = bookDTO.getIsbn();
+        bookDTO.setVersion(3L);
+        when(bookService.findBookByIsbn(eq(isbn))).thenReturn(bookDTO);
+        when(bookService.findBookVersion(eq(isbn))).thenReturn(3L);
+        this.mockMvc
+                .perform(get("/book/" + isbn))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string("ETag", "\"3\""));
+        this.mockMvc
+                .perform(get("/book/" + isbn).header("If-None-Match", "\"3\""))
+                .andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andExpect(MockMvcResultMatchers.header().string("ETag", "\"3\""))
+                .andExpect(MockMvcResultMatchers.content().string(""));
+        verify(bookService, times(1)).findBookByIsbn(isbn);
+        this.mockMvc
+                .perform(get("/book/" + isbn).header("If-None-Match", "\"2\""))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(
+                        MockMvcResultMatchers.content()
+                                .string(objectMapper.writeValueAsString(bookDTO)));
+    }
+
     @Test
     @DisplayName("Get many books should succeed with with 200 ok")
     public void testGetMany_succeedsWith200() throws Exception {
-        when(bookService.findBooks(eq(null), eq(null), eq(null))).thenReturn(List.of(bookDTO));
+        when(bookService.findBooks(eq(BookFilter.NONE), eq(null), eq(100)))
+                .thenReturn(new BookPageDTO(List.of(bookDTO), null));
         String bodyAsString = objectMapper.writeValueAsString(List.of(bookDTO));
         this.mockMvc
                 .perform(get("/book").contentType(MediaType.APPLICATION_JSON))
                 .andExpect(MockMvcResultMatchers.status().isOk())
                 .andExpect(MockMvcResultMatchers.content().string(bodyAsString));
-        verify(bookService, times(1)).findBooks(eq(null), eq(null), eq(null));
+        verify(bookService, times(1)).findBooks(eq(BookFilter.NONE), eq(null), eq(100));
+    }
+
+    @Test
+    @DisplayName("Get many books should return 304 until the catalogue changes")
+    public void testGetMany_ifNoneMatch_notModifiedWith304() throws Exception {
+        when(bookService.findBooks(eq(BookFilter.NONE), eq(null), eq(100)))
+                .thenReturn(new BookPageDTO(List.of(bookDTO), null));
+        String etag =
+                this.mockMvc
+                        .perform(get("/book"))
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andExpect(
+                                MockMvcResultMatchers.header().string("Cache-Control", "no-cache"))
+                        .andReturn()
+                        .getResponse()
+                        .getHeader("ETag");
+        assertTrue(etag.startsWith("W/"));
+        this.mockMvc
+                .perform(get("/book").header("If-None-Match", etag))
+                .andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andExpect(MockMvcResultMatchers.content().string(""));
+        verify(bookService, times(1)).findBooks(eq(BookFilter.NONE), eq(null), eq(100));
+
+        catalogueChangeCounter.advanceTo(catalogueChangeCounter.currentCount() + 1);
+        this.mockMvc
+                .perform(get("/book").header("If-None-Match", etag))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        verify(bookService, times(2)).findBooks(eq(BookFilter.NONE), eq(null), eq(100));
+    }
+
+    @Test
+    @DisplayName("Get many books should return the next cursor when there are more pages")
+    public void testGetMany_nextCursor_succeedsWith200() throws Exception {
+        when(bookService.findBooks(eq(new BookFilter(null, 1972, 1979, null)), eq("abc"), eq(1)))
+                .thenReturn(new BookPageDTO(List.of(bookDTO), "def"));
+        this.mockMvc
+                .perform(
+                        get("/book")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .queryParam("rangeStart", "1972")
+                                .queryParam("rangeEnd", "1979")
+                                .queryParam("cursor", "abc")
+                                .queryParam("limit", "1"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string("X-Next-Cursor", "def"))
+                .andExpect(
+                        MockMvcResultMatchers.header()
+                                .string(
+                                        "Link",
+                                        "<http://localhost/book?rangeStart=1972&rangeEnd=1979"
+                                                + "&limit=1&cursor=def>; rel=\"next\""));
+    }
+
+    @Test
+    @DisplayName("Get many books should fail with 400 when the page size is above the cap")
+    public void testGetMany_limitTooLarge_fails400() throws Exception {
+        this.mockMvc
+                .perform(
+                        get("/book")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .queryParam("authorName", "authorA")
+                                .queryParam("limit", "1001"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Stream many books should succeed with one JSON document per line")
+    public void testStreamMany_succeedsWith200() throws Exception {
+        doAnswer(
+                        invocation -> {
+                            Consumer<BookView> consumer = invocation.getArgument(1);
+                            BookView view =
+                                    new BookView(
+                                            bookDTO.getIsbn(),
+                                            bookDTO.getTitle(),
+                                            List.copyOf(bookDTO.getAuthorNames()),
+                                            bookDTO.getPublicationYear());
+                            consumer.accept(view);
+                            consumer.accept(view);
+                            return null;
+                        })
+                .when(bookService)
+                .streamBooks(eq(new BookFilter("authorA", null, null, null)), any());
+        // a view is written as the same JSON as the DTO
+        String line = objectMapper.writeValueAsString(bookDTO) + "\n";
+        MvcResult result =
+                this.mockMvc
+                        .perform(
+                                get("/book")
+                                        .queryParam("authorName", "authorA")
+                                        .queryParam("stream", "true"))
+                        .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                        .andReturn();
+        this.mockMvc
+                .perform(asyncDispatch(result))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType("application/x-ndjson"))
+                .andExpect(MockMvcResultMatchers.content().string(line + line));
     }
 
     @Test
     @DisplayName("Get many books filtered on authorName should succeed with with 200 ok")
     public void testGetMany_filterAuthors_succeedsWith200() throws Exception {
         String dummyAuthor = "authorA";
+        when(bookService.findBooks(
+                        eq(new BookFilter(dummyAuthor, null, null, null)), eq(null), eq(100)))
+                .thenReturn(new BookPageDTO(List.of(), null));
         this.mockMvc
                 .perform(
                         get("/book")
@@ -158,12 +406,15 @@ public class BookControllerTests {
                                 .queryParam("authorName", dummyAuthor))
                 .andExpect(MockMvcResultMatchers.status().isOk())
                 .andExpect(MockMvcResultMatchers.content().string("[]"));
-        verify(bookService, times(1)).findBooks(eq(dummyAuthor), eq(null), eq(null));
+        verify(bookService, times(1))
+                .findBooks(eq(new BookFilter(dummyAuthor, null, null, null)), eq(null), eq(100));
     }
 
     @Test
     @DisplayName("Get many books filtered on min and max pubYear should succeed with with 200 ok")
     public void testGetMany_filterYears_succeedsWith200() throws Exception {
+        when(bookService.findBooks(new BookFilter(null, 1972, 1979, null), null, 100))
+                .thenReturn(new BookPageDTO(List.of(), null));
         this.mockMvc
                 .perform(
                         get("/book")
@@ -172,7 +423,82 @@ public class BookControllerTests {
                                 .queryParam("rangeEnd", "1979"))
                 .andExpect(MockMvcResultMatchers.status().isOk())
                 .andExpect(MockMvcResultMatchers.content().string("[]"));
-        verify(bookService, times(1)).findBooks(null, 1972, 1979);
+        verify(bookService, times(1)).findBooks(new BookFilter(null, 1972, 1979, null), null, 100);
+    }
+
+    @Test
+    @DisplayName("Get many books filtered on author, pubYear and title should succeed with 200 ok")
+    public void testGetMany_combinedFilters_succeedsWith200() throws Exception {
+        BookFilter filter = new BookFilter("authorA", 1972, 1979, "The");
+        when(bookService.findBooks(eq(filter), eq(null), eq(100)))
+                .thenReturn(new BookPageDTO(List.of(bookDTO), null));
+        this.mockMvc
+                .perform(
+                        get("/book")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .queryParam("authorName", "authorA")
+                                .queryParam("rangeStart", "1972")
+                                .queryParam("rangeEnd", "1979")
+                                .queryParam("titlePrefix", "The"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        verify(bookService, times(1)).findBooks(eq(filter), eq(null), eq(100));
+    }
+
+    @Test
+    @DisplayName("Search should succeed with the page of matching books")
+    public void testSearch_succeedsWith200() throws Exception {
+        BookSearchResultDTO found = new BookSearchResultDTO(List.of(bookDTO), 21);
+        when(bookSearchService.search(eq("some bo"), eq(1), eq(20))).thenReturn(found);
+        this.mockMvc
+                .perform(get("/book/search").queryParam("q", "some bo").queryParam("page", "1"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(
+                        MockMvcResultMatchers.content()
+                                .string(objectMapper.writeValueAsString(found)));
+    }
+
+    @Test
+    @DisplayName("Search should fail with 400 when the query is blank")
+    public void testSearch_fails400_blankQuery() throws Exception {
+        this.mockMvc
+                .perform(get("/book/search").queryParam("q", " "))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Export should succeed with the books streamed as a CSV attachment")
+    public void testExport_csv_succeedsWith200() throws Exception {
+        doAnswer(
+                        invocation -> {
+                            OutputStream out = invocation.getArgument(1);
+                            out.write("isbn,title\r\n".getBytes(StandardCharsets.UTF_8));
+                            return null;
+                        })
+                .when(bookExportService)
+                .exportBooks(eq(ExportFormat.CSV), any());
+        MvcResult result =
+                this.mockMvc
+                        .perform(get("/book/export").queryParam("format", "csv"))
+                        .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                        .andReturn();
+        this.mockMvc
+                .perform(asyncDispatch(result))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType("text/csv"))
+                .andExpect(
+                        MockMvcResultMatchers.header()
+                                .string(
+                                        "Content-Disposition",
+                                        "attachment; filename=\"books.csv\""))
+                .andExpect(MockMvcResultMatchers.content().string("isbn,title\r\n"));
+    }
+
+    @Test
+    @DisplayName("Export should fail with 400 for an unknown format")
+    public void testExport_fails400_unknownFormat() throws Exception {
+        this.mockMvc
+                .perform(get("/book/export").queryParam("format", "xml"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
     }
 
     /*
@@ -194,6 +520,78 @@ public class BookControllerTests {
         verify(bookService, times(1)).updateBookAndAuthors(isbn, bookDTO);
     }
 
+    @Test
+    @DisplayName("Update book by ISBN should pass the version in If-Match to the service")
+    public void testUpdate_ifMatch_succeedsWith200() throws Exception {
+        String isbn = bookDTO.getIsbn();
+        BookDTO updated = new BookDTO(isbn, "new title", Set.of("Gordon Ramsey"), 2009);
+        updated.setVersion(4L);
+        when(bookService.updateBookAndAuthors(eq(isbn), argThat(dto -> dto.getVersion() == 3L)))
+                .thenReturn(updated);
+        this.mockMvc
+                .perform(
+                        patch("/book/" + isbn)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .header("If-Match", "\"3\"")
+                                .content("{\"title\":\"new title\"}"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string("ETag", "\"4\""));
+    }
+
+    @Test
+    @DisplayName("Update book by ISBN should fail with 412 when If-Match does not match")
+    public void testUpdate_ifMatch_fails412() throws Exception {
+        String isbn = bookDTO.getIsbn();
+        when(bookService.updateBookAndAuthors(eq(isbn), any()))
+                .thenThrow(new PreconditionFailedException("The book has been modified"));
+        this.mockMvc
+                .perform(
+                        patch("/book/" + isbn)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .header("If-Match", "\"3\"")
+                                .content(objectMapper.writeValueAsString(bookDTO)))
+                .andExpect(MockMvcResultMatchers.status().isPreconditionFailed());
+        // a weak ETag never matches so the update is not attempted
+        this.mockMvc
+                .perform(
+                        patch("/book/" + isbn)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .header("If-Match", "W/\"3\"")
+                                .content(objectMapper.writeValueAsString(bookDTO)))
+                .andExpect(MockMvcResultMatchers.status().isPreconditionFailed());
+        verify(bookService, times(1)).updateBookAndAuthors(eq(isbn), any());
+        verify(bookService, never()).findBookVersion(any());
+    }
+
+    /*
+     * CHANGE FEED TESTS
+     */
+    @Test
+    @DisplayName("Get changes should succeed with 200, or fail with 410 when they have been pruned")
+    public void testGetChanges() throws Exception {
+        BookChangePageDTO page =
+                new BookChangePageDTO(
+                        List.of(new BookChangeDTO(8, "REMOVED", bookDTO.getIsbn(), null, null)), 8);
+        when(bookChangeFeedService.findChanges(7L, 100)).thenReturn(page);
+        this.mockMvc
+                .perform(get("/book/changes").param("since", "7"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(
+                        MockMvcResultMatchers.content()
+                                .string(objectMapper.writeValueAsString(page)));
+
+        when(bookChangeFeedService.findChanges(1L, 100))
+                .thenThrow(new ResourceGoneException("pruned"));
+        this.mockMvc
+                .perform(get("/book/changes").param("since", "1"))
+                .andExpect(MockMvcResultMatchers.status().isGone())
+                .andExpect(
+                        MockMvcResultMatchers.content()
+                                .string(
+                                        objectMapper.writeValueAsString(
+                                                new ErrorDTO(410, "pruned"))));
+    }
+
     /*
      * DELETE TESTS
      */
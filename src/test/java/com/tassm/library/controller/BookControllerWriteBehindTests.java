@@ -0,0 +1,153 @@
+package com.tassm.library.controller;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tassm.library.exception.ServiceUnavailableException;
+import com.tassm.library.model.dto.BookDTO;
+import com.tassm.library.model.dto.CreateBookDTO;
+import com.tassm.library.model.dto.WriteStatusDTO;
+import com.tassm.library.model.mapping.BookMapper;
+import com.tassm.library.service.BookChangeFeedService;
+import com.tassm.library.service.BookExportService;
+import com.tassm.library.service.BookSearchService;
+import com.tassm.library.service.BookService;
+import com.tassm.library.service.BookWrite;
+import com.tassm.library.service.CatalogueChangeCounter;
+import com.tassm.library.service.WriteBehindService;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+/*
+ * Tests of the create and update handlers in write-behind mode, where the writes are queued
+ */
+@WebMvcTest({BookController.class, BookMapper.class, CatalogueChangeCounter.class})
+public class BookControllerWriteBehindTests {
+
+    @Autowired MockMvc mockMvc;
+    @MockBean BookService bookService;
+    @MockBean BookChangeFeedService bookChangeFeedService;
+    @MockBean BookExportService bookExportService;
+    @MockBean BookSearchService bookSearchService;
+    @MockBean WriteBehindService writeBehindService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private BookDTO bookDTO;
+    private BookWrite write;
+    private WriteStatusDTO pending;
+
+    @BeforeEach
+    public void setup() {
+        bookDTO = new BookDTO("978-3-16-148410-0", "some book", Set.of("Gordon Ramsey"), 2009);
+        write = mock(BookWrite.class);
+        pending = new WriteStatusDTO("write-1", "PENDING", null, null);
+        when(write.getId()).thenReturn("write-1");
+        when(write.toStatusDTO()).thenReturn(pending);
+    }
+
+    @Test
+    @DisplayName("Create should be accepted with 202 and the status of the queued write")
+    public void testCreate_acceptedWith202() throws Exception {
+        when(writeBehindService.submitCreate(any())).thenReturn(write);
+        when(write.await(Duration.ZERO)).thenReturn(Optional.empty());
+        this.mockMvc
+                .perform(
+                        post("/book")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(createBookDTO())))
+                .andExpect(MockMvcResultMatchers.status().isAccepted())
+                .andExpect(
+                        MockMvcResultMatchers.header().string("Location", "/book/writes/write-1"))
+                .andExpect(
+                        MockMvcResultMatchers.content()
+                                .string(objectMapper.writeValueAsString(pending)));
+    }
+
+    @Test
+    @DisplayName(
+            "Create should succeed with 201 when the write completes within the preferred wait")
+    public void testCreate_preferWait_succeedsWith201() throws Exception {
+        when(writeBehindService.submitCreate(any())).thenReturn(write);
+        when(write.await(Duration.ofSeconds(2))).thenReturn(Optional.of(bookDTO));
+        this.mockMvc
+                .perform(
+                        post("/book")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .header("Prefer", "respond-async, wait=2")
+                                .content(objectMapper.writeValueAsString(createBookDTO())))
+                .andExpect(MockMvcResultMatchers.status().isCreated())
+                .andExpect(
+                        MockMvcResultMatchers.content()
+                                .string(objectMapper.writeValueAsString(bookDTO)));
+    }
+
+    @Test
+    @DisplayName("Create should fail with 503 when the write queue is full")
+    public void testCreate_queueFull_fails503() throws Exception {
+        when(writeBehindService.submitCreate(any()))
+                .thenThrow(new ServiceUnavailableException("Too many pending writes"));
+        this.mockMvc
+                .perform(
+                        post("/book")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(createBookDTO())))
+                .andExpect(MockMvcResultMatchers.status().isServiceUnavailable())
+                .andExpect(MockMvcResultMatchers.header().string("Retry-After", "1"));
+    }
+
+    @Test
+    @DisplayName("Update should wait no longer than the configured maximum")
+    public void testUpdate_preferWait_cappedToMaximum() throws Exception {
+        when(writeBehindService.submitUpdate(eq(bookDTO.getIsbn()), any())).thenReturn(write);
+        when(write.await(any())).thenReturn(Optional.empty());
+        this.mockMvc
+                .perform(
+                        patch("/book/" + bookDTO.getIsbn())
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .header("Prefer", "wait=3600")
+                                .content(objectMapper.writeValueAsString(bookDTO)))
+                .andExpect(MockMvcResultMatchers.status().isAccepted());
+        verify(write).await(Duration.ofSeconds(5));
+    }
+
+    @Test
+    @DisplayName("Get write status should succeed with 200 or fail with 404 when unknown")
+    public void testGetWriteStatus() throws Exception {
+        when(writeBehindService.find("write-1")).thenReturn(Optional.of(write));
+        this.mockMvc
+                .perform(get("/book/writes/write-1"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(
+                        MockMvcResultMatchers.content()
+                                .string(objectMapper.writeValueAsString(pending)));
+        when(writeBehindService.find("write-2")).thenReturn(Optional.empty());
+        this.mockMvc
+                .perform(get("/book/writes/write-2"))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+    }
+
+    private CreateBookDTO createBookDTO() {
+        return new CreateBookDTO(
+                bookDTO.getIsbn(),
+                bookDTO.getTitle(),
+                bookDTO.getAuthorNames(),
+                bookDTO.getPublicationYear());
+    }
+}
@@ -0,0 +1,291 @@
+package com.tassm.library.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.tassm.library.config.CacheConfig;
+import com.tassm.library.model.dto.BookBatchDTO;
+import com.tassm.library.model.dto.BookDTO;
+import com.tassm.library.model.dto.CreateBookDTO;
+import com.tassm.library.model.dto.ErrorDTO;
+import com.tassm.library.model.entity.BookChange;
+import com.tassm.library.repository.AuthorRepository;
+import com.tassm.library.repository.BookChangeRepository;
+import com.tassm.library.repository.BookRepository;
+import com.tassm.library.service.BookService;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.EntityExchangeResult;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/*
+ * Integration test of the reactive profile serving the book reads with WebFlux and R2DBC from the
+ * in memory h2 database. The test chooses the type of application before reading the profile, so
+ * it is given the reactive type as well.
+ */
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.main.web-application-type=reactive")
+@ActiveProfiles({"h2", "reactive"})
+public class ReactiveBookControllerTests {
+
+    @Autowired WebTestClient webTestClient;
+
+    @Autowired BookService bookService;
+
+    @Autowired BookRepository bookRepository;
+
+    @Autowired AuthorRepository authorRepository;
+
+    @Autowired CacheManager cacheManager;
+
+    @Autowired BookChangeRepository bookChangeRepository;
+
+    @Autowired JdbcTemplate jdbcTemplate;
+
+    @Autowired PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    public void setup() {
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+        bookService.saveBookAndAuthors(
+                new CreateBookDTO("9780000000019", "First", Set.of("Ann", "Bob"), 2001));
+        bookService.saveBookAndAuthors(
+                new CreateBookDTO("9780000000026", "Second", Set.of("Ann"), 2002));
+        bookService.saveBookAndAuthors(
+                new CreateBookDTO("9780000000033", "Third", Set.of("Cat"), 2003));
+        // read the books from the database rather than the cache
+        cacheManager.getCache(CacheConfig.BOOKS_BY_ISBN).clear();
+    }
+
+    @Test
+    @DisplayName("Test a book is found by ISBN with its ETag, and 304 when it matches")
+    public void testGetByIsbn() {
+        EntityExchangeResult<BookDTO> result =
+                webTestClient
+                        .get()
+                        .uri("/book/978-0-00-000001-9")
+                        .exchange()
+                        .expectStatus()
+                        .isOk()
+                        .expectBody(BookDTO.class)
+                        .returnResult();
+        BookDTO book = result.getResponseBody();
+        assertEquals("9780000000019", book.getIsbn());
+        assertEquals(Set.of("Ann", "Bob"), book.getAuthorNames());
+        String etag = result.getResponseHeaders().getETag();
+        assertNotNull(etag);
+
+        webTestClient
+                .get()
+                .uri("/book/9780000000019")
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .exchange()
+                .expectStatus()
+                .isNotModified();
+    }
+
+    @Test
+    @DisplayName("Test the ETags and cached books follow a change made by another instance")
+    public void testChangeByAnotherInstance() throws Exception {
+        String listEtag =
+                webTestClient
+                        .get()
+                        .uri("/book")
+                        .exchange()
+                        .expectStatus()
+                        .isOk()
+                        .returnResult(String.class)
+                        .getResponseHeaders()
+                        .getETag();
+        String bookEtag =
+                webTestClient
+                        .get()
+                        .uri("/book/9780000000019")
+                        .exchange()
+                        .expectStatus()
+                        .isOk()
+                        .returnResult(String.class)
+                        .getResponseHeaders()
+                        .getETag();
+
+        // the book updated and the change appended by another instance, in one transaction
+        new TransactionTemplate(transactionManager)
+                .executeWithoutResult(
+                        status -> {
+                            jdbcTemplate.update(
+                                    "UPDATE book SET title = 'Renamed', version = version + 1"
+                                            + " WHERE isbn13 = 9780000000019");
+                            bookChangeRepository.append(
+                                    List.of(
+                                            new BookChange(
+                                                    null,
+                                                    BookChange.Type.SAVED,
+                                                    "9780000000019",
+                                                    null,
+                                                    Instant.now())));
+                        });
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (System.nanoTime() < deadline
+                && webTestClient
+                                .get()
+                                .uri("/book")
+                                .header(HttpHeaders.IF_NONE_MATCH, listEtag)
+                                .exchange()
+                                .returnResult(String.class)
+                                .getStatus()
+                        == HttpStatus.NOT_MODIFIED) {
+            Thread.sleep(50);
+        }
+        webTestClient
+                .get()
+                .uri("/book")
+                .header(HttpHeaders.IF_NONE_MATCH, listEtag)
+                .exchange()
+                .expectStatus()
+                .isOk();
+        webTestClient
+                .get()
+                .uri("/book/9780000000019")
+                .header(HttpHeaders.IF_NONE_MATCH, bookEtag)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(BookDTO.class)
+                .value(book -> assertEquals("Renamed", book.getTitle()));
+    }
+
+    @Test
+    @DisplayName("Test a missing book is 404 and an invalid ISBN 400")
+    public void testGetByIsbn_fails() {
+        webTestClient
+                .get()
+                .uri("/book/9780306406157")
+                .exchange()
+                .expectStatus()
+                .isNotFound()
+                .expectBody(ErrorDTO.class)
+                .value(error -> assertEquals(404, error.getStatus()));
+        webTestClient.get().uri("/book/not-an-isbn").exchange().expectStatus().isBadRequest();
+    }
+
+    @Test
+    @DisplayName("Test the books are paged through in order with the cursor of each page")
+    public void testGetMany_paged() {
+        EntityExchangeResult<List<BookDTO>> first =
+                webTestClient
+                        .get()
+                        .uri("/book?limit=2")
+                        .exchange()
+                        .expectStatus()
+                        .isOk()
+                        .expectBodyList(BookDTO.class)
+                        .returnResult();
+        assertEquals(
+                List.of("9780000000019", "9780000000026"),
+                first.getResponseBody().stream().map(BookDTO::getIsbn).toList());
+        String cursor = first.getResponseHeaders().getFirst(BookController.NEXT_CURSOR_HEADER);
+        assertNotNull(cursor);
+
+        EntityExchangeResult<List<BookDTO>> second =
+                webTestClient
+                        .get()
+                        .uri("/book?limit=2&cursor=" + cursor)
+                        .exchange()
+                        .expectStatus()
+                        .isOk()
+                        .expectBodyList(BookDTO.class)
+                        .returnResult();
+        assertEquals(
+                List.of("9780000000033"),
+                second.getResponseBody().stream().map(BookDTO::getIsbn).toList());
+        assertNull(second.getResponseHeaders().getFirst(BookController.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    @DisplayName("Test the filters are applied together, and a half open range is 400")
+    public void testGetMany_filtered() {
+        webTestClient
+                .get()
+                .uri("/book?authorName=Ann&rangeStart=2002&rangeEnd=2010")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(BookDTO.class)
+                .value(
+                        books ->
+                                assertEquals(
+                                        List.of(
+                                                new BookDTO(
+                                                        "9780000000026",
+                                                        "Second",
+                                                        Set.of("Ann"),
+                                                        2002)),
+                                        books));
+        webTestClient
+                .get()
+                .uri("/book?titlePrefix=Fir")
+                .exchange()
+                .expectBodyList(BookDTO.class)
+                .hasSize(1);
+        webTestClient.get().uri("/book?rangeStart=2000").exchange().expectStatus().isBadRequest();
+    }
+
+    @Test
+    @DisplayName("Test every book is streamed as newline delimited JSON")
+    public void testStreamMany() {
+        List<BookDTO> books =
+                webTestClient
+                        .get()
+                        .uri("/book?stream=true&authorName=Ann")
+                        .accept(MediaType.APPLICATION_NDJSON)
+                        .exchange()
+                        .expectStatus()
+                        .isOk()
+                        .returnResult(BookDTO.class)
+                        .getResponseBody()
+                        .collectList()
+                        .block();
+        assertEquals(
+                List.of("9780000000019", "9780000000026"),
+                books.stream().map(BookDTO::getIsbn).toList());
+    }
+
+    @Test
+    @DisplayName("Test a batch returns the books found and the ISBNs not found")
+    public void testGetBatch() {
+        BookBatchDTO batch =
+                webTestClient
+                        .post()
+                        .uri("/book/batch")
+                        .bodyValue(List.of("9780000000033", "9780306406157", "978-0-00-000001-9"))
+                        .exchange()
+                        .expectStatus()
+                        .isOk()
+                        .expectBody(BookBatchDTO.class)
+                        .returnResult()
+                        .getResponseBody();
+        assertEquals(
+                List.of("9780000000033", "9780000000019"),
+                batch.getBooks().stream().map(BookDTO::getIsbn).toList());
+        assertEquals(List.of("9780306406157"), batch.getMissingIsbns());
+    }
+}
@@ -0,0 +1,65 @@
+package com.tassm.library.exception;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tassm.library.model.dto.ErrorDTO;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+/*
+ * Unit tests of the cheap error path: stackless expected exceptions, pre-encoded responses and
+ * the rate limit of the error log
+ */
+public class GlobalExceptionHandlerTests {
+
+    @Test
+    @DisplayName(
+            "Test expected exceptions are created without a stack trace unless wrapping a cause")
+    public void testExpectedExceptions_stackless() {
+        assertEquals(0, new ResourceNotFoundException("not found").getStackTrace().length);
+        assertEquals(0, new BadRequestException("bad").getStackTrace().length);
+        assertEquals(0, new ResourceConflictException("conflict").getStackTrace().length);
+        assertTrue(
+                new ResourceConflictException("conflict", new IllegalStateException())
+                                .getStackTrace()
+                                .length
+                        > 0);
+    }
+
+    @Test
+    @DisplayName("Test a pre-encoded error has the body of its ErrorDTO")
+    public void testPreEncodedError() throws Exception {
+        ResponseEntity<byte[]> response = GlobalExceptionHandler.INVALID_REQUEST.toResponse();
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(MediaType.APPLICATION_JSON, response.getHeaders().getContentType());
+        assertArrayEquals(
+                new ObjectMapper()
+                        .writeValueAsBytes(
+                                new ErrorDTO(400, "Invalid request body or parameter - try again")),
+                response.getBody());
+    }
+
+    @Test
+    @DisplayName("Test errors beyond the rate limit are counted and reported with the next one")
+    public void testErrorLogLimiter() throws Exception {
+        ErrorLogLimiter limiter = new ErrorLogLimiter(2);
+
+        assertEquals(0, limiter.tryAcquire(BadRequestException.class));
+        assertEquals(0, limiter.tryAcquire(BadRequestException.class));
+        assertEquals(-1, limiter.tryAcquire(BadRequestException.class));
+        assertEquals(-1, limiter.tryAcquire(BadRequestException.class));
+        // each kind has its own limit
+        assertEquals(0, limiter.tryAcquire(IllegalStateException.class));
+
+        Thread.sleep(1000);
+        assertEquals(2, limiter.tryAcquire(BadRequestException.class));
+        assertEquals(0, limiter.tryAcquire(BadRequestException.class));
+    }
+}
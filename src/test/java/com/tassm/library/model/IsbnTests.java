@@ -0,0 +1,41 @@
+package com.tassm.library.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Unit tests of the canonical form of ISBNs
+ */
+public class IsbnTests {
+
+    @Test
+    @DisplayName("Test the forms of an ISBN-13 have the same canonical value")
+    public void testToIsbn13_isbn13() {
+        assertEquals(9780306406157L, Isbn.toIsbn13("9780306406157"));
+        assertEquals(9780306406157L, Isbn.toIsbn13("978-0-306-40615-7"));
+        assertEquals(9780306406157L, Isbn.toIsbn13("978 0 306 40615 7"));
+    }
+
+    @Test
+    @DisplayName("Test an ISBN-10 is canonicalized to its ISBN-13")
+    public void testToIsbn13_isbn10() {
+        assertEquals(9780306406157L, Isbn.toIsbn13("0306406152"));
+        assertEquals(9780306406157L, Isbn.toIsbn13("0-306-40615-2"));
+        // the check digit of an ISBN-10 may be X
+        assertEquals(9780807057759L, Isbn.toIsbn13("080705775X"));
+        assertEquals(9780807057759L, Isbn.toIsbn13("0-8070-5775-x"));
+    }
+
+    @Test
+    @DisplayName("Test strings which are not ISBNs have the invalid canonical value")
+    public void testToIsbn13_invalid() {
+        assertEquals(Isbn.INVALID, Isbn.toIsbn13(""));
+        assertEquals(Isbn.INVALID, Isbn.toIsbn13("isbn-1"));
+        assertEquals(Isbn.INVALID, Isbn.toIsbn13("978030640615"));
+        assertEquals(Isbn.INVALID, Isbn.toIsbn13("97803064061570"));
+        assertEquals(Isbn.INVALID, Isbn.toIsbn13("03064X6152"));
+        assertEquals(Isbn.INVALID, Isbn.toIsbn13("978030640615X"));
+    }
+}
@@ -0,0 +1,54 @@
+package com.tassm.library.service;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Unit tests of the Bloom filter of ISBN keys
+ */
+public class BloomFilterTests {
+
+    private static final long FIRST_ISBN = 978_000_000_000L;
+    private static final int KEYS = 100_000;
+
+    @Test
+    @DisplayName("Test every key added is reported as possibly present")
+    public void testMightContain_noFalseNegatives() {
+        BloomFilter filter = new BloomFilter(KEYS, 0.01);
+        for (long key = FIRST_ISBN; key < FIRST_ISBN + KEYS; key++) {
+            filter.put(key);
+        }
+        // a key already added does not change the filter
+        assertFalse(filter.put(FIRST_ISBN));
+
+        for (long key = FIRST_ISBN; key < FIRST_ISBN + KEYS; key++) {
+            assertTrue(filter.mightContain(key));
+        }
+        // keys whose bits were all set by other keys are not counted
+        assertTrue(filter.keyCount() > KEYS * 0.99);
+    }
+
+    @Test
+    @DisplayName("Test the false positive rate stays close to the rate the filter is sized for")
+    public void testMightContain_falsePositiveRate() {
+        BloomFilter filter = new BloomFilter(KEYS, 0.01);
+        for (long key = FIRST_ISBN; key < FIRST_ISBN + KEYS; key++) {
+            filter.put(key);
+        }
+
+        int falsePositives = 0;
+        for (long key = FIRST_ISBN + KEYS; key < FIRST_ISBN + 2 * KEYS; key++) {
+            if (filter.mightContain(key)) {
+                falsePositives++;
+            }
+        }
+        double rate = (double) falsePositives / KEYS;
+        assertTrue(rate < 0.015, "false positive rate " + rate);
+        assertTrue(filter.expectedFalsePositiveRate() < 0.015);
+        // 9.6 bits per key at 1%
+        assertTrue(filter.sizeInBytes() < KEYS * 10 / 8 + 8);
+    }
+}
@@ -0,0 +1,263 @@
+package com.tassm.library.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import com.tassm.library.LibraryApplication;
+import com.tassm.library.exception.ResourceConflictException;
+import com.tassm.library.exception.ResourceGoneException;
+import com.tassm.library.model.dto.BookChangeDTO;
+import com.tassm.library.model.dto.BookChangePageDTO;
+import com.tassm.library.model.dto.BookDTO;
+import com.tassm.library.model.dto.CreateBookDTO;
+import com.tassm.library.model.entity.BookChange;
+import com.tassm.library.repository.AuthorRepository;
+import com.tassm.library.repository.BookChangeRepository;
+import com.tassm.library.repository.BookFilter;
+import com.tassm.library.repository.BookRepository;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/*
+ * Integration test of the change log written with the changes to the in memory h2 database
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+public class BookChangeFeedServiceTests {
+
+    @Autowired BookRepository bookRepository;
+
+    @Autowired AuthorRepository authorRepository;
+
+    @Autowired BookService bookService;
+
+    @Autowired BookChangeFeedService bookChangeFeedService;
+
+    @Autowired BookChangeRepository bookChangeRepository;
+
+    @Autowired CatalogueChangeCounter catalogueChangeCounter;
+
+    @Autowired PlatformTransactionManager transactionManager;
+
+    @Autowired MockMvc mockMvc;
+
+    private long start;
+
+    @BeforeEach
+    public void setup() {
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+        start = bookChangeFeedService.findChanges(null, 1).getLastSequence();
+    }
+
+    @Test
+    @DisplayName("Test committed changes are logged in order with contiguous sequences")
+    public void testFindChanges_committedInOrder() {
+        bookService.saveBookAndAuthors(
+                new CreateBookDTO("9780000000001", "Title 1", Set.of("Author 1"), 2000));
+        // a rolled back write is not logged
+        assertThrows(
+                ResourceConflictException.class,
+                () ->
+                        bookService.saveBookAndAuthors(
+                                new CreateBookDTO(
+                                        "9780000000001", "Title 1", Set.of("Author 1"), 2000)));
+        bookService.updateBookAndAuthors(
+                "9780000000001", new BookDTO("9780000000002", "Title 2", null, null));
+        bookService.deleteBook("9780000000002");
+
+        BookChangePageDTO page = bookChangeFeedService.findChanges(start, 100);
+        List<BookChangeDTO> changes = page.getChanges();
+        assertEquals(4, changes.size());
+        assertEquals(start + 4, page.getLastSequence());
+        for (int i = 0; i < changes.size(); i++) {
+            assertEquals(start + i + 1, changes.get(i).getSequence());
+        }
+        assertEquals(List.of("SAVED", "REMOVED", "SAVED", "REMOVED"), types(changes));
+        assertEquals(
+                List.of("9780000000001", "9780000000001", "9780000000002", "9780000000002"),
+                isbns(changes));
+        assertEquals(
+                new BookDTO("9780000000002", "Title 2", Set.of("Author 1"), 2000),
+                changes.get(2).getBook());
+        assertNull(changes.get(3).getBook());
+
+        // reading in pages
+        assertEquals(
+                List.of("9780000000001", "9780000000001"),
+                isbns(bookChangeFeedService.findChanges(start, 2).getChanges()));
+        assertEquals(
+                List.of("9780000000002", "9780000000002"),
+                isbns(bookChangeFeedService.findChanges(start + 2, 2).getChanges()));
+    }
+
+    @Test
+    @DisplayName("Test concurrent writes all succeed, the change log head exists from startup")
+    public void testFindChanges_concurrentWrites() throws Exception {
+        assertFalse(bookChangeRepository.createHead());
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<BookDTO>> saves = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                CreateBookDTO book =
+                        new CreateBookDTO("978000000001" + i, "Title", Set.of("Author " + i), 2000);
+                saves.add(executor.submit(() -> bookService.saveBookAndAuthors(book)));
+            }
+            for (Future<BookDTO> save : saves) {
+                save.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(8, bookChangeFeedService.findChanges(start, 100).getChanges().size());
+    }
+
+    @Test
+    @DisplayName("Test the catalogue version follows the changes committed by other instances")
+    public void testCatalogueVersion_followsOtherInstances() throws Exception {
+        String before = catalogueChangeCounter.currentVersion();
+        // a change appended by another instance, which publishes no event here
+        new TransactionTemplate(transactionManager)
+                .executeWithoutResult(
+                        status ->
+                                bookChangeRepository.append(
+                                        List.of(
+                                                new BookChange(
+                                                        null,
+                                                        BookChange.Type.REMOVED,
+                                                        "9780000000001",
+                                                        null,
+                                                        Instant.now()))));
+        assertEquals(before, catalogueChangeCounter.currentVersion());
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (before.equals(catalogueChangeCounter.currentVersion())
+                && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(
+                Long.toString(bookChangeRepository.findLastSequence()),
+                catalogueChangeCounter.currentVersion());
+    }
+
+    @Test
+    @DisplayName("Test another instance serves the books changed through this one")
+    public void testFollow_otherInstanceServesChanges() throws Exception {
+        bookService.saveBookAndAuthors(
+                new CreateBookDTO("9780000000001", "Title 1", Set.of("Author 1"), 2000));
+        try (ConfigurableApplicationContext other = startOtherInstance()) {
+            BookService otherBookService = other.getBean(BookService.class);
+            // the page, the book and its authors are cached by the other instance
+            assertEquals(
+                    List.of(new BookDTO("9780000000001", "Title 1", Set.of("Author 1"), 2000)),
+                    otherBookService.findBooks(BookFilter.NONE, null, 10).getBooks());
+            assertEquals("Title 1", otherBookService.findBookByIsbn("9780000000001").getTitle());
+
+            bookService.updateBookAndAuthors(
+                    "9780000000001", new BookDTO(null, "Title 2", Set.of("Author 2"), null));
+            bookService.saveBookAndAuthors(
+                    new CreateBookDTO("9780000000002", "Title 3", Set.of("Author 1"), 2001));
+
+            List<BookDTO> expected =
+                    List.of(
+                            new BookDTO("9780000000001", "Title 2", Set.of("Author 2"), 2000),
+                            new BookDTO("9780000000002", "Title 3", Set.of("Author 1"), 2001));
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (!expected.equals(
+                            otherBookService.findBooks(BookFilter.NONE, null, 10).getBooks())
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(
+                    expected, otherBookService.findBooks(BookFilter.NONE, null, 10).getBooks());
+            assertEquals(expected.get(0), otherBookService.findBookByIsbn("978-0-00-000000-1"));
+        }
+    }
+
+    @Test
+    @DisplayName("Test reading changes which have been pruned fails")
+    public void testFindChanges_pruned() {
+        bookService.saveBookAndAuthors(
+                new CreateBookDTO("9780000000001", "Title 1", Set.of("Author 1"), 2000));
+        bookService.saveBookAndAuthors(
+                new CreateBookDTO("9780000000002", "Title 2", Set.of("Author 2"), 2000));
+        assertTrue(bookChangeFeedService.prune(Instant.now().plusSeconds(1)) >= 2);
+
+        assertThrows(
+                ResourceGoneException.class, () -> bookChangeFeedService.findChanges(start, 100));
+        assertTrue(bookChangeFeedService.findChanges(start + 2, 100).getChanges().isEmpty());
+        bookService.deleteBook("9780000000001");
+        assertEquals(
+                List.of("REMOVED"),
+                types(bookChangeFeedService.findChanges(start + 2, 100).getChanges()));
+    }
+
+    @Test
+    @DisplayName("Test the change stream sends changes as server-sent events")
+    public void testSubscribe_streamsChanges() throws Exception {
+        bookService.saveBookAndAuthors(
+                new CreateBookDTO("9780000000001", "Title 1", Set.of("Author 1"), 2000));
+        MvcResult result =
+                this.mockMvc
+                        .perform(get("/book/changes/stream").header("Last-Event-ID", start))
+                        .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                        .andReturn();
+        bookService.saveBookAndAuthors(
+                new CreateBookDTO("9780000000002", "Title 2", Set.of("Author 2"), 2000));
+
+        String content = "";
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!content.contains("9780000000002") && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+            content = result.getResponse().getContentAsString();
+        }
+        assertTrue(content.contains("id:" + (start + 1) + "\nevent:book-change\n"), content);
+        assertTrue(content.contains("id:" + (start + 2) + "\nevent:book-change\n"), content);
+        assertTrue(content.indexOf("9780000000001") < content.indexOf("9780000000002"), content);
+    }
+
+    /**
+     * Start another instance of the application on the same database, with its own caches, see
+     * InstanceCacheManagerInitializer
+     */
+    private ConfigurableApplicationContext startOtherInstance() {
+        return new SpringApplicationBuilder(LibraryApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("h2")
+                .run("--spring.jpa.hibernate.ddl-auto=none", "--logging.level.root=WARN");
+    }
+
+    private List<String> types(List<BookChangeDTO> changes) {
+        return changes.stream().map(BookChangeDTO::getType).toList();
+    }
+
+    private List<String> isbns(List<BookChangeDTO> changes) {
+        return changes.stream().map(BookChangeDTO::getIsbn).toList();
+    }
+}
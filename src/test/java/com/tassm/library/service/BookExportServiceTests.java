@@ -0,0 +1,96 @@
+package com.tassm.library.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tassm.library.model.dto.BookDTO;
+import com.tassm.library.model.entity.Author;
+import com.tassm.library.model.entity.Book;
+import com.tassm.library.repository.AuthorRepository;
+import com.tassm.library.repository.BookRepository;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+/*
+ * Integration test of the catalogue export against the in memory h2 database
+ */
+@SpringBootTest
+@ActiveProfiles("h2")
+public class BookExportServiceTests {
+
+    @Autowired BookRepository bookRepository;
+
+    @Autowired AuthorRepository authorRepository;
+
+    @Autowired BookExportService bookExportService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    public void setup() {
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+        Author author1 = authorRepository.save(new Author(null, "Author 1", new HashSet<>()));
+        Author author2 = authorRepository.save(new Author(null, "Author, \"2\"", new HashSet<>()));
+        bookRepository.save(
+                new Book(
+                        null, "9780000000001", "Title 1", new HashSet<>(Set.of(author1)), 2021, 0));
+        bookRepository.save(
+                new Book(
+                        null,
+                        "9780000000002",
+                        "Title, 2",
+                        new HashSet<>(Set.of(author1, author2)),
+                        2022,
+                        0));
+        bookRepository.save(new Book(null, "9780000000003", "Title 3", new HashSet<>(), 2023, 0));
+        bookRepository.flush();
+    }
+
+    @Test
+    @DisplayName("Test exporting the catalogue as NDJSON writes one book per line")
+    public void testExport_ndjson() throws Exception {
+        String[] lines = export(ExportFormat.NDJSON).split("\n");
+
+        assertEquals(3, lines.length);
+        BookDTO book1 = objectMapper.readValue(lines[0], BookDTO.class);
+        assertEquals(new BookDTO("9780000000001", "Title 1", Set.of("Author 1"), 2021), book1);
+        BookDTO book2 = objectMapper.readValue(lines[1], BookDTO.class);
+        assertEquals(Set.of("Author 1", "Author, \"2\""), book2.getAuthorNames());
+        BookDTO book3 = objectMapper.readValue(lines[2], BookDTO.class);
+        assertEquals(new BookDTO("9780000000003", "Title 3", Set.of(), 2023), book3);
+    }
+
+    @Test
+    @DisplayName("Test exporting the catalogue as CSV quotes fields which need it")
+    public void testExport_csv() throws Exception {
+        List<String> lines = List.of(export(ExportFormat.CSV).split("\r\n"));
+
+        assertEquals(4, lines.size());
+        assertEquals("isbn,title,authorNames,publicationYear", lines.get(0));
+        assertEquals("9780000000001,Title 1,Author 1,2021", lines.get(1));
+        // the order of the authors within a book is not defined
+        assertTrue(
+                Set.of(
+                                "9780000000002,\"Title, 2\",\"Author 1;Author, \"\"2\"\"\",2022",
+                                "9780000000002,\"Title, 2\",\"Author, \"\"2\"\";Author 1\",2022")
+                        .contains(lines.get(2)));
+        assertEquals("9780000000003,Title 3,,2023", lines.get(3));
+    }
+
+    private String export(ExportFormat format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bookExportService.exportBooks(format, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
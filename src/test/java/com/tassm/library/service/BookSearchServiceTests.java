@@ -0,0 +1,198 @@
+package com.tassm.library.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tassm.library.exception.BadRequestException;
+import com.tassm.library.model.dto.BookDTO;
+import com.tassm.library.model.dto.BookSearchResultDTO;
+import com.tassm.library.model.dto.CreateBookDTO;
+import com.tassm.library.model.entity.Author;
+import com.tassm.library.model.entity.Book;
+import com.tassm.library.model.entity.BookChange;
+import com.tassm.library.repository.AuthorRepository;
+import com.tassm.library.repository.BookChangeRepository;
+import com.tassm.library.repository.BookRepository;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/*
+ * Integration test of the search index kept in sync with the in memory h2 database and its change
+ * log
+ */
+@SpringBootTest
+@ActiveProfiles("h2")
+public class BookSearchServiceTests {
+
+    @Autowired BookRepository bookRepository;
+
+    @Autowired AuthorRepository authorRepository;
+
+    @Autowired BookService bookService;
+
+    @Autowired BookSearchService bookSearchService;
+
+    @Autowired BookChangeRepository bookChangeRepository;
+
+    @Autowired ObjectMapper objectMapper;
+
+    @Autowired PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    public void setup() {
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+        bookSearchService.rebuild();
+        bookService.saveBookAndAuthors(
+                new CreateBookDTO(
+                        "9780000000001",
+                        "The Left Hand of Darkness",
+                        Set.of("Ursula K. Le Guin"),
+                        1969));
+        bookService.saveBookAndAuthors(
+                new CreateBookDTO(
+                        "9780000000002", "The Lathe of Heaven", Set.of("Ursula K. Le Guin"), 1971));
+        bookService.saveBookAndAuthors(
+                new CreateBookDTO("9780000000003", "Heaven Sent", Set.of("Leftie Writer"), 1990));
+    }
+
+    @Test
+    @DisplayName("Test searching matches the last word as a prefix")
+    public void testSearch_prefix() {
+        assertEquals(List.of("9780000000001"), isbns(bookSearchService.search("left ha", 0, 10)));
+        assertEquals(
+                List.of("9780000000001", "9780000000002"),
+                sorted(bookSearchService.search("le gu", 0, 10)));
+        // only the last word matches as a prefix
+        assertTrue(bookSearchService.search("left heaven", 0, 10).getBooks().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test searching ranks whole words and titles above prefixes and authors")
+    public void testSearch_ranked() {
+        // a whole word of the title ranks above the prefix of an author name
+        assertEquals(
+                List.of("9780000000001", "9780000000003"),
+                isbns(bookSearchService.search("left", 0, 10)));
+        // shorter titles rank above longer titles matching the same word
+        BookSearchResultDTO result = bookSearchService.search("heaven", 0, 10);
+        assertEquals(2, result.getTotalHits());
+        assertEquals(
+                new BookDTO("9780000000003", "Heaven Sent", Set.of("Leftie Writer"), 1990),
+                result.getBooks().get(0));
+    }
+
+    @Test
+    @DisplayName("Test the index follows books which are updated and deleted")
+    public void testSearch_followsChanges() {
+        bookService.updateBookAndAuthors(
+                "9780000000001", new BookDTO("9780000000004", "The Dispossessed", null, null));
+        bookService.deleteBook("9780000000002");
+
+        assertEquals(List.of("9780000000004"), isbns(bookSearchService.search("dispos", 0, 10)));
+        assertEquals(List.of("9780000000004"), isbns(bookSearchService.search("guin", 0, 10)));
+        assertTrue(bookSearchService.search("lathe", 0, 10).getBooks().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test the index follows the changes made through other instances")
+    public void testSearch_followsOtherInstances() throws Exception {
+        String saved =
+                objectMapper.writeValueAsString(
+                        new BookDTO(
+                                "9780000000005",
+                                "Always Coming Home",
+                                Set.of("Ursula K. Le Guin"),
+                                1985));
+        // changes committed by another instance, which publishes no event here
+        new TransactionTemplate(transactionManager)
+                .executeWithoutResult(
+                        status ->
+                                bookChangeRepository.append(
+                                        List.of(
+                                                new BookChange(
+                                                        null,
+                                                        BookChange.Type.SAVED,
+                                                        "9780000000005",
+                                                        saved,
+                                                        Instant.now()),
+                                                new BookChange(
+                                                        null,
+                                                        BookChange.Type.REMOVED,
+                                                        "9780000000002",
+                                                        null,
+                                                        Instant.now()))));
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!bookSearchService.search("lathe", 0, 10).getBooks().isEmpty()
+                && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(bookSearchService.search("lathe", 0, 10).getBooks().isEmpty());
+        assertEquals(List.of("9780000000005"), isbns(bookSearchService.search("always", 0, 10)));
+    }
+
+    @Test
+    @DisplayName("Test paging through search results of imported books")
+    public void testSearch_pages() {
+        List<CreateBookDTO> dtos = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            dtos.add(
+                    new CreateBookDTO(
+                            String.format("979%010d", i), "Imported " + i, Set.of("Author"), 2000));
+        }
+        bookService.importBooks(dtos);
+
+        BookSearchResultDTO page = bookSearchService.search("imp", 2, 10);
+        assertEquals(25, page.getTotalHits());
+        assertEquals(5, page.getBooks().size());
+        assertThrows(BadRequestException.class, () -> bookSearchService.search("imp", 10, 100));
+        // (page + 1) * size overflows an int to 4
+        assertThrows(
+                BadRequestException.class, () -> bookSearchService.search("imp", 42949672, 100));
+        assertThrows(
+                BadRequestException.class,
+                () -> bookSearchService.search("imp", Integer.MAX_VALUE, 100));
+    }
+
+    @Test
+    @DisplayName("Test rebuilding the index picks up books written directly to the database")
+    public void testSearch_rebuild() {
+        Author author = authorRepository.save(new Author(null, "Direct", new HashSet<>()));
+        bookRepository.saveAndFlush(
+                new Book(
+                        null,
+                        "9780000000005",
+                        "Written Directly",
+                        new HashSet<>(Set.of(author)),
+                        2000,
+                        0));
+        assertTrue(bookSearchService.search("written", 0, 10).getBooks().isEmpty());
+
+        bookSearchService.rebuild();
+
+        assertEquals(List.of("9780000000005"), isbns(bookSearchService.search("written", 0, 10)));
+    }
+
+    private List<String> isbns(BookSearchResultDTO result) {
+        return result.getBooks().stream().map(BookDTO::getIsbn).toList();
+    }
+
+    private List<String> sorted(BookSearchResultDTO result) {
+        return isbns(result).stream().sorted().toList();
+    }
+}
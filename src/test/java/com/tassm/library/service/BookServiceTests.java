@@ -1,15 +1,34 @@
 package com.tassm.library.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.tassm.library.config.CacheConfig;
+import com.tassm.library.exception.PreconditionFailedException;
+import com.tassm.library.exception.ResourceConflictException;
+import com.tassm.library.exception.ResourceNotFoundException;
+import com.tassm.library.metrics.SqlStatementCounter;
+import com.tassm.library.model.Isbn;
+import com.tassm.library.model.dto.BookBatchDTO;
 import com.tassm.library.model.dto.BookDTO;
+import com.tassm.library.model.dto.BookPageDTO;
+import com.tassm.library.model.dto.BookView;
 import com.tassm.library.model.dto.CreateBookDTO;
+import com.tassm.library.model.dto.ImportResultDTO;
 import com.tassm.library.model.entity.Author;
 import com.tassm.library.model.entity.Book;
 import com.tassm.library.repository.AuthorRepository;
+import com.tassm.library.repository.BookFilter;
 import com.tassm.library.repository.BookRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManagerFactory;
 import jakarta.transaction.Transactional;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
@@ -19,6 +38,9 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 
 /*
@@ -27,7 +49,7 @@ import org.springframework.test.context.ActiveProfiles;
  *
  * NOTE: This is not as extensive as I would like, I would spend more time on this in future and separate the repository tests into their own classes.
  */
-@SpringBootTest
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
 @ActiveProfiles("h2")
 public class BookServiceTests {
 
@@ -37,6 +59,24 @@ public class BookServiceTests {
 
     @Autowired BookService bookService;
 
+    @Autowired EntityManagerFactory entityManagerFactory;
+
+    @Autowired CacheManager cacheManager;
+
+    @Autowired MeterRegistry meterRegistry;
+
+    @Autowired CatalogueChangeCounter catalogueChangeCounter;
+
+    @Autowired SqlStatementCounter sqlStatementCounter;
+
+    @Autowired IsbnFilter isbnFilter;
+
+    @Autowired LoadedBookCache loadedBookCache;
+
+    @Autowired IsbnBackfill isbnBackfill;
+
+    @Autowired JdbcTemplate jdbcTemplate;
+
     final String isbn1 = "978-3-16-148410-1";
     final String isbn2 = "978-3-16-148410-2";
     final String isbn3 = "978-3-16-148410-3";
@@ -47,6 +87,9 @@ public class BookServiceTests {
         authorRepository.deleteAll();
         bookRepository.flush();
         authorRepository.flush();
+        cacheManager.getCache(CacheConfig.BOOKS_BY_ISBN).clear();
+        // drop the ISBNs of books saved by earlier tests
+        isbnFilter.rebuild();
     }
 
     @Test
@@ -56,7 +99,10 @@ public class BookServiceTests {
         saveTestData();
 
         // Call the service method to retrieve the results
-        List<BookDTO> result = bookService.findBooks("Author 1", null, null);
+        List<BookDTO> result =
+                bookService
+                        .findBooks(new BookFilter("Author 1", null, null, null), null, 100)
+                        .getBooks();
 
         // Verify the results
         assertEquals(2, result.size());
@@ -80,7 +126,8 @@ public class BookServiceTests {
         saveTestData();
 
         // Call the service method to retrieve the results
-        List<BookDTO> result = bookService.findBooks(null, 2015, 2021);
+        List<BookDTO> result =
+                bookService.findBooks(new BookFilter(null, 2015, 2021, null), null, 100).getBooks();
 
         // Verify the results
         assertEquals(1, result.size());
@@ -91,6 +138,382 @@ public class BookServiceTests {
         assertEquals(2021, result.get(0).getPublicationYear());
     }
 
+    @Test
+    @DisplayName("Test getting books by author, year range and title prefix combined")
+    public void testGetBooks_combinedFilter() {
+        saveTestData();
+        saveManyBooks(15);
+
+        List<BookDTO> result =
+                bookService
+                        .findBooks(new BookFilter("Author 1", 2022, 2030, "Title"), null, 100)
+                        .getBooks();
+        assertEquals(List.of(isbn2), result.stream().map(BookDTO::getIsbn).toList());
+
+        result =
+                bookService
+                        .findBooks(new BookFilter(null, null, null, "Many 1"), null, 100)
+                        .getBooks();
+        // Many 1 and Many 10 to Many 14
+        assertEquals(6, result.size());
+
+        result =
+                bookService
+                        .findBooks(new BookFilter("Author 2", null, null, "Many"), null, 100)
+                        .getBooks();
+        assertTrue(result.isEmpty());
+
+        assertEquals(17, bookService.findBooks(BookFilter.NONE, null, 100).getBooks().size());
+    }
+
+    @Test
+    @DisplayName("Test a title prefix matches wildcard characters literally")
+    public void testGetBooks_titlePrefixEscapesWildcards() {
+        saveTestData();
+
+        assertTrue(
+                bookService
+                        .findBooks(new BookFilter(null, null, null, "Title_"), null, 100)
+                        .getBooks()
+                        .isEmpty());
+        assertTrue(
+                bookService
+                        .findBooks(new BookFilter(null, null, null, "%"), null, 100)
+                        .getBooks()
+                        .isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test the statements run to find books by author do not grow with the results")
+    public void testGetBooks_filterByAuthor_constantStatementCount() {
+        saveTestData();
+        long fewBooks =
+                countStatements(
+                        () ->
+                                bookService
+                                        .findBooks(
+                                                new BookFilter("Author 1", null, null, null),
+                                                null,
+                                                100)
+                                        .getBooks());
+
+        saveManyBooks(50);
+        long manyBooks =
+                countStatements(
+                        () ->
+                                bookService
+                                        .findBooks(
+                                                new BookFilter("Author 1", null, null, null),
+                                                null,
+                                                100)
+                                        .getBooks());
+
+        assertEquals(
+                52,
+                bookService
+                        .findBooks(new BookFilter("Author 1", null, null, null), null, 100)
+                        .getBooks()
+                        .size());
+        assertEquals(fewBooks, manyBooks);
+    }
+
+    @Test
+    @DisplayName("Test the statements run to find books by year do not grow with the results")
+    public void testGetBooks_filterByYear_constantStatementCount() {
+        saveTestData();
+        long fewBooks =
+                countStatements(
+                        () ->
+                                bookService
+                                        .findBooks(
+                                                new BookFilter(null, 2000, 2030, null), null, 100)
+                                        .getBooks());
+
+        saveManyBooks(50);
+        long manyBooks =
+                countStatements(
+                        () ->
+                                bookService
+                                        .findBooks(
+                                                new BookFilter(null, 2000, 2030, null), null, 100)
+                                        .getBooks());
+
+        assertEquals(
+                52,
+                bookService
+                        .findBooks(new BookFilter(null, 2000, 2030, null), null, 100)
+                        .getBooks()
+                        .size());
+        assertEquals(fewBooks, manyBooks);
+    }
+
+    @Test
+    @DisplayName("Test paging through books with the cursor returns every book once")
+    public void testGetBooks_pagesWithCursor() {
+        saveTestData();
+        saveManyBooks(50);
+
+        List<String> isbns = new ArrayList<>();
+        List<Integer> pageSizes = new ArrayList<>();
+        String cursor = null;
+        do {
+            BookPageDTO page =
+                    bookService.findBooks(new BookFilter("Author 1", null, null, null), cursor, 20);
+            page.getBooks().forEach(b -> isbns.add(b.getIsbn()));
+            pageSizes.add(page.getBooks().size());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        assertEquals(List.of(20, 20, 12), pageSizes);
+        assertEquals(52, new HashSet<>(isbns).size());
+        // ordered by publication year so the two test books published later come last
+        assertEquals(List.of(isbn1, isbn2), isbns.subList(50, 52));
+    }
+
+    @Test
+    @DisplayName("Test streaming books returns every book with all of its authors")
+    public void testStreamBooks_filterByAuthor() {
+        saveTestData();
+        saveManyBooks(50);
+
+        List<BookView> result = new ArrayList<>();
+        bookService.streamBooks(new BookFilter("Author 1", null, null, null), result::add);
+
+        assertEquals(52, result.size());
+        assertEquals(52, result.stream().map(BookView::isbn).distinct().count());
+        result.forEach(b -> assertEquals(2, b.authorNames().size()));
+        assertEquals(isbn2, result.get(51).isbn());
+    }
+
+    @Test
+    @DisplayName("Test finding books records the service timer and the rows returned")
+    public void testGetBooks_recordsMetrics() {
+        saveTestData();
+        long calls = findBooksTimer().count();
+        double rows = meterRegistry.get("library.book.find.rows").summary().totalAmount();
+
+        bookService.findBooks(new BookFilter("Author 1", null, null, null), null, 100);
+
+        assertEquals(calls + 1, findBooksTimer().count());
+        assertEquals(rows + 2, meterRegistry.get("library.book.find.rows").summary().totalAmount());
+    }
+
+    @Test
+    @DisplayName("Test a repeated page of books is served from the query and second level caches")
+    public void testGetBooks_secondLevelCached() {
+        saveTestData();
+        BookFilter filter = new BookFilter(null, 2000, 2030, null);
+        List<BookDTO> first = bookService.findBooks(filter, null, 100).getBooks();
+
+        long statements = countStatements(() -> bookService.findBooks(filter, null, 100));
+
+        assertEquals(0, statements);
+        assertEquals(first, bookService.findBooks(filter, null, 100).getBooks());
+        assertTrue(
+                meterRegistry
+                                .get("hibernate.second.level.cache.requests")
+                                .tags("region", "book", "result", "hit")
+                                .functionCounter()
+                                .count()
+                        > 0);
+
+        // the page is invalidated and the book and its authors refreshed by an update
+        bookService.updateBookAndAuthors(
+                isbn1, new BookDTO(null, "New Title", Set.of("Author 3"), null));
+        BookDTO updated = bookService.findBooks(filter, null, 100).getBooks().get(0);
+        assertEquals("New Title", updated.getTitle());
+        assertEquals(Set.of("Author 3"), updated.getAuthorNames());
+    }
+
+    @Test
+    @DisplayName("Test getting a book by ISBN a second time is served from the cache")
+    public void testGetBookByIsbn_cached() {
+        saveTestData();
+
+        BookDTO first = bookService.findBookByIsbn(isbn1);
+        long statements = countStatements(() -> bookService.findBookByIsbn(isbn1));
+
+        assertEquals(0, statements);
+        assertEquals(first, bookService.findBookByIsbn(isbn1));
+    }
+
+    @Test
+    @DisplayName("Test every form of an ISBN finds the book and shares its cache entry")
+    public void testGetBookByIsbn_anyForm() {
+        saveTestData();
+
+        BookDTO first = bookService.findBookByIsbn(isbn1);
+        long statements = countStatements(() -> bookService.findBookByIsbn("9783161484101"));
+
+        assertEquals(0, statements);
+        // the book keeps the ISBN as it was saved
+        assertEquals(isbn1, bookService.findBookByIsbn("9783161484101").getIsbn());
+        assertEquals(first, bookService.findBookByIsbn("978 3 16 148410 1"));
+        assertEquals(first.getVersion(), bookService.findBookVersion("9783161484101"));
+    }
+
+    @Test
+    @DisplayName("Test a batch lookup loads the uncached books together")
+    public void testGetBooksByIsbn_batch() {
+        saveTestData();
+        BookDTO cached = bookService.findBookByIsbn(isbn2);
+        // the filter holds the ISBN as it does that of a removed book
+        isbnFilter.onBookChange(
+                BookChangeEvent.saved(List.of(new BookDTO(isbn3, "Removed", Set.of(), 2000, 0L))));
+
+        BookBatchDTO[] result = new BookBatchDTO[1];
+        long statements =
+                countStatements(
+                        () ->
+                                result[0] =
+                                        bookService.findBooksByIsbn(
+                                                List.of(
+                                                        "978-0-306-40615-7",
+                                                        isbn3,
+                                                        isbn2,
+                                                        isbn1,
+                                                        "9783161484101")));
+
+        // the ids, then the authors of the books which are held in the second level cache
+        assertEquals(2, statements);
+        assertEquals(
+                List.of(cached.getIsbn(), isbn1),
+                result[0].getBooks().stream().map(BookDTO::getIsbn).toList());
+        assertEquals(Set.of("Author 1", "Author 2"), result[0].getBooks().get(1).getAuthorNames());
+        assertEquals(List.of("978-0-306-40615-7", isbn3), result[0].getMissingIsbns());
+        // the loaded book is cached
+        assertEquals(0, countStatements(() -> bookService.findBookByIsbn(isbn1)));
+    }
+
+    @Test
+    @DisplayName("Test lookups by ISBN which miss the cache run through the single flight")
+    public void testGetBookByIsbn_singleFlight() {
+        double executed = singleFlightLoads("findBookByIsbn");
+        // the filter holds the ISBN as it does that of a removed book
+        isbnFilter.onBookChange(
+                BookChangeEvent.saved(List.of(new BookDTO(isbn1, "Removed", Set.of(), 2000, 0L))));
+
+        // a missing book is not cached so every lookup loads it
+        assertThrows(ResourceNotFoundException.class, () -> bookService.findBookByIsbn(isbn1));
+        assertThrows(ResourceNotFoundException.class, () -> bookService.findBookByIsbn(isbn1));
+
+        assertEquals(executed + 2, singleFlightLoads("findBookByIsbn"));
+    }
+
+    @Test
+    @DisplayName("Test the cached book is refreshed when the book is updated")
+    public void testGetBookByIsbn_refreshedOnUpdate() {
+        saveTestData();
+        bookService.findBookByIsbn(isbn1);
+
+        bookService.updateBookAndAuthors(isbn1, new BookDTO(null, "New Title", null, null));
+
+        assertEquals("New Title", bookService.findBookByIsbn(isbn1).getTitle());
+    }
+
+    @Test
+    @DisplayName("Test a read finishing after a concurrent update does not cache the old book")
+    public void testGetBookByIsbn_slowReadAfterUpdate() {
+        saveTestData();
+        long isbn13 = Isbn.toIsbn13(isbn1);
+        Cache cache = cacheManager.getCache(CacheConfig.BOOKS_BY_ISBN);
+        // a read which began and read the book before the update, and caches it after
+        long readBegan = loadedBookCache.beginRead();
+        BookDTO read = bookService.findBookByIsbn(isbn1);
+        cache.clear();
+
+        bookService.updateBookAndAuthors(isbn1, new BookDTO(null, "New Title", null, null));
+        loadedBookCache.put(isbn13, read, readBegan);
+        assertEquals("New Title", cache.get(isbn13, BookDTO.class).getTitle());
+
+        // a read which began after the update, but finished after a read of the newer book
+        loadedBookCache.put(isbn13, read, loadedBookCache.beginRead());
+        assertEquals("New Title", cache.get(isbn13, BookDTO.class).getTitle());
+
+        // a read which began before the book was deleted
+        readBegan = loadedBookCache.beginRead();
+        bookService.deleteBook(isbn1);
+        loadedBookCache.put(isbn13, read, readBegan);
+        assertNull(cache.get(isbn13));
+        assertThrows(ResourceNotFoundException.class, () -> bookService.findBookByIsbn(isbn1));
+    }
+
+    @Test
+    @DisplayName("Test the cached book is evicted when the book changes ISBN or is deleted")
+    public void testGetBookByIsbn_evictedOnIsbnChangeAndDelete() {
+        saveTestData();
+        bookService.findBookByIsbn(isbn1);
+
+        bookService.updateBookAndAuthors(isbn1, new BookDTO(isbn3, null, null, null));
+
+        assertThrows(ResourceNotFoundException.class, () -> bookService.findBookByIsbn(isbn1));
+        assertEquals(isbn3, bookService.findBookByIsbn(isbn3).getIsbn());
+
+        bookService.deleteBook(isbn3);
+
+        assertThrows(ResourceNotFoundException.class, () -> bookService.findBookByIsbn(isbn3));
+    }
+
+    @Test
+    @DisplayName("Test lookups and deletes of ISBNs absent from the ISBN filter skip the database")
+    public void testIsbnFilter_definiteMissSkipsDatabase() {
+        double absent = isbnFilterChecks("absent");
+
+        long statements =
+                countStatements(
+                        () -> {
+                            assertThrows(
+                                    ResourceNotFoundException.class,
+                                    () -> bookService.findBookByIsbn(isbn1));
+                        });
+
+        assertEquals(0, statements);
+        assertEquals(absent + 1, isbnFilterChecks("absent"));
+    }
+
+    @Test
+    @DisplayName("Test deletes and lookups by a stale ISBN filter query the database")
+    public void testIsbnFilter_staleOrDeleteQueriesDatabase() {
+        saveTestData();
+        // written to the database directly, bypassing the filter and the change log
+        jdbcTemplate.update(
+                "UPDATE book SET isbn = ?, isbn13 = ? WHERE isbn = ?",
+                isbn3,
+                Isbn.toIsbn13(isbn3),
+                isbn1);
+        entityManagerFactory.getCache().evictAll();
+        assertThrows(ResourceNotFoundException.class, () -> bookService.findBookByIsbn(isbn3));
+
+        // as when the filter has not been able to read the change log
+        Duration maxStaleness = isbnFilter.maxStaleness;
+        isbnFilter.maxStaleness = Duration.ZERO;
+        try {
+            double stale = isbnFilterChecks("stale");
+            assertEquals(isbn3, bookService.findBookByIsbn(isbn3).getIsbn());
+            assertEquals(stale + 1, isbnFilterChecks("stale"));
+        } finally {
+            isbnFilter.maxStaleness = maxStaleness;
+        }
+
+        bookService.deleteBook(isbn3);
+        assertTrue(bookRepository.findByIsbn(isbn3).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test saved books and their other ISBN forms are held by the ISBN filter")
+    public void testIsbnFilter_holdsSavedBooks() {
+        saveTestData();
+        bookService.saveBookAndAuthors(
+                new CreateBookDTO("0-306-40615-2", "a book", Set.of("Author 1"), 1972));
+
+        // written to the database directly and picked up by the rebuild
+        assertTrue(isbnFilter.mightExist(Isbn.toIsbn13(isbn1)));
+        assertTrue(isbnFilter.mightExist(Isbn.toIsbn13(isbn2)));
+        assertEquals("a book", bookService.findBookByIsbn("0-306-40615-2").getTitle());
+        assertTrue(isbnFilter.mightExist(Isbn.toIsbn13("978-0-306-40615-7")));
+        assertTrue(isbnFilter.mightExist(Isbn.toIsbn13("0306406152")));
+    }
+
     @Test
     @Transactional
     @DisplayName("Test saving a new book")
@@ -116,6 +539,88 @@ public class BookServiceTests {
         assertEquals(1972, res.get().getPublicationYear());
     }
 
+    @Test
+    @DisplayName("Test importing books reports existing and repeated ISBNs as conflicts")
+    public void testImportBooks_reportsConflicts() {
+        saveTestData();
+        List<CreateBookDTO> dtos =
+                List.of(
+                        new CreateBookDTO(isbn1, "Existing", Set.of("Author 1"), 2000),
+                        new CreateBookDTO(isbn3, "New", Set.of("Author 1", "Author 3"), 2001),
+                        new CreateBookDTO(isbn3, "Repeated", Set.of("Author 4"), 2002));
+
+        ImportResultDTO result = bookService.importBooks(dtos);
+
+        assertEquals(1, result.getCreated());
+        assertEquals(List.of(0, 2), result.getConflicts().stream().map(c -> c.getIndex()).toList());
+        BookDTO imported = bookService.findBookByIsbn(isbn3);
+        assertEquals("New", imported.getTitle());
+        assertEquals(Set.of("Author 1", "Author 3"), imported.getAuthorNames());
+        assertTrue(authorRepository.findByName("Author 4").isEmpty());
+        assertEquals(3, authorRepository.count());
+    }
+
+    @Test
+    @DisplayName("Test importing books runs a bounded number of statements")
+    public void testImportBooks_batchesStatements() {
+        List<CreateBookDTO> dtos = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            dtos.add(
+                    new CreateBookDTO(
+                            String.format("978%010d", i),
+                            "Title " + i,
+                            Set.of("Author " + (i % 20)),
+                            2000));
+        }
+
+        long statements = countStatements(() -> bookService.importBooks(dtos));
+
+        assertEquals(200, bookRepository.count());
+        assertEquals(20, authorRepository.count());
+        assertTrue(statements < 20, "expected batched inserts but ran " + statements);
+    }
+
+    @Test
+    @DisplayName("Test saving a book resolves its authors in a constant number of statements")
+    public void testSaveNewBook_constantAuthorStatements() {
+        saveTestData();
+        long oneAuthor =
+                countStatements(
+                        () ->
+                                bookService.saveBookAndAuthors(
+                                        new CreateBookDTO(
+                                                isbn3, "a book", Set.of("New Author"), 1972)));
+
+        Set<String> authorNames = new HashSet<>(Set.of("Author 1", "Author 2"));
+        for (int i = 0; i < 8; i++) {
+            authorNames.add("Another Author " + i);
+        }
+        long manyAuthors =
+                countStatements(
+                        () ->
+                                bookService.saveBookAndAuthors(
+                                        new CreateBookDTO(
+                                                "978-3-16-148410-4",
+                                                "another book",
+                                                authorNames,
+                                                1973)));
+
+        assertEquals(oneAuthor, manyAuthors);
+        assertEquals(authorNames, bookService.findBookByIsbn("978-3-16-148410-4").getAuthorNames());
+        assertEquals(11, authorRepository.count());
+    }
+
+    @Test
+    @DisplayName("Test inserting missing authors skips the authors which already exist")
+    public void testInsertMissingAuthors_skipsExisting() {
+        saveTestData();
+
+        authorRepository.insertMissing(Set.of("Author 1", "Author 3"));
+
+        assertEquals(3, authorRepository.count());
+        assertEquals(2, authorRepository.findByNameIn(Set.of("Author 1", "Author 3")).size());
+    }
+
     /**
      * This is just one example to test update and is quite lazy, many more tests would be needed
      * for comprehensive testing
@@ -154,6 +659,149 @@ public class BookServiceTests {
         assertEquals(2022, res.get().getPublicationYear());
     }
 
+    @Test
+    @DisplayName("Test updating a book conditionally on its version")
+    public void testUpdateExistingBook_version() {
+        saveTestData();
+        long version = bookService.findBookVersion(isbn1);
+
+        BookDTO conditional = new BookDTO(null, "Title A", null, null);
+        conditional.setVersion(version);
+        BookDTO updated = bookService.updateBookAndAuthors(isbn1, conditional);
+        assertEquals(version + 1, updated.getVersion());
+        assertEquals(version + 1, bookService.findBookByIsbn(isbn1).getVersion());
+
+        // a stale version is rejected and leaves the book unchanged
+        BookDTO stale = new BookDTO(null, "Title B", null, null);
+        stale.setVersion(version);
+        assertThrows(
+                PreconditionFailedException.class,
+                () -> bookService.updateBookAndAuthors(isbn1, stale));
+        assertEquals("Title A", bookService.findBookByIsbn(isbn1).getTitle());
+
+        // changing only the authors also increments the version
+        bookService.updateBookAndAuthors(isbn1, new BookDTO(null, null, Set.of("Author 3"), null));
+        assertEquals(version + 2, bookService.findBookVersion(isbn1));
+        assertThrows(ResourceNotFoundException.class, () -> bookService.findBookVersion(isbn3));
+    }
+
+    @Test
+    @DisplayName("Test changing the ISBN of a book to the ISBN of another book is a conflict")
+    public void testUpdateExistingBook_isbnInUse() {
+        saveTestData();
+
+        ResourceConflictException conflict =
+                assertThrows(
+                        ResourceConflictException.class,
+                        () ->
+                                bookService.updateBookAndAuthors(
+                                        isbn1, new BookDTO(isbn2, "Moved", null, null)));
+        assertEquals("The book with this ISBN already exists", conflict.getMessage());
+        assertEquals("Title 1", bookService.findBookByIsbn(isbn1).getTitle());
+        assertEquals("Title 2", bookService.findBookByIsbn(isbn2).getTitle());
+    }
+
+    @Test
+    @DisplayName("Test saving or importing another form of an existing ISBN is a conflict")
+    public void testSaveNewBook_otherFormConflicts() {
+        saveTestData();
+
+        assertThrows(
+                ResourceConflictException.class,
+                () ->
+                        bookService.saveBookAndAuthors(
+                                new CreateBookDTO("9783161484101", "Title", Set.of("A"), 2000)));
+        ImportResultDTO result =
+                bookService.importBooks(
+                        List.of(
+                                new CreateBookDTO(
+                                        "978 3 16 148410 2", "Title", Set.of("A"), 2000)));
+        assertEquals(0, result.getCreated());
+        assertEquals(1, result.getConflicts().size());
+    }
+
+    @Test
+    @DisplayName("Test the ISBN-13 of books saved before it was stored is filled in")
+    public void testIsbnBackfill() {
+        saveTestData();
+        long version = bookService.findBookVersion(isbn1);
+        jdbcTemplate.update("UPDATE book SET isbn13 = NULL");
+        assertTrue(bookRepository.findByIsbn(isbn1).isEmpty());
+
+        isbnBackfill.backfill();
+
+        Book book = bookRepository.findByIsbn("9783161484101").get();
+        assertEquals(isbn1, book.getIsbn());
+        assertEquals(version, book.getVersion());
+        assertTrue(bookRepository.findByIsbn(isbn2).isPresent());
+    }
+
+    @Test
+    @DisplayName("Test a book the backfill leaves without an ISBN-13 is still listed")
+    public void testIsbnBackfill_invalidIsbn() {
+        saveTestData();
+        jdbcTemplate.update(
+                "UPDATE book SET isbn = 'not-an-isbn', isbn13 = NULL WHERE isbn = ?", isbn1);
+        isbnBackfill.backfill();
+        // load the books from the database rather than the second level cache
+        entityManagerFactory.getCache().evictAll();
+
+        List<String> isbns =
+                bookService
+                        .findBooks(new BookFilter(null, null, null, null), null, 10)
+                        .getBooks()
+                        .stream()
+                        .map(BookDTO::getIsbn)
+                        .toList();
+        assertTrue(isbns.contains("not-an-isbn"));
+        assertTrue(isbns.contains(isbn2));
+    }
+
+    @Test
+    @DisplayName("Test the backfill leaves a book without an ISBN-13 another book has")
+    public void testIsbnBackfill_duplicateIsbn() {
+        saveTestData();
+        // the backfill reads the books in the order of their ids
+        long id1 = bookRepository.findByIsbn(isbn1).get().getId();
+        long id2 = bookRepository.findByIsbn(isbn2).get().getId();
+        if (id2 < id1) {
+            long id = id1;
+            id1 = id2;
+            id2 = id;
+        }
+        // the ISBN-10 and the ISBN-13 of one book
+        jdbcTemplate.update(
+                "UPDATE book SET isbn = '3-16-148410-X', isbn13 = NULL WHERE id = ?", id1);
+        jdbcTemplate.update(
+                "UPDATE book SET isbn = '9783161484100', isbn13 = NULL WHERE id = ?", id2);
+
+        isbnBackfill.backfill();
+        // and again, as at the next startup, when the ISBN-13 is already set
+        isbnBackfill.backfill();
+
+        assertEquals(
+                9783161484100L,
+                jdbcTemplate.queryForObject(
+                        "SELECT isbn13 FROM book WHERE id = ?", Long.class, id1));
+        assertNull(
+                jdbcTemplate.queryForObject(
+                        "SELECT isbn13 FROM book WHERE id = ?", Long.class, id2));
+    }
+
+    @Test
+    @DisplayName("Test the catalogue version changes only when a change is committed")
+    public void testCatalogueVersion_changesOnCommit() {
+        String before = catalogueChangeCounter.currentVersion();
+        CreateBookDTO dto = new CreateBookDTO(isbn3, "Title 3", Set.of("Author 1"), 2023);
+
+        bookService.saveBookAndAuthors(dto);
+        String after = catalogueChangeCounter.currentVersion();
+        assertNotEquals(before, after);
+
+        assertThrows(ResourceConflictException.class, () -> bookService.saveBookAndAuthors(dto));
+        assertEquals(after, catalogueChangeCounter.currentVersion());
+    }
+
     @Test
     @Transactional
     @DisplayName("Test deleting a book")
@@ -173,6 +821,46 @@ public class BookServiceTests {
         assertTrue(res.isEmpty());
     }
 
+    private double isbnFilterChecks(String result) {
+        return meterRegistry.get(IsbnFilter.CHECKS_METRIC).tag("result", result).counter().count();
+    }
+
+    private double singleFlightLoads(String name) {
+        return meterRegistry
+                .get(SingleFlight.LOADS_METRIC)
+                .tags("name", name, "outcome", "executed")
+                .counter()
+                .count();
+    }
+
+    private Timer findBooksTimer() {
+        return meterRegistry.get("library.book.service").tag("method", "findBooks").timer();
+    }
+
+    /**
+     * Count the SQL statements prepared by hibernate on this thread while running the given action,
+     * so statements of background work such as the change feed dispatcher are not counted
+     */
+    private long countStatements(Runnable action) {
+        sqlStatementCounter.reset();
+        action.run();
+        return sqlStatementCounter.get();
+    }
+
+    /** Save a number of books each with their own co-author alongside the existing Author 1 */
+    private void saveManyBooks(int count) {
+        Author author1 = authorRepository.findByName("Author 1").get();
+        for (int i = 0; i < count; i++) {
+            Author coAuthor =
+                    authorRepository.save(new Author(null, "Co-Author " + i, new HashSet<>()));
+            Set<Author> authors = new HashSet<>(Set.of(author1, coAuthor));
+            bookRepository.save(
+                    new Book(null, String.format("978%010d", i), "Many " + i, authors, 2010, 0));
+        }
+        bookRepository.flush();
+        isbnFilter.rebuild();
+    }
+
     @Transactional
     private void saveTestData() {
         // Prepare mock data
@@ -181,11 +869,12 @@ public class BookServiceTests {
         authors.add(new Author(null, "Author 1", new HashSet<>()));
         authors.add(new Author(null, "Author 2", new HashSet<>()));
         authors = new HashSet<>(authorRepository.saveAll(authors));
-        books.add(new Book(null, isbn1, "Title 1", authors, 2021));
-        books.add(new Book(null, isbn2, "Title 2", authors, 2022));
+        books.add(new Book(null, isbn1, "Title 1", authors, 2021, 0));
+        books.add(new Book(null, isbn2, "Title 2", authors, 2022, 0));
 
         // persist the dummy records in the in memory database
         bookRepository.saveAllAndFlush(books);
         authorRepository.flush();
+        isbnFilter.rebuild();
     }
 }
@@ -0,0 +1,139 @@
+package com.tassm.library.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.tassm.library.exception.ResourceNotFoundException;
+import com.tassm.library.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Unit tests of the coalescing of concurrent loads. The first load of each test is held open with
+ * a latch until the other callers have joined it.
+ */
+public class SingleFlightTests {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @AfterEach
+    public void teardown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Test concurrent loads of the same key run once and share the result")
+    public void testLoad_coalesced() throws Exception {
+        SingleFlight<String, String> flight =
+                new SingleFlight<>("test", Duration.ofSeconds(10), meterRegistry);
+        Future<String> leader = executor.submit(() -> flight.load("key", this::blockingLoad));
+        awaitLoads(1);
+
+        List<Future<String>> followers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            followers.add(executor.submit(() -> flight.load("key", this::blockingLoad)));
+        }
+        awaitCount("coalesced", 10);
+        // a different key is not coalesced
+        assertEquals("other", flight.load("other", () -> "other"));
+        release.countDown();
+
+        assertEquals("value", leader.get());
+        for (Future<String> follower : followers) {
+            assertEquals("value", follower.get());
+        }
+        assertEquals(1, loads.get());
+        assertEquals(2, count("executed"));
+    }
+
+    @Test
+    @DisplayName("Test callers sharing a load which fails receive its exception")
+    public void testLoad_exceptionShared() throws Exception {
+        ResourceNotFoundException notFound = new ResourceNotFoundException("not found");
+        SingleFlight<String, String> flight =
+                new SingleFlight<>("test", Duration.ofSeconds(10), meterRegistry);
+        Future<String> leader =
+                executor.submit(
+                        () ->
+                                flight.load(
+                                        "key",
+                                        () -> {
+                                            blockingLoad();
+                                            throw notFound;
+                                        }));
+        awaitLoads(1);
+        Future<String> follower = executor.submit(() -> flight.load("key", this::blockingLoad));
+        awaitCount("coalesced", 1);
+        release.countDown();
+
+        assertSame(notFound, assertThrows(ExecutionException.class, leader::get).getCause());
+        assertSame(notFound, assertThrows(ExecutionException.class, follower::get).getCause());
+        assertEquals(1, loads.get());
+        // the failed load is no longer in flight
+        assertEquals("value", flight.load("key", () -> "value"));
+    }
+
+    @Test
+    @DisplayName("Test a caller gives up waiting for a load after the maximum wait")
+    public void testLoad_boundedWait() throws Exception {
+        SingleFlight<String, String> flight =
+                new SingleFlight<>("test", Duration.ofMillis(50), meterRegistry);
+        Future<String> leader = executor.submit(() -> flight.load("key", this::blockingLoad));
+        awaitLoads(1);
+
+        assertThrows(
+                ServiceUnavailableException.class, () -> flight.load("key", this::blockingLoad));
+        assertEquals(1, meterRegistry.get(SingleFlight.TIMEOUTS_METRIC).counter().count());
+
+        release.countDown();
+        assertEquals("value", leader.get());
+        assertEquals(1, loads.get());
+    }
+
+    private String blockingLoad() {
+        loads.incrementAndGet();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "value";
+    }
+
+    private void awaitLoads(int expected) throws InterruptedException {
+        while (loads.get() < expected) {
+            Thread.sleep(1);
+        }
+    }
+
+    private void awaitCount(String outcome, int expected) throws InterruptedException {
+        while (count(outcome) < expected) {
+            Thread.sleep(1);
+        }
+    }
+
+    private double count(String outcome) {
+        return meterRegistry
+                .get(SingleFlight.LOADS_METRIC)
+                .tag("outcome", outcome)
+                .counter()
+                .count();
+    }
+}
@@ -0,0 +1,150 @@
+package com.tassm.library.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.tassm.library.exception.ResourceConflictException;
+import com.tassm.library.exception.ResourceNotFoundException;
+import com.tassm.library.model.dto.BookDTO;
+import com.tassm.library.model.dto.CreateBookDTO;
+import com.tassm.library.model.dto.WriteStatusDTO;
+import com.tassm.library.repository.AuthorRepository;
+import com.tassm.library.repository.BookRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+/*
+ * Integration test of the write-behind queue against the in memory h2 database
+ */
+@SpringBootTest(properties = "library.write-behind.enabled=true")
+@ActiveProfiles("h2")
+public class WriteBehindServiceTests {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @Autowired BookRepository bookRepository;
+
+    @Autowired AuthorRepository authorRepository;
+
+    @Autowired BookService bookService;
+
+    @Autowired WriteBehindService writeBehindService;
+
+    @Autowired MeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setup() {
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Test queued creates are applied together in batches")
+    public void testSubmitCreate_batched() throws Exception {
+        DistributionSummary batchSizes = meterRegistry.get("library.write.batch.size").summary();
+        long batches = batchSizes.count();
+
+        List<BookWrite> writes = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            writes.add(
+                    writeBehindService.submitCreate(
+                            new CreateBookDTO(
+                                    String.format("978%010d", i),
+                                    "Title " + i,
+                                    Set.of("Author " + i % 7),
+                                    2000)));
+        }
+        for (BookWrite write : writes) {
+            assertTrue(write.await(TIMEOUT).isPresent());
+            assertEquals("COMPLETED", write.toStatusDTO().getStatus());
+        }
+
+        assertEquals(200, bookRepository.count());
+        assertEquals(7, authorRepository.count());
+        assertTrue(batchSizes.count() - batches < 200);
+        assertEquals(
+                Set.of("Author 3"), bookService.findBookByIsbn("9780000000010").getAuthorNames());
+    }
+
+    @Test
+    @DisplayName("Test a conflicting write fails without failing the rest of its batch")
+    public void testSubmitCreate_conflictsFailIndividually() throws Exception {
+        bookService.saveBookAndAuthors(
+                new CreateBookDTO("9780000000001", "Title 1", Set.of("Author 1"), 2000));
+
+        BookWrite existing =
+                writeBehindService.submitCreate(
+                        new CreateBookDTO("9780000000001", "Title 1", Set.of("Author 1"), 2000));
+        BookWrite created =
+                writeBehindService.submitCreate(
+                        new CreateBookDTO("9780000000002", "Title 2", Set.of("Author 2"), 2000));
+        BookWrite repeated =
+                writeBehindService.submitCreate(
+                        new CreateBookDTO("9780000000002", "Title 2", Set.of("Author 2"), 2000));
+
+        assertThrows(ResourceConflictException.class, () -> existing.await(TIMEOUT));
+        assertEquals("9780000000002", created.await(TIMEOUT).get().getIsbn());
+        assertThrows(ResourceConflictException.class, () -> repeated.await(TIMEOUT));
+        assertEquals(
+                "FAILED",
+                writeBehindService.find(existing.getId()).get().toStatusDTO().getStatus());
+        assertEquals(2, bookRepository.count());
+    }
+
+    @Test
+    @DisplayName("Test queued updates are applied and missing books are reported")
+    public void testSubmitUpdate() throws Exception {
+        bookService.saveBookAndAuthors(
+                new CreateBookDTO("9780000000001", "Title 1", Set.of("Author 1"), 2000));
+
+        BookWrite updated =
+                writeBehindService.submitUpdate(
+                        "9780000000001",
+                        new BookDTO("9780000000003", null, Set.of("Author 3"), null));
+        BookWrite missing =
+                writeBehindService.submitUpdate(
+                        "9780000000002", new BookDTO(null, "Title 2", null, null));
+
+        assertEquals(
+                new BookDTO("9780000000003", "Title 1", Set.of("Author 3"), 2000),
+                updated.await(TIMEOUT).get());
+        assertThrows(ResourceNotFoundException.class, () -> missing.await(TIMEOUT));
+        assertEquals("Title 1", bookService.findBookByIsbn("9780000000003").getTitle());
+        assertThrows(
+                ResourceNotFoundException.class, () -> bookService.findBookByIsbn("9780000000001"));
+    }
+
+    @Test
+    @DisplayName("Test a queued update to an ISBN in use fails as a conflict")
+    public void testSubmitUpdate_isbnInUse() throws Exception {
+        bookService.saveBookAndAuthors(
+                new CreateBookDTO("9780000000001", "Title 1", Set.of("Author 1"), 2000));
+        bookService.saveBookAndAuthors(
+                new CreateBookDTO("9780000000002", "Title 2", Set.of("Author 2"), 2000));
+
+        BookWrite moved =
+                writeBehindService.submitUpdate(
+                        "9780000000001", new BookDTO("9780000000002", null, null, null));
+        BookWrite updated =
+                writeBehindService.submitUpdate(
+                        "9780000000002", new BookDTO(null, "Title 3", null, null));
+
+        assertThrows(ResourceConflictException.class, () -> moved.await(TIMEOUT));
+        assertEquals("Title 3", updated.await(TIMEOUT).get().getTitle());
+        WriteStatusDTO status = moved.toStatusDTO();
+        assertEquals("FAILED", status.getStatus());
+        assertEquals("The book with this ISBN already exists", status.getError());
+        assertEquals("Title 1", bookService.findBookByIsbn("9780000000001").getTitle());
+    }
+}